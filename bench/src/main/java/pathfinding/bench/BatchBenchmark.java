@@ -0,0 +1,76 @@
+/*
+    BatchBenchmark -> Measures how BatchSearch throughput scales with the
+    number of worker threads. Every invocation solves one batch of
+    BATCH_SIZE queries on the same map, and the score is in queries per
+    second, so perfect scaling doubles the score when threads doubles.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.Algorithm;
+import pathfinding.BatchResult;
+import pathfinding.BatchSearch;
+import pathfinding.GridMap;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchBenchmark {
+
+    public static final int BATCH_SIZE = 1024;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"1024"})
+    public int size;
+
+    @Param({"RANDOM_20", "ROOMS"})
+    public String pattern;
+
+    @Param({"ASTAR"})
+    public String algorithm;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private int[] queries;
+    private BatchSearch batchSearch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GridMap map = MapGenerator.generate(pattern, size, size, seed);
+        queries = ScenarioGenerator.generate(map, BATCH_SIZE, seed);
+        batchSearch = new BatchSearch(map, Algorithm.valueOf(algorithm), threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batchSearch.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public BatchResult solveBatch() {
+        return batchSearch.solve(queries);
+    }
+}
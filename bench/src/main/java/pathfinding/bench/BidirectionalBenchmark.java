@@ -0,0 +1,104 @@
+/*
+    BidirectionalBenchmark -> Runs the same queries with SearchEngine's A*
+    from the start only (UNIDIRECTIONAL) and with BidirectionalSearch from
+    both ends on two threads (BIDIRECTIONAL). Both find paths of the same
+    cost; the score is queries per second, so the ratio of the two scores is
+    the wall-clock speedup, and the "expansions" counter is the number of
+    cells expanded per second (by both sides together), so expansions per
+    query is the ratio of the counter to the score.
+
+    The speedup needs a free core for the backward side, on a single core
+    the two sides take turns and only the saved expansions remain.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.BidirectionalSearch;
+import pathfinding.GridMap;
+import pathfinding.SearchEngine;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BidirectionalBenchmark {
+
+    public static final int QUERY_COUNT = 64;
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    @Param({"OPEN", "RANDOM_20", "MAZE", "ROOMS"})
+    public String pattern;
+
+    @Param({"UNIDIRECTIONAL", "BIDIRECTIONAL"})
+    public String mode;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private int[] queries;
+    private SearchEngine engine;
+    private BidirectionalSearch bidirectional;
+    private int next;
+
+    /* Expanded nodes, reported by JMH as a rate next to the throughput score */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Expansions {
+        public long expansions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expansions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        queries = ScenarioGenerator.generate(map, QUERY_COUNT, seed);
+        engine = new SearchEngine();
+        bidirectional = new BidirectionalSearch();
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bidirectional.close();
+    }
+
+    @Benchmark
+    public int search(Expansions counters) {
+        int start = queries[next];
+        int target = queries[next + 1];
+        next = (next + 2) % queries.length;
+        if (mode.equals("BIDIRECTIONAL")) {
+            bidirectional.search(map, start, target);
+            counters.expansions += bidirectional.getMetrics().getExpanded();
+            return bidirectional.getPathCost();
+        }
+        engine.search(map, start, target);
+        counters.expansions += engine.getExpandedCount();
+        return engine.getPathCost();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+    ComponentBenchmark -> Compares keeping a ComponentIndex up to date edit
+    by edit with cellChanged against relabeling the whole map after every
+    edit with rebuild.
+
+    Each invocation toggles one random cell of the map, so about half of
+    the edits add an obstacle (and may split a region) and half remove one
+    (and may merge regions). Both modes see the same seeded sequence.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.ComponentIndex;
+import pathfinding.GridMap;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ComponentBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    @Param({"RANDOM_30", "MAZE", "ROOMS"})
+    public String pattern;
+
+    @Param({"INCREMENTAL", "FULL_RECOMPUTE"})
+    public String mode;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private ComponentIndex index;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        index = new ComponentIndex(map);
+        random = new SplittableRandom(seed);
+    }
+
+    @Benchmark
+    public int edit() {
+        int cell = random.nextInt(map.getCellCount());
+        map.setBlocked(cell, !map.isBlocked(cell));
+        if (mode.equals("INCREMENTAL"))
+            index.cellChanged(cell);
+        else
+            index.rebuild();
+        return index.getComponentCount();
+    }
+}
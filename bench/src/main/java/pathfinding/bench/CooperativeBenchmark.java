@@ -0,0 +1,106 @@
+/*
+    CooperativeBenchmark -> Plans a whole team with CooperativePlanner
+    (WHCA*) until every agent has arrived, for growing team sizes. Each
+    invocation plans the same seeded team from scratch, distance fields
+    included. The "agents" counter is reported by JMH as agents planned
+    per second next to the score in teams per second.
+
+    Starts are distinct, as are targets, and every target is reachable from
+    its agent's start.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.CellBitSet;
+import pathfinding.ComponentIndex;
+import pathfinding.CooperativePlanner;
+import pathfinding.GridMap;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CooperativeBenchmark {
+
+    @Param({"8", "16", "32", "64", "128"})
+    public int agents;
+
+    @Param({"128"})
+    public int size;
+
+    @Param({"RANDOM_20", "ROOMS"})
+    public String pattern;
+
+    @Param({"16"})
+    public int window;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private int[] starts;
+    private int[] targets;
+
+    /* Agents planned, reported by JMH as a rate next to the score */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Agents {
+        public long agents;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            agents = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        ComponentIndex components = new ComponentIndex(map);
+        CellBitSet usedStarts = new CellBitSet(map.getCellCount());
+        CellBitSet usedTargets = new CellBitSet(map.getCellCount());
+        SplittableRandom random = new SplittableRandom(seed);
+        starts = new int[agents];
+        targets = new int[agents];
+        for (int i = 0; i < agents; i++) {
+            int start, target;
+            do {
+                start = random.nextInt(map.getCellCount());
+                target = random.nextInt(map.getCellCount());
+            } while (map.isBlocked(start) || map.isBlocked(target) || usedStarts.get(start)
+                     || usedTargets.get(target) || !components.connected(start, target));
+            usedStarts.set(start);
+            usedTargets.set(target);
+            starts[i] = start;
+            targets[i] = target;
+        }
+    }
+
+    @Benchmark
+    public int planTeam(Agents counters) {
+        CooperativePlanner planner = new CooperativePlanner(map, window);
+        for (int i = 0; i < agents; i++)
+            planner.addAgent(starts[i], targets[i]);
+        planner.plan(8 * size);
+        counters.agents += agents;
+        return planner.getTick();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+    FlowFieldBenchmark -> Measures computing a FlowField for a target in
+    the middle of the map with a growing number of threads, and compares
+    repairing it edit by edit with cellChanged against recomputing it after
+    every edit.
+
+    Each edit toggles one random cell (never the target), so about half of
+    the edits add an obstacle and half remove one. Both modes see the same
+    seeded sequence.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.FlowField;
+import pathfinding.GridMap;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlowFieldBenchmark {
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    @Param({"RANDOM_20", "ROOMS"})
+    public String pattern;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"INCREMENTAL", "FULL_RECOMPUTE"})
+    public String mode;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private FlowField field;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        int target = map.indexOf(size / 2, size / 2);
+        map.setBlocked(target, false);
+        field = new FlowField(map, target, threads);
+        random = new SplittableRandom(seed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        field.close();
+    }
+
+    /* The whole field, scored against the number of threads */
+    @Benchmark
+    public int compute() {
+        field.compute();
+        return field.getExpandedCount();
+    }
+
+    @Benchmark
+    public int edit() {
+        int cell = random.nextInt(map.getCellCount());
+        if (cell == field.getTarget())
+            return 0;
+        map.setBlocked(cell, !map.isBlocked(cell));
+        if (mode.equals("INCREMENTAL"))
+            field.cellChanged(cell);
+        else
+            field.compute();
+        return field.getExpandedCount();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+    HierarchicalBenchmark -> Query time of HierarchicalSearch (HPA*) against
+    the flat SearchEngine on the same maps and queries. The hierarchical
+    score includes refining the whole path, so both modes return cells.
+
+    Preprocessing time, abstract graph size and memory are printed when
+    the map is set up, and path cost overhead is printed when a trial ends.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.GridMap;
+import pathfinding.HierarchicalSearch;
+import pathfinding.SearchEngine;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HierarchicalBenchmark {
+
+    public static final int QUERY_COUNT = 64;
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    @Param({"OPEN", "ROOMS", "RANDOM_10"})
+    public String pattern;
+
+    @Param({"FLAT", "HIERARCHICAL"})
+    public String mode;
+
+    @Param({"32"})
+    public int clusterSize;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private int[] queries;
+    private SearchEngine engine;
+    private HierarchicalSearch hierarchical;
+    private int next;
+    private long costSum;
+    private long optimalCostSum;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        queries = ScenarioGenerator.generate(map, QUERY_COUNT, seed);
+        engine = new SearchEngine();
+        if (mode.equals("HIERARCHICAL")) {
+            hierarchical = new HierarchicalSearch(map, clusterSize);
+            System.out.printf("%nHPA* preprocessing: %.1f ms, %d abstract nodes, %.1f MB graph%n",
+                              hierarchical.getBuildNanos() / 1e6, hierarchical.getNodeCount(),
+                              hierarchical.getGraphMemoryBytes() / 1e6);
+        }
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void reportCost() {
+        if (hierarchical == null)
+            return;
+        for (int i = 0; i < queries.length; i += 2) {
+            engine.search(map, queries[i], queries[i + 1]);
+            hierarchical.search(queries[i], queries[i + 1]);
+            optimalCostSum += engine.getPathCost();
+            costSum += hierarchical.getPathCost();
+        }
+        System.out.printf("%nHPA* path cost overhead: %.2f%%%n", 100.0 * (costSum - optimalCostSum) / optimalCostSum);
+    }
+
+    @Benchmark
+    public int query() {
+        int start = queries[next];
+        int target = queries[next + 1];
+        next = (next + 2) % queries.length;
+        if (hierarchical != null) {
+            hierarchical.search(start, target);
+            return hierarchical.getPathLength(); // refines the whole path
+        }
+        engine.search(map, start, target);
+        return engine.getPathLength();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+    MapGenerator -> Builds the obstacle patterns the benchmarks run on. Every
+    map is a pure function of (pattern, width, height, seed), so the same
+    parameters give the same map on every machine and every commit.
+
+    Patterns:
+      OPEN                     no obstacles
+      RANDOM_10 .. RANDOM_40   each cell blocked with the given percent chance
+      MAZE                     a perfect maze with one cell wide corridors
+      ROOMS                    32x32 rooms separated by walls with random doors
+ */
+
+package pathfinding.bench;
+
+import pathfinding.GridMap;
+
+import java.util.SplittableRandom;
+
+public final class MapGenerator {
+
+    public static final int ROOM_SIZE = 32;
+
+    private MapGenerator() {
+    }
+
+    public static GridMap generate(String pattern, int width, int height, long seed) {
+        GridMap map = new GridMap(width, height);
+        SplittableRandom random = new SplittableRandom(seed);
+        if (pattern.equals("OPEN")) {
+            return map;
+        } else if (pattern.startsWith("RANDOM_")) {
+            randomFill(map, Integer.parseInt(pattern.substring(7)) / 100.0, random);
+        } else if (pattern.equals("MAZE")) {
+            maze(map, random);
+        } else if (pattern.equals("ROOMS")) {
+            rooms(map, random);
+        } else {
+            throw new IllegalArgumentException("Unknown map pattern: " + pattern);
+        }
+        return map;
+    }
+
+    private static void randomFill(GridMap map, double fill, SplittableRandom random) {
+        for (int cell = 0; cell < map.getCellCount(); cell++) {
+            if (random.nextDouble() < fill)
+                map.setBlocked(cell, true);
+        }
+    }
+
+    /* Iterative recursive backtracker over the cells with even x and y. The
+       map starts fully blocked and corridors are carved between those cells */
+    private static void maze(GridMap map, SplittableRandom random) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for (int cell = 0; cell < map.getCellCount(); cell++)
+            map.setBlocked(cell, true);
+
+        int columns = (width + 1) / 2;
+        int rows = (height + 1) / 2;
+        boolean[] visited = new boolean[columns * rows];
+        int[] stack = new int[columns * rows];
+        int[] choices = new int[4];
+        int top = 0;
+
+        stack[top++] = 0;
+        visited[0] = true;
+        map.setBlocked(0, 0, false);
+        while (top > 0) {
+            int current = stack[top - 1];
+            int cx = current % columns;
+            int cy = current / columns;
+
+            int count = 0;
+            if (cx > 0 && !visited[current - 1]) choices[count++] = current - 1;
+            if (cx < columns - 1 && !visited[current + 1]) choices[count++] = current + 1;
+            if (cy > 0 && !visited[current - columns]) choices[count++] = current - columns;
+            if (cy < rows - 1 && !visited[current + columns]) choices[count++] = current + columns;
+            if (count == 0) {
+                top--;
+                continue;
+            }
+
+            int next = choices[random.nextInt(count)];
+            int nx = next % columns;
+            int ny = next / columns;
+            visited[next] = true;
+            map.setBlocked(cx + nx, cy + ny, false); // wall between the two cells
+            map.setBlocked(nx * 2, ny * 2, false);
+            stack[top++] = next;
+        }
+    }
+
+    /* Walls every ROOM_SIZE cells, with one door in every wall segment */
+    private static void rooms(GridMap map, SplittableRandom random) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for (int y = ROOM_SIZE; y < height; y += ROOM_SIZE) {
+            for (int x = 0; x < width; x++)
+                map.setBlocked(x, y, true);
+        }
+        for (int x = ROOM_SIZE; x < width; x += ROOM_SIZE) {
+            for (int y = 0; y < height; y++)
+                map.setBlocked(x, y, true);
+        }
+        for (int roomY = 0; roomY < height; roomY += ROOM_SIZE) {
+            for (int roomX = 0; roomX < width; roomX += ROOM_SIZE) {
+                int right = roomX + ROOM_SIZE;
+                int bottom = roomY + ROOM_SIZE;
+                int roomHeight = Math.min(ROOM_SIZE, height - roomY) - 1; // without the wall
+                int roomWidth = Math.min(ROOM_SIZE, width - roomX) - 1;
+                if (right < width && roomHeight > 0)
+                    map.setBlocked(right, roomY + 1 + random.nextInt(roomHeight), false);
+                if (bottom < height && roomWidth > 0)
+                    map.setBlocked(roomX + 1 + random.nextInt(roomWidth), bottom, false);
+            }
+        }
+    }
+}
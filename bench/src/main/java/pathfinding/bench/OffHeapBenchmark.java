@@ -0,0 +1,113 @@
+/*
+    OffHeapBenchmark -> Compares GC pauses of SearchEngine, whose per-cell
+    state is on the heap, with OffHeapSearchEngine, which keeps it (and the
+    map) in off-heap memory. Both search the same seeded queries on the same
+    map.
+
+    Besides its query, every invocation allocates garbageKb of short lived
+    garbage and keeps the last RETAINED blocks alive, standing in for the
+    rest of an application, so the collector has to run during the
+    measurement. Run with the GC profiler and compare gc.count and gc.time:
+
+      java -jar target/benchmarks.jar OffHeapBenchmark -prof gc
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.GridMap;
+import pathfinding.OffHeapArena;
+import pathfinding.OffHeapGridMap;
+import pathfinding.OffHeapSearchEngine;
+import pathfinding.SearchEngine;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OffHeapBenchmark {
+
+    public static final int QUERY_COUNT = 64;
+    public static final int RETAINED = 8;
+
+    @Param({"4096", "8192"})
+    public int size;
+
+    @Param({"RANDOM_20", "ROOMS"})
+    public String pattern;
+
+    @Param({"ON_HEAP", "OFF_HEAP"})
+    public String backend;
+
+    @Param({"16384"})
+    public int garbageKb;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private int[] queries;
+    private int next;
+    private GridMap map;
+    private SearchEngine engine;
+    private OffHeapArena arena;
+    private OffHeapGridMap offHeapMap;
+    private OffHeapSearchEngine offHeapEngine;
+    private byte[][] retained;
+    private int nextRetained;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GridMap generated = MapGenerator.generate(pattern, size, size, seed);
+        queries = ScenarioGenerator.generate(generated, QUERY_COUNT, seed);
+        if (backend.equals("ON_HEAP")) {
+            map = generated;
+            engine = new SearchEngine();
+        } else {
+            arena = new OffHeapArena();
+            offHeapMap = OffHeapGridMap.copyOf(generated, arena);
+            offHeapEngine = new OffHeapSearchEngine();
+        }
+        retained = new byte[RETAINED][];
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (offHeapEngine != null) {
+            offHeapEngine.close();
+            arena.close();
+        }
+    }
+
+    @Benchmark
+    public int search() {
+        retained[nextRetained] = new byte[garbageKb * 1024];
+        nextRetained = (nextRetained + 1) % RETAINED;
+
+        int start = queries[next];
+        int target = queries[next + 1];
+        next = (next + 2) % queries.length;
+        if (engine != null) {
+            engine.search(map, start, target);
+            return engine.getPathCost();
+        }
+        offHeapEngine.search(offHeapMap, start, target);
+        return offHeapEngine.getPathCost();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    ReplanBenchmark -> Compares repairing a path with DStarLite against
+    searching again from scratch with SearchEngine after every map edit.
+
+    Each invocation makes one edit: it blocks a cell in the middle of the
+    current path, or unblocks the cell it blocked last time. Both modes see
+    the same seeded sequence of edits. Next to the time per edit, JMH reports
+    the "expansions" and "edits" counters, expansions / edits is the number
+    of nodes a mode expands per edit.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.DStarLite;
+import pathfinding.GridMap;
+import pathfinding.SearchEngine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplanBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"RANDOM_20", "ROOMS"})
+    public String pattern;
+
+    @Param({"INCREMENTAL", "FROM_SCRATCH"})
+    public String mode;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private int start;
+    private int target;
+    private DStarLite planner;
+    private SearchEngine engine;
+    private SplittableRandom random;
+    private int blockedCell; // Cell blocked by the previous edit, or -1
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Expansions {
+        public long expansions;
+        public long edits;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expansions = 0;
+            edits = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        int[] query = ScenarioGenerator.generate(map, 1, seed);
+        start = query[0];
+        target = query[1];
+        random = new SplittableRandom(seed);
+        blockedCell = -1;
+        engine = new SearchEngine();
+        planner = new DStarLite(map, start, target);
+        planner.computePath();
+        engine.search(map, start, target);
+    }
+
+    @Benchmark
+    public int edit(Expansions counters) {
+        int cell;
+        if (blockedCell != -1) {
+            cell = blockedCell;
+            map.setBlocked(cell, false);
+            blockedCell = -1;
+        } else {
+            cell = pickPathCell();
+            if (cell == -1)
+                return -1;
+            map.setBlocked(cell, true);
+            blockedCell = cell;
+        }
+
+        counters.edits++;
+        if (mode.equals("INCREMENTAL")) {
+            planner.cellChanged(cell);
+            planner.computePath();
+            counters.expansions += planner.getExpandedCount();
+            return planner.getPathCost();
+        }
+        engine.search(map, start, target);
+        counters.expansions += engine.getExpandedCount();
+        return engine.getPathCost();
+    }
+
+    /* A random cell from the middle of the current path */
+    private int pickPathCell() {
+        boolean incremental = mode.equals("INCREMENTAL");
+        int length = incremental ? planner.getPathLength() : engine.getPathLength();
+        if (length < 3)
+            return -1;
+        int step = 1 + random.nextInt(length - 2);
+        return incremental ? planner.getPath()[step] : engine.getPath()[step];
+    }
+}
@@ -0,0 +1,86 @@
+/*
+    ScenarioGenerator -> Picks seeded start/target pairs for a map. Both cells
+    of a pair are drawn from the largest 8-connected region of free cells, so
+    every query has a path and the benchmarks measure searches, not floods of
+    walled off regions.
+ */
+
+package pathfinding.bench;
+
+import pathfinding.GridMap;
+
+import java.util.SplittableRandom;
+
+public final class ScenarioGenerator {
+
+    private ScenarioGenerator() {
+    }
+
+    /* Returns count pairs packed as {start0, target0, start1, target1, ...} */
+    public static int[] generate(GridMap map, int count, long seed) {
+        int[] region = largestRegion(map);
+        if (region.length < 2)
+            throw new IllegalArgumentException("Map has no two connected free cells");
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] queries = new int[count * 2];
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = region[random.nextInt(region.length)];
+            do {
+                queries[i + 1] = region[random.nextInt(region.length)];
+            } while (queries[i + 1] == queries[i]);
+        }
+        return queries;
+    }
+
+    /* Breadth first labelling of every free region, returns the cells of the largest */
+    static int[] largestRegion(GridMap map) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int[] label = new int[map.getCellCount()]; // 0 = unlabelled
+        int[] queue = new int[map.getCellCount()];
+        int bestLabel = 0;
+        int bestSize = 0;
+        int nextLabel = 0;
+
+        for (int seedCell = 0; seedCell < label.length; seedCell++) {
+            if (label[seedCell] != 0 || map.isBlocked(seedCell))
+                continue;
+            nextLabel++;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = seedCell;
+            label[seedCell] = nextLabel;
+            while (head < tail) {
+                int cell = queue[head++];
+                int x = cell % width;
+                int y = cell / width;
+                for (int i = -1; i <= 1; i++) {
+                    for (int j = -1; j <= 1; j++) {
+                        int nx = x + i;
+                        int ny = y + j;
+                        if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                            continue;
+                        int neighbor = ny * width + nx;
+                        if (label[neighbor] == 0 && !map.isBlocked(neighbor)) {
+                            label[neighbor] = nextLabel;
+                            queue[tail++] = neighbor;
+                        }
+                    }
+                }
+            }
+            if (tail > bestSize) {
+                bestSize = tail;
+                bestLabel = nextLabel;
+            }
+        }
+
+        int[] region = new int[bestSize];
+        int count = 0;
+        for (int cell = 0; cell < label.length && count < bestSize; cell++) {
+            if (label[cell] == bestLabel && bestLabel != 0)
+                region[count++] = cell;
+        }
+        return region;
+    }
+}
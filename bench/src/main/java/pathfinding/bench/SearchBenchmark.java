@@ -0,0 +1,105 @@
+/*
+    SearchBenchmark -> Runs SearchEngine queries over every combination of
+    grid size, obstacle pattern and algorithm. Maps and queries come from the seeded
+    generators, so two runs with the same seed search exactly the same maps.
+
+      latency     -> SampleTime mode, JMH reports p50/p90/p99/p99.9 per query
+      throughput  -> queries per second, plus an "expansions" counter that
+                     JMH reports as expanded nodes per second
+
+    Allocation per query is reported by the GC profiler (-prof gc) as
+    gc.alloc.rate.norm, in bytes per operation.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.Algorithm;
+import pathfinding.GridMap;
+import pathfinding.SearchEngine;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"}) // 8192x8192 JPS+ needs ~4GB of tables and buffers
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+
+    public static final int QUERY_COUNT = 64;
+
+    @Param({"256", "1024", "4096", "8192"})
+    public int size;
+
+    @Param({"OPEN", "RANDOM_10", "RANDOM_20", "RANDOM_30", "RANDOM_40", "MAZE", "ROOMS"})
+    public String pattern;
+
+    @Param({"ASTAR", "JPS", "JPS_PLUS", "ALT"})
+    public String algorithm;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap map;
+    private int[] queries;
+    private SearchEngine engine;
+    private int next;
+
+    /* Expanded nodes, reported by JMH as a rate next to the throughput score */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Expansions {
+        public long expansions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expansions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = MapGenerator.generate(pattern, size, size, seed);
+        queries = ScenarioGenerator.generate(map, QUERY_COUNT, seed);
+        engine = new SearchEngine();
+        engine.setAlgorithm(Algorithm.valueOf(algorithm));
+        engine.prepare(map); // JPS+ and ALT build their tables outside of the measurement
+        next = 0;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int latency() {
+        return runNextQuery();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int throughput(Expansions counters) {
+        int cost = runNextQuery();
+        counters.expansions += engine.getExpandedCount();
+        return cost;
+    }
+
+    private int runNextQuery() {
+        int start = queries[next];
+        int target = queries[next + 1];
+        next = (next + 2) % queries.length;
+        engine.search(map, start, target);
+        return engine.getPathCost();
+    }
+}
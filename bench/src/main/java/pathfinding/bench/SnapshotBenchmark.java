@@ -0,0 +1,90 @@
+/*
+    SnapshotBenchmark -> Compares the ways of getting a saved map ready to
+    search: redrawing it cell by cell with setBlocked (CELL_BY_CELL), loading
+    a MapSnapshot into a GridMap (SNAPSHOT), and mapping the snapshot's raw
+    obstacle bits as an OffHeapGridMap without copying them (MAPPED).
+
+    The snapshot is written once per trial to a temporary file, which stays
+    in the page cache, so this measures decoding rather than the disk.
+ */
+
+package pathfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pathfinding.CellBitSet;
+import pathfinding.GridMap;
+import pathfinding.MapSnapshot;
+import pathfinding.OffHeapArena;
+import pathfinding.OffHeapGridMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotBenchmark {
+
+    @Param({"1024", "4096", "10000"})
+    public int size;
+
+    @Param({"RANDOM_30", "ROOMS"})
+    public String pattern;
+
+    @Param({"CELL_BY_CELL", "SNAPSHOT", "MAPPED"})
+    public String mode;
+
+    @Param({"20240601"})
+    public long seed;
+
+    private GridMap source;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = MapGenerator.generate(pattern, size, size, seed);
+        file = Files.createTempFile("snapshot", ".map");
+        MapSnapshot snapshot = new MapSnapshot(source);
+        snapshot.setMappable(mode.equals("MAPPED"));
+        snapshot.write(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        if (mode.equals("SNAPSHOT"))
+            return MapSnapshot.read(file).getMap().getCellCount();
+        if (mode.equals("MAPPED")) {
+            try (OffHeapArena arena = new OffHeapArena()) {
+                OffHeapGridMap map = MapSnapshot.mapObstacles(file, arena);
+                return map.isBlocked(map.getCellCount() - 1) ? 1 : 0;
+            }
+        }
+        GridMap map = new GridMap(size, size);
+        CellBitSet obstacles = source.getObstacles();
+        for (int cell = obstacles.nextSetBit(0); cell != -1; cell = obstacles.nextSetBit(cell + 1))
+            map.setBlocked(cell, true);
+        return map.getCellCount();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+    AStarLogicStressTest -> Hammers the Grid's render path and its search
+    runs at the same time. The test thread plays the Event Dispatch Thread
+    work of a user (Start, obstacle and weight brushes, Reset, algorithm and
+    mode switches, replay seeks, node drags) and paints the panel into an
+    image after every action, while each started run searches on its own
+    worker thread as Grid.runAlgorithm's SwingWorker does, and another
+    thread keeps calling repaintCell the way a search thread may. Any
+    exception on any of those threads fails the test.
+
+    Runs headless, painting goes to a BufferedImage instead of the screen.
+ */
+
+import org.junit.jupiter.api.Test;
+import pathfinding.Algorithm;
+import pathfinding.CellBitSet;
+
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AStarLogicStressTest {
+
+    private static final int COLUMNS = 200;
+    private static final int ROWS = 150;
+    private static final long DURATION_MILLIS = 4000;
+
+    private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private Grid grid;
+    private AStarLogic logic;
+    private BufferedImage image;
+
+    @Test
+    void renderWhileSearching() throws Exception {
+        onEdt(new Runnable() {
+            public void run() {
+                grid = new Grid(COLUMNS, ROWS);
+                grid.setSize(800, 600);
+                image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+            }
+        });
+        logic = logicOf(grid);
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread repainter = new Thread(new Runnable() {
+            public void run() {
+                SplittableRandom random = new SplittableRandom(1);
+                try {
+                    while (!stop.get())
+                        grid.repaintCell(random.nextInt(COLUMNS), random.nextInt(ROWS));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }
+        }, "repainter");
+        repainter.start();
+
+        final SplittableRandom random = new SplittableRandom(20240611L);
+        int actions = 0;
+        long end = System.currentTimeMillis() + DURATION_MILLIS;
+        while (System.currentTimeMillis() < end && failures.isEmpty()) {
+            onEdt(new Runnable() {
+                public void run() {
+                    act(random);
+                    paint();
+                }
+            });
+            actions++;
+        }
+        stop.set(true);
+        repainter.join();
+        for (Thread worker : workers)
+            worker.join(10000);
+
+        if (!failures.isEmpty())
+            throw new AssertionError(failures.size() + " exceptions after " + actions + " actions", failures.peek());
+        assertTrue(runs.get() > 0, "no search was started");
+        for (Thread worker : workers)
+            assertFalse(worker.isAlive(), "search still running after Reset and the end of the test");
+    }
+
+    /* A run that follows a Reset shows the optimal path of the empty map,
+       one cell per step since the start itself is not marked, and paints
+       without errors */
+    @Test
+    void runAfterResetShowsThePath() throws Exception {
+        onEdt(new Runnable() {
+            public void run() {
+                grid = new Grid(COLUMNS, ROWS);
+                grid.setSize(800, 600);
+                image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+            }
+        });
+        logic = logicOf(grid);
+        onEdt(new Runnable() {
+            public void run() {
+                grid.reset();
+                assertTrue(logic.beginSearch());
+                assertFalse(logic.beginSearch(), "a second run started while the first was searching");
+            }
+        });
+        logic.executeAStar();
+        onEdt(new Runnable() {
+            public void run() {
+                paint();
+            }
+        });
+
+        int dx = Math.abs(logic.getStart().getX() - logic.getTarget().getX());
+        int dy = Math.abs(logic.getStart().getY() - logic.getTarget().getY());
+        CellBitSet path = logic.getPathCells();
+        int cells = 0;
+        for (int cell = 0; cell < path.size(); cell++)
+            if (path.get(cell))
+                cells++;
+        assertEquals(Math.max(dx, dy), cells);
+        if (!failures.isEmpty())
+            throw new AssertionError("exception while painting", failures.peek());
+    }
+
+    /* One user action, on the Event Dispatch Thread */
+    private void act(SplittableRandom random) {
+        int x = random.nextInt(COLUMNS);
+        int y = random.nextInt(ROWS);
+        int action = random.nextInt(100);
+        if (action < 20) {
+            start();
+        } else if (action < 50) {
+            logic.setObstaclePosition(x, y);
+            grid.repaintCell(x, y);
+        } else if (action < 60) {
+            logic.setTerrainWeight(x, y, 1 + random.nextInt(Grid.MAX_BRUSH_WEIGHT));
+            grid.repaintCell(x, y);
+        } else if (action < 65) {
+            grid.reset();
+        } else if (action < 72) {
+            Algorithm[] algorithms = Algorithm.values();
+            grid.setAlgorithm(algorithms[random.nextInt(algorithms.length)]);
+        } else if (action < 77) {
+            int mode = random.nextInt(4);
+            grid.setAnytime(mode == 1, 20);
+            grid.setBidirectional(mode == 2);
+            grid.setAgentCount(mode == 3 ? 2 + random.nextInt(7) : 1);
+        } else if (action < 90) {
+            TracePlayer player = grid.getTracePlayer();
+            if (player.getLength() > 0)
+                player.seek(random.nextInt(player.getLength() + 1));
+        } else if (action < 95) {
+            logic.setStartLocation(x, y);
+        } else {
+            logic.setTargetLocation(x, y);
+        }
+    }
+
+    /* What Grid.runAlgorithm does, with the worker's exceptions recorded */
+    private void start() {
+        if (!logic.beginSearch())
+            return;
+        runs.incrementAndGet();
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    logic.executeAStar();
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }
+        }, "search-" + runs.get());
+        workers.add(worker);
+        worker.start();
+    }
+
+    private void paint() {
+        Graphics2D g = image.createGraphics();
+        try {
+            grid.paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /* Runs task on the Event Dispatch Thread and waits for it, recording
+       what it throws */
+    private void onEdt(final Runnable task) throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }
+        });
+    }
+
+    private static AStarLogic logicOf(Grid grid) throws ReflectiveOperationException {
+        Field field = Grid.class.getDeclaredField("logic");
+        field.setAccessible(true);
+        return (AStarLogic) field.get(grid);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    CooperativePlannerTest -> Plans dense teams on seeded random maps and
+    checks every tick of every route: no two agents on one cell, no two
+    agents swapping cells, and every step a wait or a move to a free
+    neighbor. The teams are crowded enough that agents keep having to wait
+    for each other, which is where an agent's wait used to run into a cell
+    another agent had already planned to enter.
+ */
+
+package pathfinding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class CooperativePlannerTest {
+
+    private static final int PLANS = 300;
+    private static final int MAX_TICKS = 160;
+
+    @Test
+    void routesNeverCollide() {
+        SplittableRandom random = new SplittableRandom(300);
+        for (int p = 0; p < PLANS; p++) {
+            GridMap map = new GridMap(16 + random.nextInt(17), 16 + random.nextInt(17));
+            for (int cell = 0; cell < map.getCellCount(); cell++)
+                if (random.nextInt(100) < 25)
+                    map.setBlocked(cell, true);
+            ComponentIndex components = new ComponentIndex(map);
+            CooperativePlanner planner = new CooperativePlanner(map, 4 + 2 * random.nextInt(7));
+            addTeam(planner, map, components, random, map.getCellCount() / (4 + random.nextInt(5)));
+            planner.plan(MAX_TICKS);
+            checkRoutes(planner, map, "plan " + p);
+        }
+    }
+
+    /* Up to agents agents on distinct free cells, each with a distinct
+       target in its own region */
+    private static void addTeam(CooperativePlanner planner, GridMap map, ComponentIndex components,
+                                SplittableRandom random, int agents) {
+        boolean[] start = new boolean[map.getCellCount()];
+        boolean[] target = new boolean[map.getCellCount()];
+        for (int a = 0, tries = 0; a < agents && tries < 50 * agents; tries++) {
+            int from = random.nextInt(map.getCellCount());
+            int to = random.nextInt(map.getCellCount());
+            if (map.isBlocked(from) || start[from] || target[to] || !components.connected(from, to))
+                continue;
+            start[from] = true;
+            target[to] = true;
+            planner.addAgent(from, to);
+            a++;
+        }
+    }
+
+    private static void checkRoutes(CooperativePlanner planner, GridMap map, String name) {
+        int agents = planner.getAgentCount();
+        int ticks = planner.getTick();
+        int[] occupant = new int[map.getCellCount()];
+        for (int agent = 0; agent < agents; agent++)
+            assertEquals(ticks + 1, planner.getRoute(agent).length, name + ", agent " + agent);
+        for (int t = 0; t <= ticks; t++) {
+            Arrays.fill(occupant, -1);
+            for (int agent = 0; agent < agents; agent++) {
+                int cell = planner.getRoute(agent)[t];
+                if (occupant[cell] != -1)
+                    fail(name + ": agents " + occupant[cell] + " and " + agent + " on cell " + cell + " at tick " + t);
+                occupant[cell] = agent;
+                if (t == 0)
+                    continue;
+                int previous = planner.getRoute(agent)[t - 1];
+                assertTrue(!map.isBlocked(cell) && Math.abs(map.xOf(cell) - map.xOf(previous)) <= 1
+                           && Math.abs(map.yOf(cell) - map.yOf(previous)) <= 1,
+                           name + ": agent " + agent + " jumps at tick " + t);
+            }
+            if (t == 0)
+                continue;
+            for (int agent = 0; agent < agents; agent++) {
+                int from = planner.getRoute(agent)[t - 1];
+                int to = planner.getRoute(agent)[t];
+                int other = occupant[from];
+                if (from != to && other != -1 && other != agent && planner.getRoute(other)[t - 1] == to)
+                    fail(name + ": agents " + agent + " and " + other + " swap cells at tick " + t);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+    MapSnapshotTest -> Writes maps with their region index through
+    MapSnapshot and reads them back, on seeded random maps fragmented into
+    hundreds of small regions. Those are the maps whose regions come out
+    raw rather than as runs, which is where the saved region count and the
+    region ids have to agree for the file to load again.
+ */
+
+package pathfinding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class MapSnapshotTest {
+
+    private static final int MAPS = 50;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fragmentedMapsRoundTrip() throws Exception {
+        SplittableRandom random = new SplittableRandom(58);
+        for (int m = 0; m < MAPS; m++) {
+            GridMap map = new GridMap(150 + random.nextInt(101), 150 + random.nextInt(101));
+            double fill = 0.5 + random.nextDouble() * 0.15;
+            for (int cell = 0; cell < map.getCellCount(); cell++) {
+                if (random.nextDouble() < fill)
+                    map.setBlocked(cell, true);
+                else if (random.nextInt(4) == 0)
+                    map.setWeight(cell, 1 + random.nextInt(9));
+            }
+            roundTrip(map, "map " + m + ", " + map.getWidth() + " x " + map.getHeight());
+        }
+    }
+
+    /* The map from the report: 191 x 188 at 58 percent blocked, 411 regions */
+    @Test
+    void reportedMapRoundTrips() throws Exception {
+        SplittableRandom random = new SplittableRandom(191188);
+        GridMap map = new GridMap(191, 188);
+        for (int cell = 0; cell < map.getCellCount(); cell++)
+            map.setBlocked(cell, random.nextDouble() < 0.58);
+        roundTrip(map, "191 x 188");
+    }
+
+    private void roundTrip(GridMap map, String name) throws Exception {
+        ComponentIndex components = new ComponentIndex(map);
+        MapSnapshot snapshot = new MapSnapshot(map);
+        snapshot.setStart(0);
+        snapshot.setTarget(map.getCellCount() - 1);
+        snapshot.setComponentIndex(components);
+        Path file = directory.resolve("snapshot.bin");
+        snapshot.write(file);
+
+        MapSnapshot loaded = MapSnapshot.read(file);
+        GridMap copy = loaded.getMap();
+        assertEquals(0, loaded.getStart(), name);
+        assertEquals(map.getCellCount() - 1, loaded.getTarget(), name);
+        ComponentIndex loadedComponents = loaded.getComponentIndex();
+        assertNotNull(loadedComponents, name);
+        assertEquals(components.getComponentCount(), loadedComponents.getComponentCount(), name);
+
+        // Region ids may be renumbered, but must map one to one
+        int[] renamed = new int[components.getComponentCount()];
+        int[] original = new int[components.getComponentCount()];
+        Arrays.fill(renamed, -1);
+        Arrays.fill(original, -1);
+        for (int cell = 0; cell < map.getCellCount(); cell++) {
+            assertEquals(map.isBlocked(cell), copy.isBlocked(cell), name + ", cell " + cell);
+            assertEquals(map.getWeight(cell), copy.getWeight(cell), name + ", cell " + cell);
+            int a = components.componentOf(cell);
+            int b = loadedComponents.componentOf(cell);
+            if (a == ComponentIndex.NONE) {
+                assertEquals(ComponentIndex.NONE, b, name + ", cell " + cell);
+                continue;
+            }
+            if (renamed[a] == -1 && original[b] == -1) {
+                renamed[a] = b;
+                original[b] = a;
+            }
+            assertEquals(renamed[a], b, name + ", cell " + cell);
+            assertEquals(original[b], a, name + ", cell " + cell);
+        }
+    }
+}
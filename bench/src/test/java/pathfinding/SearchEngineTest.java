@@ -0,0 +1,144 @@
+/*
+    SearchEngineTest -> Checks the path costs of every Algorithm against a
+    plain Dijkstra on a fixed, seeded set of random maps, so changes to the
+    open lists (IndexedHeap, BucketQueue) or the search loops cannot make
+    paths longer or invalid unnoticed. The maps mix obstacle densities with
+    unweighted, lightly weighted (bucket queue) and heavily weighted (heap)
+    terrain, and every query is also run without corner cutting.
+
+    One engine answers all the queries of a map, as in the application, so
+    state left over from a previous query shows up as a wrong cost too.
+ */
+
+package pathfinding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchEngineTest {
+
+    private static final long SEED = 20240611L;
+    private static final int MAPS = 36;
+    private static final int QUERIES_PER_MAP = 25;
+
+    @Test
+    void costsMatchDijkstra() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int queries = 0;
+        for (int m = 0; m < MAPS; m++) {
+            GridMap map = randomMap(random, m % 3);
+            for (Algorithm algorithm : Algorithm.values()) {
+                for (int corners = 0; corners < 2; corners++) {
+                    SearchEngine engine = new SearchEngine();
+                    engine.setAlgorithm(algorithm);
+                    engine.setCornerCutting(corners == 0);
+                    SplittableRandom cells = new SplittableRandom(SEED + m);
+                    for (int q = 0; q < QUERIES_PER_MAP; q++) {
+                        int start = freeCell(map, cells);
+                        int target = freeCell(map, cells);
+                        String query = "map " + m + ", " + algorithm + (corners == 0 ? "" : ", no corner cutting")
+                                       + ", " + start + " -> " + target;
+                        int expected = dijkstra(map, start, target, corners == 0);
+                        boolean found = engine.search(map, start, target);
+                        assertEquals(expected >= 0, found, query);
+                        if (found) {
+                            assertEquals(expected, engine.getPathCost(), query);
+                            assertEquals(expected, pathCost(map, engine.getPath(), engine.getPathLength(),
+                                                            start, target, corners == 0, query), query);
+                        }
+                        queries++;
+                    }
+                }
+            }
+        }
+        assertEquals(MAPS * QUERIES_PER_MAP * Algorithm.values().length * 2, queries);
+    }
+
+    /* A map of 20 to 60 cells a side, 0 to 35 percent blocked. Terrain 0 is
+       unweighted, 1 has weights up to 5 and 2 weights up to 60 */
+    private static GridMap randomMap(SplittableRandom random, int terrain) {
+        GridMap map = new GridMap(20 + random.nextInt(41), 20 + random.nextInt(41));
+        int fill = random.nextInt(36);
+        int maxWeight = terrain == 0 ? 1 : terrain == 1 ? 5 : 60;
+        for (int cell = 0; cell < map.getCellCount(); cell++) {
+            if (random.nextInt(100) < fill)
+                map.setBlocked(cell, true);
+            else if (maxWeight > 1 && random.nextInt(3) == 0)
+                map.setWeight(cell, 1 + random.nextInt(maxWeight));
+        }
+        return map;
+    }
+
+    private static int freeCell(GridMap map, SplittableRandom random) {
+        int cell;
+        do {
+            cell = random.nextInt(map.getCellCount());
+        } while (map.isBlocked(cell));
+        return cell;
+    }
+
+    /* Textbook Dijkstra over the same step costs as SearchEngine: a step
+       costs STRAIGHT_COST or DIAGONAL_COST times the weight of the cell it
+       enters. Returns the cost of the cheapest path, or -1 if there is none */
+    private static int dijkstra(GridMap map, int start, int target, boolean cutCorners) {
+        int width = map.getWidth();
+        int[] distance = new int[map.getCellCount()];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        distance[start] = 0;
+        PriorityQueue<Long> queue = new PriorityQueue<>(); // distance << 32 | cell
+        queue.add((long) start);
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int cell = (int) entry;
+            int d = (int) (entry >>> 32);
+            if (d > distance[cell])
+                continue;
+            if (cell == target)
+                return d;
+            int x = cell % width;
+            int y = cell / width;
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if ((i == 0 && j == 0) || !map.inBounds(x + i, y + j) || map.isBlocked(x + i, y + j))
+                        continue;
+                    if (!cutCorners && i != 0 && j != 0 && (map.isBlocked(x + i, y) || map.isBlocked(x, y + j)))
+                        continue;
+                    int next = map.indexOf(x + i, y + j);
+                    int step = (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST)
+                               * map.getWeight(next);
+                    if (d + step < distance[next]) {
+                        distance[next] = d + step;
+                        queue.add((long) (d + step) << 32 | next);
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /* Walks the path, checking that it joins start to target through free
+       adjacent cells, and returns what it costs */
+    private static int pathCost(GridMap map, int[] path, int length, int start, int target,
+                                boolean cutCorners, String query) {
+        assertTrue(length > 0, query);
+        assertEquals(start, path[0], query);
+        assertEquals(target, path[length - 1], query);
+        int cost = 0;
+        for (int k = 1; k < length; k++) {
+            int x = map.xOf(path[k - 1]), y = map.yOf(path[k - 1]);
+            int i = map.xOf(path[k]) - x, j = map.yOf(path[k]) - y;
+            assertTrue(Math.abs(i) <= 1 && Math.abs(j) <= 1 && (i != 0 || j != 0), query + ": step " + k + " is not a move");
+            assertTrue(!map.isBlocked(path[k]), query + ": step " + k + " enters a blocked cell");
+            if (!cutCorners && i != 0 && j != 0)
+                assertTrue(!map.isBlocked(x + i, y) && !map.isBlocked(x, y + j), query + ": step " + k + " cuts a corner");
+            cost += (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST) * map.getWeight(path[k]);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+    SearchExecutorTest -> Checks that SearchExecutor queries stop when
+    asked to on a map large enough (10M cells) that a search left running
+    would take far longer than the limits used here: a cancel gives the
+    engine back, a deadline expires the query on time, and cancelling
+    thousands of waiting queries drains the workers so the executor keeps
+    answering. The target is walled in, so every search would otherwise
+    expand the whole map.
+
+    The limits are generous compared to what is measured on a desktop
+    (tens of microseconds for a cancel), so a slow build machine does not
+    fail them, while a search that ignores its handle still does.
+
+    The virtual thread test is skipped on Java 17, where the executor has
+    none; run the tests on Java 21 to check that queries get virtual
+    threads and that none of them pins its carrier.
+ */
+
+package pathfinding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SearchExecutorTest {
+
+    private static final int SIDE = 3163;                 // 10,004,569 cells
+    private static final long STOP_LIMIT_MILLIS = 250;    // Cancel or deadline to engine released
+    private static final long DRAIN_LIMIT_MILLIS = 5000;  // Mass cancel to every worker idle
+    private static final int QUEUED = 5000;
+
+    private static GridMap map;
+    private static int start, walledIn, reachable;
+
+    private SearchExecutor executor;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void buildMap() {
+        map = new GridMap(SIDE, SIDE);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < map.getCellCount() / 5; i++)
+            map.setBlocked(random.nextInt(map.getCellCount()), true);
+        for (int y = SIDE - 6; y < SIDE; y++)
+            for (int x = SIDE - 6; x < SIDE; x++)
+                map.setBlocked(x, y, true);
+        start = map.indexOf(1, 1);
+        walledIn = map.indexOf(SIDE - 3, SIDE - 3);
+        reachable = map.indexOf(40, 40);
+        map.setBlocked(start, false);
+        map.setBlocked(walledIn, false);
+        map.setBlocked(reachable, false);
+    }
+
+    @AfterEach
+    void close() {
+        if (executor != null)
+            executor.close();
+    }
+
+    @Test
+    void cancelReleasesTheEngine() throws Exception {
+        executor = new SearchExecutor(map, Algorithm.ASTAR, 1);
+        // The first query also allocates the engine's arrays, which no
+        // cancel can cut short, so only cancel queries after it
+        assertNotNull(executor.submit(start, reachable).get());
+        for (int i = 0; i < 10; i++) {
+            SearchHandle handle = executor.submit(start, walledIn);
+            awaitRunning(handle);
+            Thread.sleep(20);
+            long cancelled = System.nanoTime();
+            assertTrue(handle.cancel(true));
+            awaitIdle(cancelled, STOP_LIMIT_MILLIS);
+            assertEquals(SearchHandle.Status.CANCELLED, handle.getStatus());
+            assertThrows(CancellationException.class, handle::get);
+        }
+    }
+
+    @Test
+    void cancelBeforeStartNeverSearches() throws Exception {
+        executor = new SearchExecutor(map, Algorithm.ASTAR, 1);
+        SearchHandle handle = new SearchHandle(start, walledIn);
+        handle.cancel(true);
+        long submitted = System.nanoTime();
+        executor.submit(handle);
+        assertThrows(CancellationException.class, handle::get);
+        awaitIdle(submitted, STOP_LIMIT_MILLIS);
+        assertEquals(SearchHandle.Status.CANCELLED, handle.getStatus());
+    }
+
+    @Test
+    void deadlineExpiresTheQuery() throws Exception {
+        executor = new SearchExecutor(map, Algorithm.JPS, 1);
+        // The first query also allocates the engine's arrays, which no
+        // deadline can cut short, so time only the queries after it
+        SearchHandle first = executor.submit(start, walledIn, 50, TimeUnit.MILLISECONDS);
+        assertThrows(CancellationException.class, first::get);
+        awaitIdle(System.nanoTime(), DRAIN_LIMIT_MILLIS);
+        for (int i = 0; i < 10; i++) {
+            SearchHandle handle = executor.submit(start, walledIn, 50, TimeUnit.MILLISECONDS);
+            assertThrows(CancellationException.class, handle::get);
+            assertEquals(SearchHandle.Status.EXPIRED, handle.getStatus());
+            assertTrue(handle.getLatencyNanos() < TimeUnit.MILLISECONDS.toNanos(50 + STOP_LIMIT_MILLIS),
+                       "expired after " + handle.getLatencyNanos() / 1000000 + " ms");
+            awaitIdle(System.nanoTime(), STOP_LIMIT_MILLIS);
+        }
+    }
+
+    @Test
+    void massCancelDrainsTheWorkers() throws Exception {
+        executor = new SearchExecutor(map, Algorithm.ASTAR, 2);
+        List<SearchHandle> handles = new ArrayList<>();
+        for (int i = 0; i < QUEUED; i++)
+            handles.add(executor.submit(start, walledIn));
+        awaitBusy();
+
+        long cancelled = System.nanoTime();
+        for (SearchHandle handle : handles)
+            handle.cancel(true);
+        for (SearchHandle handle : handles) {
+            assertThrows(CancellationException.class, handle::get);
+            assertEquals(SearchHandle.Status.CANCELLED, handle.getStatus());
+        }
+        awaitIdle(cancelled, DRAIN_LIMIT_MILLIS);
+
+        // The engines went back to the pool, later queries are still answered
+        SearchEngine reference = new SearchEngine();
+        assertTrue(reference.search(map, start, reachable));
+        SearchHandle after = executor.submit(start, reachable);
+        int[] path = after.get(DRAIN_LIMIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(path);
+        assertEquals(reference.getPathCost(), after.getPathCost());
+    }
+
+    @Test
+    void virtualThreadsDoNotPin() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "no virtual threads before Java 21");
+        executor = new SearchExecutor(map, Algorithm.ASTAR, 2);
+        assertTrue(executor.usesVirtualThreads());
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadStart");
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+            recording.start();
+            // Far more queries than engines, so most of them park waiting for
+            // one, and some are cancelled while they wait or search
+            List<SearchHandle> handles = new ArrayList<>();
+            for (int i = 0; i < QUEUED; i++)
+                handles.add(i % 10 == 0 ? executor.submit(start, walledIn, 20, TimeUnit.MILLISECONDS)
+                                        : executor.submit(start, reachable));
+            for (int i = 0; i < QUEUED; i += 7)
+                handles.get(i).cancel(true);
+            for (SearchHandle handle : handles) {
+                try {
+                    handle.get();
+                } catch (CancellationException e) {
+                    // cancelled or expired
+                }
+            }
+            awaitIdle(System.nanoTime(), DRAIN_LIMIT_MILLIS);
+            recording.stop();
+            Path file = directory.resolve("threads.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        int started = 0;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("jdk.VirtualThreadPinned"))
+                fail("a query pinned its carrier thread: " + event);
+            if (event.getEventType().getName().equals("jdk.VirtualThreadStart"))
+                started++;
+        }
+        assertTrue(started >= QUEUED, "only " + started + " virtual threads for " + QUEUED + " queries");
+    }
+
+    /* Waits until the query holds an engine */
+    private static void awaitRunning(SearchHandle handle) throws InterruptedException {
+        long limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (handle.getStatus() != SearchHandle.Status.RUNNING) {
+            if (handle.isDone() || System.nanoTime() > limit)
+                fail("query did not start, " + handle.getStatus());
+            Thread.sleep(1);
+        }
+    }
+
+    /* Waits until some query holds an engine. Virtual threads start in no
+       particular order, so it need not be the first one submitted */
+    private void awaitBusy() throws InterruptedException {
+        long limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getActiveCount() == 0) {
+            if (System.nanoTime() > limit)
+                fail("no query started");
+            Thread.sleep(1);
+        }
+    }
+
+    /* Waits until no search holds an engine, failing if that takes more
+       than limitMillis from since */
+    private void awaitIdle(long since, long limitMillis) throws InterruptedException {
+        long limit = since + TimeUnit.MILLISECONDS.toNanos(limitMillis);
+        while (executor.getActiveCount() != 0) {
+            if (System.nanoTime() > limit)
+                fail("engine still busy " + limitMillis + " ms after the query was stopped");
+            Thread.sleep(1);
+        }
+    }
+}
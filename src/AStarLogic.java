@@ -1,55 +1,181 @@
-/* Handles the logic of the A* algorithm. */
-
-import java.util.PriorityQueue;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Comparator;
-import java.util.Iterator;
+/* Handles the logic of the A* algorithm. The search itself is done by the
+   headless pathfinding.SearchEngine, this class adapts it to the Grid panel:
+   it takes the column and row of a cell, which the panel finds through its
+   Viewport, and converts them to cell indices. The search runs at
+   full speed while a pathfinding.SearchTrace records it, and a TracePlayer
+   then replays the trace on the panel. With live replanning on, a
+   pathfinding.DStarLite planner repairs the displayed path after every
+   obstacle edit or start/target move instead of searching from scratch.
+   Cells can also be given terrain weights, which make entering them cost
+   more; the search always runs plain A* on a weighted map, and the live
+   planner repairs its path after weight edits as after obstacle edits. A
+   pathfinding.ComponentIndex follows every obstacle edit, so a search for
+   a target that is walled off from the start fails at once.
+   In anytime mode the run is a pathfinding.AnytimeSearch under a time
+   budget instead: each successively better path it finds is shown in
+   turn, with the suboptimality bound it was proven to be within.
+   With more than one agent the run plans a team instead: the start/target
+   pair plus agents on random free cells, routed by a
+   pathfinding.CooperativePlanner so that they never collide, and every
+   agent's route is shown in its own color. The map, start and target
+   can be saved to and loaded from a pathfinding.MapSnapshot file. In
+   bidirectional mode the run is a pathfinding.BidirectionalSearch, which
+   searches from both ends on two threads; the replay shows the backward
+   frontier in colors of its own. */
+
+import pathfinding.Algorithm;
+import pathfinding.AnytimeListener;
+import pathfinding.AnytimeSearch;
+import pathfinding.AnytimeSolution;
+import pathfinding.BidirectionalSearch;
+import pathfinding.CellBitSet;
+import pathfinding.ComponentIndex;
+import pathfinding.CooperativePlanner;
+import pathfinding.DStarLite;
+import pathfinding.GridMap;
+import pathfinding.MapSnapshot;
+import pathfinding.SearchEngine;
+import pathfinding.SearchHandle;
+import pathfinding.SearchMetrics;
+import pathfinding.SearchTrace;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AStarLogic {
 
+    private static final int SOLUTION_DELAY = 400; // Milliseconds each anytime path is shown alone
+
     private final Grid graphicPanel;
 
-    private final int gridSize;
     private final Node start;
     private final Node target;
 
-    private final PriorityQueue<Node> openSites; // Store open nodes to consider
-    private final Set<Node> closedSites;         // Store nodes already considered
-    private final Set<Node> obstacles;           // Store nodes that are non-traversable
-    private final Set<Node> optimalPathNodes;    // Store nodes in the path (start->end)
+    private final GridMap map;          // Obstacles and terrain weights, indexed by cell
+    private final ComponentIndex components; // Regions of free cells of map, updated on every edit
+    private final SearchEngine engine;  // Runs the A* search over the map
+    private final AnytimeSearch anytime; // Runs the time budgeted search in anytime mode
+    private final BidirectionalSearch bidirectional; // Runs the search from both ends in bidirectional mode
+    private final CellBitSet optimalPath; // Cells in the path (start->end)
+    private DStarLite planner;          // Non null while live replanning is on
+    private final TracePlayer player;   // Replays the last search on the panel
+
+    /* Everything below is only touched on the Event Dispatch Thread, except
+       what a search run reads: beginSearch takes a snapshot of the map, the
+       start and target cells and the algorithm before the worker starts,
+       and the worker hands its finished, no longer modified trace back with
+       invokeLater. So the search and the painting never share mutable state */
+    private Algorithm algorithm;
+    private boolean anytimeMode;
+    private boolean bidirectionalMode;
+    private int anytimeBudget;          // Milliseconds per anytime run
+    private int agentCount;             // Agents a run plans, 1 for the single path
+    private final GridMap searchMap;    // Snapshot of map the worker searches
+    private final ComponentIndex searchComponents; // Snapshot of components, for searchMap
+    private int searchStart, searchTarget;
+    private SearchHandle searchHandle;  // The run's query, made by beginSearch and cancelled by reset
+    private Algorithm searchAlgorithm;
+    private boolean searchAnytime;
+    private boolean searchBidirectional;
+    private int searchAgents;
+    private long searchDeadline;        // System.nanoTime() at which an anytime run stops
+    private final AtomicBoolean searching; // Single flight guard, set while a search runs
+    private volatile int runNumber;     // Bumped by reset, results of older runs are dropped
+    private int searchRun;              // runNumber when beginSearch started the run
+    private boolean mapLoaded;          // map was replaced by loadMap, its version may repeat an older one
+
+    /* Anytime paths wait here, on the Event Dispatch Thread, until the
+       timer shows them one after the other */
+    private final ArrayDeque<AnytimeSolution> pendingSolutions;
+    private final Timer solutionTimer;
+    private boolean anytimePathShown;
+
+    /* Agent whose route covers each cell after a team run, -1 for none.
+       Allocated by the first team run */
+    private int[] agentOfCell;
+    private boolean agentsShown;
 
     private boolean running;
 
-    public AStarLogic (Grid panel) {
+    public AStarLogic (Grid panel, int columns, int rows) {
         graphicPanel = panel;
-        gridSize = 10; // side length of each square in grid
 
         /* Initialize the data structures */
-        Comparator<Node> comparator = new NodeComparator();
-        openSites = new PriorityQueue<>(comparator);
-        closedSites = new HashSet<>();
-        obstacles = new HashSet<>();
-        optimalPathNodes = new HashSet<>();
-
-        /* Initialize the start and target Nodes */
-        start = new Node(null, 40, 500);
-        target = new Node(null, 720,  20);
+        map = new GridMap(columns, rows);
+        optimalPath = new CellBitSet(map.getCellCount());
+        components = new ComponentIndex(map);
+        engine = new SearchEngine();
+        anytime = new AnytimeSearch();
+        bidirectional = new BidirectionalSearch();
+        anytimeBudget = 50;
+        agentCount = 1;
+        pendingSolutions = new ArrayDeque<>();
+        solutionTimer = new Timer(SOLUTION_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showNextSolution();
+            }
+        });
+        algorithm = Algorithm.ASTAR;
+        searchMap = new GridMap(columns, rows);
+        searchComponents = new ComponentIndex(searchMap);
+        engine.setComponentIndex(searchComponents);
+        searching = new AtomicBoolean(false);
+        player = new TracePlayer(panel, map.getCellCount());
+
+        /* Initialize the start and target Nodes, bottom left and top right */
+        start = new Node(columns / 20, rows * 5 / 6);
+        target = new Node(columns * 9 / 10, rows / 30);
 
         running = false; // Start button sets to true, Reset sets to false
     }
 
     /* The graphicPanel can call setObstaclePosition when the user draws
-       obstacles on the grid, the AStarLogic keeps track of the coordinates
-       of the obstacles in the obstacles set */
+       obstacles on the grid, the AStarLogic marks the cell at column x,
+       row y as blocked in the map */
     public void setObstaclePosition(int x, int y) {
-        Node insertion = new Node(null, x, y);
-        obstacles.add(insertion);
+        if (!inBounds(x, y) || map.isBlocked(cellAt(x, y)))
+            return;
+        map.setBlocked(cellAt(x, y), true);
+        components.cellChanged(cellAt(x, y));
+        if (planner != null) {
+            planner.cellChanged(cellAt(x, y));
+            replan();
+        }
     }
 
-    // Accessors for the graphic panel
-    public int getGridSize() {
-        return gridSize;
+    /* Paints a terrain weight onto the cell at column x, row y. Any
+       weight, including the plain weight 1, also clears an obstacle there */
+    public void setTerrainWeight(int x, int y, int weight) {
+        if (!inBounds(x, y))
+            return;
+        int cell = cellAt(x, y);
+        boolean wasBlocked = map.isBlocked(cell);
+        if (!wasBlocked && map.getWeight(cell) == weight)
+            return;
+        if (wasBlocked)
+            map.setBlocked(cell, false);
+        map.setWeight(cell, weight);
+        components.cellChanged(cell);
+        if (planner != null) {
+            planner.cellChanged(cell);
+            replan();
+        }
+    }
+
+    // Accessors for the graphic panel, cells are given by column x and row y
+    public int getColumns() {
+        return map.getWidth();
+    }
+    public int getRows() {
+        return map.getHeight();
     }
     public Node getStart() {
         return start;
@@ -57,190 +183,483 @@ public class AStarLogic {
     public Node getTarget() {
         return target;
     }
-    public Iterator<Node> getOpenSitesIterator() {
-        return openSites.iterator();
+    public boolean isRunning() {
+        return running;
     }
-    public Iterator<Node> getClosedSitesIterator() {
-        return closedSites.iterator();
+    public boolean isLiveReplanning() {
+        return planner != null;
     }
-    public Iterator<Node> getObstacleIterator() {
-        return obstacles.iterator();
+    public TracePlayer getTracePlayer() {
+        return player;
     }
-    public Iterator<Node> getOptimalPathIterator() {
-        return optimalPathNodes.iterator();
+    /* The path is shown once the replay of the search reaches its end, or
+       all the time while live replanning is on */
+    public boolean isPathShown() {
+        return planner != null || anytimePathShown || (running && player.isAtEnd());
     }
-    public boolean isRunning() {
-        return running;
+
+    /* Cell sets for painting, indexed by y * columns + x */
+    public CellBitSet getObstacleCells() {
+        return map.getObstacles();
+    }
+    public CellBitSet getClosedCells() {
+        return player.getClosedCells();
+    }
+    public CellBitSet getOpenCells() {
+        return player.getOpenCells();
+    }
+    public CellBitSet getBackwardClosedCells() {
+        return player.getBackwardClosedCells();
+    }
+    public CellBitSet getBackwardOpenCells() {
+        return player.getBackwardOpenCells();
+    }
+    public CellBitSet getPathCells() {
+        return optimalPath;
+    }
+
+    /* Chooses between plain A* and the Jump Point Search variants */
+    public void setAlgorithm(Algorithm searchAlgorithm) {
+        algorithm = searchAlgorithm;
+    }
+
+    /* In anytime mode a run searches for budgetMillis, showing each better
+       path as it is found, instead of running A* to completion */
+    public void setAnytime(boolean enabled, int budgetMillis) {
+        anytimeMode = enabled;
+        anytimeBudget = budgetMillis;
+    }
+
+    /* In bidirectional mode a run searches from the start and the target
+       at once, on two threads */
+    public void setBidirectional(boolean enabled) {
+        bidirectionalMode = enabled;
+    }
+
+    /* With more than one agent a run plans a team of that many agents,
+       the first of them going from start to target */
+    public void setAgentCount(int agents) {
+        agentCount = agents;
+    }
+
+    /* Turning live replanning on plans the current path once, after that
+       every edit only repairs the part of the search it affects */
+    public void setLiveReplanning(boolean enabled) {
+        if (enabled) {
+            planner = new DStarLite(map, cellAt(start.getX(), start.getY()),
+                                    cellAt(target.getX(), target.getY()));
+            replan();
+        } else {
+            planner = null;
+            optimalPath.clear();
+            graphicPanel.repaintAll();
+        }
     }
 
     public boolean isAnObstacle(int x, int y) {
-        Node test = new Node(null, x, y);
-        return obstacles.contains(test);
+        return inBounds(x, y) && map.isBlocked(x, y);
+    }
+    public boolean isWeighted() {
+        return map.isWeighted();
+    }
+    public int getWeight(int x, int y) {
+        return inBounds(x, y) ? map.getWeight(cellAt(x, y)) : 1;
+    }
+    public int getWeight(int cell) {
+        return map.getWeight(cell);
+    }
+    public boolean isOpen(int x, int y) {
+        return inBounds(x, y) && player.getOpenCells().get(cellAt(x, y));
+    }
+    public boolean isClosed(int x, int y) {
+        return inBounds(x, y) && player.getClosedCells().get(cellAt(x, y));
+    }
+    public boolean isBackwardOpen(int x, int y) {
+        return inBounds(x, y) && player.getBackwardOpenCells().get(cellAt(x, y));
+    }
+    public boolean isBackwardClosed(int x, int y) {
+        return inBounds(x, y) && player.getBackwardClosedCells().get(cellAt(x, y));
+    }
+    public boolean isOnOptimalPath(int x, int y) {
+        return inBounds(x, y) && optimalPath.get(cellAt(x, y));
+    }
+    /* The agent whose route covers the cell, -1 if none does */
+    public int getAgentAt(int x, int y) {
+        return agentsShown && inBounds(x, y) ? agentOfCell[cellAt(x, y)] : -1;
+    }
+    /* The same for a cell index, for the renderer's per cell loops */
+    public int getAgentAt(int cell) {
+        return agentsShown ? agentOfCell[cell] : -1;
+    }
+    public boolean isAgentsShown() {
+        return agentsShown;
     }
 
     /* Resets our data structures and sets running to false, effectively
        resetting the algorithm to a fresh start */
     public void reset() {
-        openSites.clear();
-        obstacles.clear();
-        closedSites.clear();
-        optimalPathNodes.clear();
+        runNumber++;
+        if (searchHandle != null)
+            searchHandle.cancel(true); // stops the run even if the worker has not started it yet
+        solutionTimer.stop();
+        pendingSolutions.clear();
+        anytimePathShown = false;
+        agentsShown = false;
+        player.clear();
+        map.clear();
+        components.rebuild();
+        optimalPath.clear();
         running = false;
+        if (planner != null) {
+            planner.reset();
+            replan();
+        }
+    }
+
+    /* Writes the obstacles, weights, start and target, and the region index
+       so loading does not have to rebuild it */
+    public void saveMap(Path file) throws IOException {
+        MapSnapshot snapshot = new MapSnapshot(map);
+        snapshot.setStart(cellAt(start.getX(), start.getY()));
+        snapshot.setTarget(cellAt(target.getX(), target.getY()));
+        snapshot.setComponentIndex(components);
+        snapshot.write(file);
+    }
+
+    /* Replaces the map, start and target with those saved by saveMap. Like
+       reset it stops the current run; the snapshot must be for a grid of
+       this size */
+    public void loadMap(Path file) throws IOException {
+        MapSnapshot snapshot = MapSnapshot.read(file);
+        GridMap loaded = snapshot.getMap();
+        if (loaded.getWidth() != map.getWidth() || loaded.getHeight() != map.getHeight())
+            throw new IOException("The map is " + loaded.getWidth() + " x " + loaded.getHeight()
+                                  + " cells, the grid " + map.getWidth() + " x " + map.getHeight());
+        reset();
+        map.copyFrom(loaded);
+        mapLoaded = true;
+        if (snapshot.getComponentIndex() != null)
+            components.copyFrom(snapshot.getComponentIndex());
+        else
+            components.rebuild();
+        if (snapshot.getStart() != MapSnapshot.NO_CELL)
+            moveNode(start, snapshot.getStart());
+        if (snapshot.getTarget() != MapSnapshot.NO_CELL)
+            moveNode(target, snapshot.getTarget());
+        if (planner != null)
+            setLiveReplanning(true); // plans again on the new map
+    }
+
+    /* Puts a node on cell */
+    private void moveNode(Node node, int cell) {
+        node.setX(map.xOf(cell));
+        node.setY(map.yOf(cell));
     }
 
     /* Allows the user to drag the start/target nodes, here we set their new pos */
     public void setStartLocation(int x, int y) {
+        if (!inBounds(x, y)) // dropped outside of the grid
+            return;
         int oldX = start.getX();
         int oldY = start.getY();
         start.setX(x);
         start.setY(y);
-        graphicPanel.repaint(oldX, oldY, gridSize, gridSize);
+        graphicPanel.repaintCell(oldX, oldY);
+        if (planner != null) {
+            planner.moveStart(cellAt(x, y));
+            replan();
+        }
     }
     public void setTargetLocation(int x, int y) {
+        if (!inBounds(x, y)) // dropped outside of the grid
+            return;
         int oldX = target.getX();
         int oldY = target.getY();
         target.setX(x);
         target.setY(y);
-        graphicPanel.repaint(oldX, oldY, gridSize, gridSize);
+        graphicPanel.repaintCell(oldX, oldY);
+        if (planner != null) {
+            planner.moveGoal(cellAt(x, y));
+            replan();
+        }
     }
 
-    /* Given an x,y coordinate from the A* (executeAStar) function, drawSquare
-       tells the graphicPanel to paint it after a Thread sleep */
-    public void drawSquare(int x, int y) {
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
+    /* Prepares a search run on the Event Dispatch Thread: copies the map and
+       the start/target cells for the worker. Returns false, and starts
+       nothing, while the previous run is still searching */
+    public boolean beginSearch() {
+        if (!searching.compareAndSet(false, true))
+            return false;
+        running = true;
+        if (mapLoaded || searchMap.getVersion() != map.getVersion()) { // unchanged maps keep their JPS+ table
+            searchMap.copyFrom(map);
+            searchComponents.copyFrom(components);
+            mapLoaded = false;
         }
-        graphicPanel.repaint(x, y, gridSize, gridSize);
+        searchStart = cellAt(start.getX(), start.getY());
+        searchTarget = cellAt(target.getX(), target.getY());
+        searchHandle = new SearchHandle(searchStart, searchTarget);
+        searchRun = runNumber;
+        searchAlgorithm = algorithm;
+        searchAnytime = anytimeMode;
+        searchBidirectional = bidirectionalMode;
+        searchAgents = agentCount;
+        if (agentsShown) { // a new run replaces the routes of the last team
+            agentsShown = false;
+            graphicPanel.repaintAll();
+        }
+        if (searchAgents > 1) {
+            player.clear();
+            repaintPath();
+            optimalPath.clear();
+            anytimePathShown = false;
+        } else if (searchAnytime) { // the paths replace the replay of the last search
+            searchDeadline = System.nanoTime() + anytimeBudget * 1000000L;
+            player.clear();
+            solutionTimer.stop();
+            pendingSolutions.clear();
+            repaintPath();
+            optimalPath.clear();
+            anytimePathShown = false;
+        }
+        return true;
     }
 
-    /* The A* Algorithm. Assumes known start/target positions, gridSize */
+    /* The A* Algorithm. Runs on the worker thread after beginSearch, over
+       the snapshot it took, and hands the recorded trace to the player */
     public void executeAStar() {
-        running = true;
+        if (searchAgents > 1) {
+            executeCooperative();
+            return;
+        }
+        if (searchAnytime) {
+            executeAnytime();
+            return;
+        }
+        if (searchBidirectional) {
+            executeBidirectional();
+            return;
+        }
+        try {
+            final int run = searchRun; // a reset before the worker got here already counts
+            final SearchTrace trace = new SearchTrace();
+            trace.begin(searchMap, searchStart, searchTarget);
+            engine.setListener(trace);
+            engine.setAlgorithm(searchAlgorithm);
+
+            boolean found = engine.search(searchMap, searchHandle);
+            SearchMetrics metrics = engine.getMetrics();
+            trace.end(metrics, engine.getPath(), found ? engine.getPathLength() : 0);
+
+            String time = String.format("%.3f ms", metrics.getNanos() / 1e6);
+            if (found) {
+                System.out.println("Success: Found optimal path! (" + metrics.getAlgorithm() + ", "
+                                   + metrics.getExpanded() + " nodes expanded in " + time + ")");
+            } else if (run == runNumber && metrics.getPushes() == 0) {
+                System.out.println("Failure: The target is walled off from the start (rejected in " + time + ")");
+            } else if (run == runNumber) {
+                System.out.println("Failure: Did not find path (" + time + ")");
+            }
 
-        openSites.add(start); // First Node to consider is Start Node
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (run != runNumber) // reset while searching
+                        return;
+                    setOptimalPath(trace.getPath());
+                    player.load(trace);
+                }
+            });
+        } finally {
+            searching.set(false);
+        }
+    }
 
-        Node current;     // current -> reference to node currently considered
-        Node neighbor;    // neighbor -> reference for current's surrounding Nodes
+    /* The search from both ends. Runs on the worker thread like executeAStar,
+       which waits for the backward side's thread, and records both sides
+       into one trace */
+    private void executeBidirectional() {
+        try {
+            final int run = searchRun;
+            final SearchTrace trace = new SearchTrace();
+            trace.begin(searchMap, searchStart, searchTarget);
+            bidirectional.setListeners(trace, trace.backward());
+
+            boolean found = bidirectional.search(searchMap, searchHandle);
+            SearchMetrics metrics = bidirectional.getMetrics();
+            trace.end(metrics, bidirectional.getPath(), found ? bidirectional.getPathLength() : 0);
+
+            String time = String.format("%.3f ms", metrics.getNanos() / 1e6);
+            if (found) {
+                System.out.println("Success: Found optimal path! (Bidirectional A*, "
+                                   + bidirectional.getForwardExpanded() + " + "
+                                   + bidirectional.getBackwardExpanded() + " nodes expanded in " + time + ")");
+            } else if (run == runNumber) {
+                System.out.println("Failure: Did not find path (" + time + ")");
+            }
 
-        /* Reusable reference to a Node whose coordinates will be set for checking
-          if closedSites or obstacles contains a certain x,y marked Node */
-        Node testNode = new Node(null, 0, 0);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (run != runNumber) // reset while searching
+                        return;
+                    setOptimalPath(trace.getPath());
+                    player.load(trace);
+                }
+            });
+        } finally {
+            searching.set(false);
+        }
+    }
 
-        /* Loop that will keep iterating (searching) until one of two exit
-           conditions are met or user chooses to reset (set running to false) */
-        while (running) {
-            current = openSites.poll(); // Consider the open node w/ lowest f_cost
+    /* The anytime search. Runs on the worker thread like executeAStar and
+       passes every path to the Event Dispatch Thread as soon as it is found */
+    private void executeAnytime() {
+        try {
+            final int run = searchRun;
+            anytime.setListener(new AnytimeListener() {
+                public void solutionFound(final AnytimeSolution solution) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (run != runNumber) // reset while searching
+                                return;
+                            pendingSolutions.add(solution);
+                            if (!solutionTimer.isRunning()) {
+                                showNextSolution();
+                                solutionTimer.start();
+                            }
+                        }
+                    });
+                }
+            });
+            if (!anytime.search(searchMap, searchHandle, searchDeadline) && run == runNumber)
+                System.out.println("Failure: Did not find a path within " + anytimeBudget + " ms");
+        } finally {
+            searching.set(false);
+        }
+    }
 
-            /* Exit Condition 1 : current is null -> No more nodes to consider */
-            if (current == null) {
-                System.out.println("Failure: Did not find path");
-                break;
-            }
-            /* Exit condition 2 : current is target -> path found, we're done */
-            if (current.equals(target)) {
-                System.out.println("Success: Found optimal path!");
-                setOptimalPath(current);
-                break;
-            }
-            closedSites.add(current); // Add current to set of examined Nodes
-
-            /* tell the graphics panel to paint the square current resides on */
-            drawSquare(current.getX(), current.getY());
-
-            /* Loop through current's surrounding Nodes
-               via obtaining x,y coordinates from multiplying i,j and gridSize
-
-               Note: as we consider the neighbor nodes, there are certain
-               conditions that if met, make the neighbor illegible for
-               consideration. We use the keyword "continue" which effectively
-               skips to the next iteration of the loop (skipping the neighbor) */
-            for (int i = -1; i <= 1; i++) {
-                for (int j = -1; j <= 1; j++) {
-                    /* This would consider the current node, so we skip */
-                    if (i == 0 && j == 0)
-                        continue;
-
-                    // Calculate the x,y coordinates of the neighbor Node
-                    int neighborX = current.getX() + (gridSize * i);
-                    int neighborY = current.getY() + (gridSize * j);
-
-                    // If the neighbor Node is out of bounds, skip
-                    if (!inBounds(neighborX, neighborY)) {
-                        continue;
-                    }
-
-                    /* Now we define the testNode w/ the neighbor X,Y
-                      coordinates, to see if the neighbor node is in
-                      closedSites (already been considered), or is a
-                      obstacle */
-                    testNode.setX(neighborX);
-                    testNode.setY(neighborY);
-                    if (closedSites.contains(testNode) ||
-                        obstacles.contains(testNode)) {
-                        continue;
-                    }
-
-                    /* Search openSites for the actual neighbor node
-                       (comparing with testNode) if returned null, then the
-                       neighbor node hasn't been considered prior, it should be
-                       Otherwise, if the gCost from current is less than its
-                       old gCost, then update it. */
-
-                    Node actualNeighborNode = getActualNodeInOpenSites(testNode);
-                    int gCostCurrentToNeighbor = current.getGCostFromNode(testNode);
-                    if (actualNeighborNode == null) {
-                        neighbor = new Node(current, neighborX, neighborY);
-                        neighbor.setGCost(gCostCurrentToNeighbor);
-                        neighbor.setHCost(target);
-                        neighbor.setFCost();
-                        openSites.add(neighbor);
-                        drawSquare(neighborX, neighborY);
-                    } else if (gCostCurrentToNeighbor < actualNeighborNode.getGCost()) {
-                        openSites.remove(actualNeighborNode);
-                        neighbor = new Node(current, neighborX, neighborY);
-                        neighbor.setGCost(gCostCurrentToNeighbor);
-                        neighbor.setHCost(target);
-                        neighbor.setFCost();
-                        openSites.add(neighbor);
-                    }
+    /* Plans a team with the cooperative planner. Runs on the worker thread
+       like executeAStar; agent 0 goes from start to target, the others get
+       random distinct free cells with their targets in the same region */
+    private void executeCooperative() {
+        try {
+            final int run = searchRun;
+            CooperativePlanner planner = new CooperativePlanner(searchMap);
+            planner.addAgent(searchStart, searchTarget);
+            Random random = new Random();
+            CellBitSet taken = new CellBitSet(searchMap.getCellCount());
+            taken.set(searchStart);
+            taken.set(searchTarget);
+            int free = searchMap.getCellCount() - searchMap.getObstacles().cardinality() - 2;
+            for (int agent = 1; agent < searchAgents && free >= 2; agent++) {
+                int from = freeCell(random, taken);
+                taken.set(from); // so that to is a different cell
+                int to = freeCell(random, taken);
+                for (int tries = 0; tries < 100 && !searchComponents.connected(from, to); tries++)
+                    to = freeCell(random, taken);
+                if (!searchComponents.connected(from, to)) {
+                    taken.clear(from);
+                    continue; // no target for it within 100 tries, the team is one agent short
                 }
+                taken.set(to);
+                free -= 2;
+                planner.addAgent(from, to);
             }
+
+            long begin = System.nanoTime();
+            boolean arrived = planner.plan(4 * (searchMap.getWidth() + searchMap.getHeight()), searchHandle);
+            String time = String.format("%.3f ms", (System.nanoTime() - begin) / 1e6);
+            if (run == runNumber)
+                System.out.println((arrived ? "Success: Planned " : "Failure: Not every agent arrived, planned ")
+                                   + planner.getAgentCount() + " agents in " + time + " (" + planner.getTick()
+                                   + " ticks, " + planner.getSearchCount() + " window searches, "
+                                   + planner.getFailedCount() + " found no way through)");
+
+            final int[][] routes = new int[planner.getAgentCount()][];
+            for (int agent = 0; agent < routes.length; agent++)
+                routes[agent] = planner.getRoute(agent);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (run != runNumber) // reset while searching
+                        return;
+                    showAgents(routes);
+                }
+            });
+        } finally {
+            searching.set(false);
         }
     }
 
-    /* Helper function -> Determines if a coordinate is within bounds */
-    private boolean inBounds(int x, int y) {
-        return x >= 0 && x < graphicPanel.getWidth()
-                && y >= 0 && y < graphicPanel.getHeight();
-    }
-    /* Helper function -> Determines if a given Node has already been considered,
-       iterates through priority queue, returning given key node if found, or null */
-    private Node getActualNodeInOpenSites(Node key) {
-        if (key == null)
-            return null;
-
-        Iterator<Node> iterator = openSites.iterator();
-        Node curr;
-        while (iterator.hasNext()) {
-            curr = iterator.next();
-            if (curr.equals(key))
-                return curr;
-        }
-        return null;
-    }
-
-    /* Once a path has been found, the setOptimalPath function executes, painting
-       the path from the target node to the start node (backtracks Node parents)
-     */
-    private void setOptimalPath(Node curr) {
-        if (curr == null)
+    /* A random free cell of the search map that no agent uses yet */
+    private int freeCell(Random random, CellBitSet taken) {
+        int cell;
+        do {
+            cell = random.nextInt(searchMap.getCellCount());
+        } while (searchMap.isBlocked(cell) || taken.get(cell));
+        return cell;
+    }
+
+    /* Colors every cell an agent passes through. Where routes cross, the
+       agent planned last is shown */
+    private void showAgents(int[][] routes) {
+        if (agentOfCell == null)
+            agentOfCell = new int[map.getCellCount()];
+        Arrays.fill(agentOfCell, -1);
+        for (int agent = 0; agent < routes.length; agent++)
+            for (int cell : routes[agent])
+                agentOfCell[cell] = agent;
+        agentsShown = true;
+        graphicPanel.repaintAll();
+    }
+
+    /* Replaces the shown path with the next anytime path, if there is one */
+    private void showNextSolution() {
+        AnytimeSolution solution = pendingSolutions.poll();
+        if (solution == null) {
+            solutionTimer.stop();
             return;
+        }
+        repaintPath();
+        setOptimalPath(solution.getPath());
+        anytimePathShown = true;
+        repaintPath();
+        System.out.println(String.format("Path with cost %d, %s (epsilon %.2f, %d nodes expanded in %.3f ms)",
+                                         solution.getCost(), solution.isOptimal() ? "optimal"
+                                             : String.format("within %.3f of optimal", solution.getBound()),
+                                         solution.getEpsilon(), solution.getExpanded(), solution.getNanos() / 1e6));
+    }
 
-        while (!curr.equals(start)) {
-            optimalPathNodes.add(curr);
-            curr = curr.getParent();
-            graphicPanel.repaint(curr.getX(), curr.getY(), gridSize, gridSize);
+    /* Repairs the live path after an edit and repaints the cells of the old
+       and the new path */
+    private void replan() {
+        repaintPath();
+        optimalPath.clear();
+        if (planner.computePath()) {
+            int[] path = planner.getPath();
+            for (int i = planner.getPathLength() - 1; i > 0; i--)
+                optimalPath.set(path[i]);
         }
+        repaintPath();
+    }
+    private void repaintPath() {
+        for (int cell = optimalPath.nextSetBit(0); cell >= 0; cell = optimalPath.nextSetBit(cell + 1))
+            graphicPanel.repaintCell(map.xOf(cell), map.yOf(cell));
+    }
+
+    /* Helper function -> Determines if a column and row are within bounds */
+    private boolean inBounds(int x, int y) {
+        return map.inBounds(x, y);
+    }
+    /* Helper function -> Converts a column and row to the index of its cell */
+    private int cellAt(int x, int y) {
+        return map.indexOf(x, y);
+    }
+
+    /* Once a path has been found, the setOptimalPath function marks the
+       path from the target node to the start node (skipping the start node).
+       It is painted when the replay reaches the end of the search */
+    private void setOptimalPath(int[] path) {
+        optimalPath.clear();
+        for (int i = path.length - 1; i > 0; i--)
+            optimalPath.set(path[i]);
     }
 }
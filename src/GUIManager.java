@@ -2,6 +2,7 @@
    The GUI Manager creates and runs the JFrame window of the application, and its two components.
    The two components are a drawingPanel object (custom JPanel for visual painting), and
    a GUISettings object (custom JPanel for starting and resetting the visualization)
+   The grid has the given number of columns and rows, whatever the size of the window.
 */
 
 import javax.swing.SwingUtilities;
@@ -15,8 +16,15 @@ public class GUIManager {
     private JFrame frame;             // The application window
     private GUISettings settings;     // The start/reset panel
     private Grid drawingPanel;        // The visualization panel
+    private final int columns, rows;  // Size of the map
 
     public GUIManager() {
+        this(80, 60);
+    }
+
+    public GUIManager(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
         // Starts the Event Dispatch Thread (EDT) for future GUI operations
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
@@ -27,7 +35,7 @@ public class GUIManager {
 
     private void createAndShowGUI() {
         frame = new JFrame("A Star Path Finding Visualizer");
-        drawingPanel = new Grid();
+        drawingPanel = new Grid(columns, rows);
 
         /* Note - The GUISettings instance is given access to the Grid drawingPanel via
            passing it in as a parameter to its constructor. This way, when the user clicks
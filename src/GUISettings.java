@@ -1,28 +1,126 @@
 /*
    Customized JPanel class responsible for controlling the settings
    of the GUI. The panel consists of the start and reset buttons that
-   will (when clicked on) call the Grid's runAglorithm and reset functions
+   will (when clicked on) call the Grid's runAglorithm and reset functions,
+   a drop down to choose which search algorithm the Grid runs, a drop down
+   for the brush the mouse paints with (obstacles or a terrain weight), and
+   a check box that keeps the path updated live while the user edits.
+   The anytime check box and its budget (ms) make Start run a time
+   budgeted search that shows each better path it finds in turn. With the
+   agents spinner above 1, Start plans a team of routes that never collide.
+   The bidirectional check box makes Start search from both ends at once.
+   Save and Load write the map (obstacles, weights, start and target) to
+   a snapshot file and read it back. Fit zooms the grid out to the whole map.
+   A second row controls the replay of the last search: play/pause, step,
+   speed (events per second), a slider to seek and a button to export the
+   recorded trace for offline profiling. The last row shows the statistics
+   of the replayed search, updated as it plays.
 */
 
+import pathfinding.Algorithm;
+import pathfinding.SearchMetrics;
+import pathfinding.SearchTrace;
+
+import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.Dimension;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 public class GUISettings extends JPanel {
     private final Grid graphicPanel;
+    private final TracePlayer player;
 
     private final JButton start;
     private final JButton reset;
+    private final JButton save;
+    private final JButton load;
+    private final JButton fit;
+    private final JComboBox<Algorithm> algorithm;
+    private final JComboBox<String> brush;
+    private final JCheckBox livePath;
+    private final JCheckBox anytime;
+    private final JCheckBox bidirectional;
+    private final JSpinner budget;
+    private final JSpinner agents;
+
+    private final JButton playPause;
+    private final JButton step;
+    private final JSpinner speed;
+    private final JSlider seek;
+    private final JButton export;
+    private final JLabel stats;
 
     public GUISettings(Grid drawingPanel) {
         graphicPanel = drawingPanel;
+        player = drawingPanel.getTracePlayer();
         start = new JButton("Start");
         reset = new JButton("Reset");
-        add(start);
-        add(reset);
+        save = new JButton("Save");
+        load = new JButton("Load");
+        fit = new JButton("Fit");
+        algorithm = new JComboBox<>(Algorithm.values());
+        brush = new JComboBox<>(brushNames());
+        livePath = new JCheckBox("Live path");
+        anytime = new JCheckBox("Anytime");
+        bidirectional = new JCheckBox("Bidirectional");
+        budget = new JSpinner(new SpinnerNumberModel(50, 1, 60000, 10));
+        agents = new JSpinner(new SpinnerNumberModel(1, 1, Grid.MAX_AGENTS, 1));
+
+        playPause = new JButton("Pause");
+        step = new JButton("Step");
+        speed = new JSpinner(new SpinnerNumberModel(player.getRate(), 1, 1000000, 50));
+        seek = new JSlider(0, 0, 0);
+        export = new JButton("Export trace");
+        stats = new JLabel();
+
+        JPanel searchRow = new JPanel();
+        searchRow.add(start);
+        searchRow.add(reset);
+        searchRow.add(save);
+        searchRow.add(load);
+        searchRow.add(fit);
+        searchRow.add(algorithm);
+        searchRow.add(brush);
+        searchRow.add(livePath);
+        searchRow.add(bidirectional);
+        searchRow.add(anytime);
+        searchRow.add(new JLabel("Budget ms"));
+        searchRow.add(budget);
+        searchRow.add(new JLabel("Agents"));
+        searchRow.add(agents);
+
+        JPanel replayRow = new JPanel();
+        replayRow.add(playPause);
+        replayRow.add(step);
+        replayRow.add(new JLabel("Events/s"));
+        replayRow.add(speed);
+        replayRow.add(seek);
+        replayRow.add(export);
+
+        JPanel statsRow = new JPanel();
+        statsRow.add(stats);
+
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        add(searchRow);
+        add(replayRow);
+        add(statsRow);
         addListeners();
+        updateReplayControls();
     }
 
     public Dimension setPreferredSize() {
@@ -43,5 +141,196 @@ public class GUISettings extends JPanel {
                 graphicPanel.reset();
             }
         });
+
+        save.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveMap();
+            }
+        });
+
+        load.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadMap();
+            }
+        });
+
+        fit.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                graphicPanel.fitView();
+            }
+        });
+
+        algorithm.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                graphicPanel.setAlgorithm((Algorithm) algorithm.getSelectedItem());
+            }
+        });
+
+        brush.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                graphicPanel.setBrush(brush.getSelectedIndex()); // index 0 is Obstacle, then the weights
+            }
+        });
+
+        livePath.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                graphicPanel.setLiveReplanning(livePath.isSelected());
+            }
+        });
+
+        anytime.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateAnytime();
+            }
+        });
+
+        bidirectional.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                graphicPanel.setBidirectional(bidirectional.isSelected());
+            }
+        });
+
+        budget.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateAnytime();
+            }
+        });
+
+        agents.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                graphicPanel.setAgentCount(((Number) agents.getValue()).intValue());
+            }
+        });
+
+        playPause.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (player.isPlaying())
+                    player.pause();
+                else
+                    player.play();
+            }
+        });
+
+        step.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                player.step();
+            }
+        });
+
+        speed.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                player.setRate(((Number) speed.getValue()).doubleValue());
+            }
+        });
+
+        seek.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                player.seek(seek.getValue());
+            }
+        });
+
+        export.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportTrace();
+            }
+        });
+
+        // Keep the replay controls in step with the player
+        player.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateReplayControls();
+            }
+        });
+    }
+
+    private void updateAnytime() {
+        graphicPanel.setAnytime(anytime.isSelected(), ((Number) budget.getValue()).intValue());
+    }
+
+    /* Obstacle, then one entry per weight. Weight 1 is plain ground, so it
+       also erases obstacles and weights */
+    private static String[] brushNames() {
+        String[] names = new String[Grid.MAX_BRUSH_WEIGHT + 1];
+        names[Grid.OBSTACLE_BRUSH] = "Obstacle";
+        for (int weight = 1; weight <= Grid.MAX_BRUSH_WEIGHT; weight++)
+            names[weight] = weight == 1 ? "Weight 1 (erase)" : "Weight " + weight;
+        return names;
+    }
+
+    private void updateReplayControls() {
+        playPause.setText(player.isPlaying() ? "Pause" : "Play");
+        seek.getModel().setRangeProperties(player.getPosition(), 0, 0, player.getLength(), false);
+        boolean loaded = player.getTrace() != null;
+        playPause.setEnabled(loaded);
+        step.setEnabled(loaded);
+        seek.setEnabled(loaded);
+        export.setEnabled(loaded);
+
+        if (!loaded) {
+            stats.setText("No search yet");
+            return;
+        }
+        SearchMetrics metrics = player.getTrace().getMetrics();
+        stats.setText(String.format("Frontier %d | Expanded %d / %d | Search %.3f ms, %.0f nodes/s"
+                                    + " | %d pushes, %d pops, %d decrease-keys, peak open %d",
+                                    player.getOpenCount(), player.getClosedCount(), metrics.getExpanded(),
+                                    metrics.getNanos() / 1e6, metrics.getExpansionRate(), metrics.getPushes(),
+                                    metrics.getPops(), metrics.getDecreaseKeys(), metrics.getPeakOpen()));
+    }
+
+    /* Asks for a file and saves the map to it */
+    private void saveMap() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            graphicPanel.saveMap(chooser.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Could not save the map: " + ex.getMessage(),
+                                          "Save map", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /* Asks for a file saved by saveMap and loads it */
+    private void loadMap() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            graphicPanel.loadMap(chooser.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Could not load the map: " + ex.getMessage(),
+                                          "Load map", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /* Asks for a file and writes the replayed trace to it */
+    private void exportTrace() {
+        SearchTrace trace = player.getTrace();
+        JFileChooser chooser = new JFileChooser();
+        if (trace == null || chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try (OutputStream out = new FileOutputStream(chooser.getSelectedFile())) {
+            trace.write(out);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Could not export the trace: " + ex.getMessage(),
+                                          "Export trace", JOptionPane.ERROR_MESSAGE);
+        }
     }
 }
@@ -5,29 +5,57 @@
     open sites, closed sites, etc.) It passes a reference to itself to the
     AStarLogic instance so that the logic class can issue repaints() during
     the process (iterations) of the A* algorithm (on a swingworker thread)
+
+    The map can be much larger than the panel: a Viewport maps the panel's
+    pixels to cells. The mouse wheel zooms around the pointer, dragging
+    with the right (or middle) button pans, and the left button edits the
+    cell under the pointer at any zoom.
  */
 
+import pathfinding.Algorithm;
+
 import javax.swing.*;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Color;
 import java.awt.event.*;
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Path;
 
 
 public class Grid extends JPanel {
 
+    /* Brushes: 0 draws obstacles, 1 .. MAX_BRUSH_WEIGHT paint that terrain weight */
+    public static final int OBSTACLE_BRUSH = 0;
+    public static final int MAX_BRUSH_WEIGHT = 9;
+
+    /* Most agents a team run plans */
+    public static final int MAX_AGENTS = 64;
+
+    private static final double ZOOM_STEP = 1.25; // Scale factor per notch of the mouse wheel
+    private static final int MAX_PREFERRED_WIDTH = 800;
+    private static final int MAX_PREFERRED_HEIGHT = 600;
+
     private final AStarLogic logic;
+    private final Viewport viewport;
+    private final GridRenderer renderer;
+    private int brush;
 
     /* These two fields are used to determine if the user has clicked and is dragging on either
        the start or target node. If they have, then we know the user is requesting that node's
-       relocation. Otherwise, they must be drawing an obstacle.
+       relocation. Otherwise, they must be painting with the brush.
      */
     private boolean startNodeClicked;
     private boolean targetNodeClicked;
+    private int panX, panY; // Pointer position of the last pan step
 
     public Grid() {
-        logic = new AStarLogic(this);
+        this(80, 60); // 80x60 squares
+    }
+
+    public Grid(int columns, int rows) {
+        logic = new AStarLogic(this, columns, rows);
+        viewport = new Viewport(columns, rows);
+        renderer = new GridRenderer(logic, viewport, this);
         startNodeClicked = false;
         targetNodeClicked = false;
         addPanelListeners();
@@ -38,28 +66,27 @@ public class Grid extends JPanel {
         addMouseListener(new MouseListener() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                int xPos = getXAtRawCoordinate(e.getPoint().x);
-                int yPos = getYAtRawCoordinate(e.getPoint().y);
-
-                // Do not draw an obstacle on the starting/target nodes!
-                if ((xPos != logic.getStart().getX() || yPos != logic.getStart().getY()) &&
-                        (xPos != logic.getTarget().getX() || yPos != logic.getTarget().getY())) {
-                    logic.setObstaclePosition(xPos, yPos);
-                    repaint(xPos, yPos, logic.getGridSize(), logic.getGridSize());
-                }
+                if (!SwingUtilities.isLeftMouseButton(e))
+                    return;
+                int xPos = viewport.columnAt(e.getX());
+                int yPos = viewport.rowAt(e.getY());
+
+                paintWithBrush(xPos, yPos);
                 targetNodeClicked = false;
                 startNodeClicked = false;
             }
             public void mousePressed(MouseEvent e) {
-                int xPos = getXAtRawCoordinate(e.getPoint().x);
-                int yPos = getYAtRawCoordinate(e.getPoint().y);
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    panX = e.getX();
+                    panY = e.getY();
+                    return;
+                }
                 /* Check if user clicked on start or target node, otherwise
-                they're drawing an obstacle */
-                if (xPos == logic.getStart().getX() && yPos == logic.getStart().getY()) {
+                they're painting with the brush */
+                if (isOnNode(logic.getStart(), e.getX(), e.getY())) {
                     startNodeClicked = true;
                     targetNodeClicked = false;
-                } else if (xPos == logic.getTarget().getX() &&
-                     yPos == logic.getTarget().getY()) {
+                } else if (isOnNode(logic.getTarget(), e.getX(), e.getY())) {
                     targetNodeClicked = true;
                     startNodeClicked = false;
                 } else {
@@ -68,17 +95,19 @@ public class Grid extends JPanel {
                 }
             }
             public void mouseReleased(MouseEvent e) {
-                int xPos = getXAtRawCoordinate(e.getPoint().x);
-                int yPos = getYAtRawCoordinate(e.getPoint().y);
+                if (!SwingUtilities.isLeftMouseButton(e))
+                    return;
+                int xPos = viewport.columnAt(e.getX());
+                int yPos = viewport.rowAt(e.getY());
                 if (startNodeClicked) {
                     if (!logic.isAnObstacle(xPos, yPos)) {
                         logic.setStartLocation(xPos, yPos);
-                        repaint(xPos, yPos, logic.getGridSize(), logic.getGridSize());
+                        repaintCell(xPos, yPos);
                     }
                 } else if (targetNodeClicked) {
                     if (!logic.isAnObstacle(xPos, yPos)) {
                         logic.setTargetLocation(xPos, yPos);
-                        repaint(xPos, yPos, logic.getGridSize(), logic.getGridSize());
+                        repaintCell(xPos, yPos);
                     }
                 }
             }
@@ -91,38 +120,72 @@ public class Grid extends JPanel {
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (!startNodeClicked && !targetNodeClicked) {
-                    int xPos = getXAtRawCoordinate(e.getPoint().x);
-                    int yPos = getYAtRawCoordinate(e.getPoint().y);
-                    if ((xPos != logic.getStart().getX() || yPos != logic.getStart().getY()) &&
-                        (xPos != logic.getTarget().getX() || yPos != logic.getTarget().getY())) {
-                        logic.setObstaclePosition(xPos, yPos);
-                        repaint(xPos, yPos, logic.getGridSize(), logic.getGridSize());
-                    }
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    viewport.panBy(e.getX() - panX, e.getY() - panY);
+                    panX = e.getX();
+                    panY = e.getY();
+                    repaint();
+                } else if (!startNodeClicked && !targetNodeClicked) {
+                    int xPos = viewport.columnAt(e.getX());
+                    int yPos = viewport.rowAt(e.getY());
+                    paintWithBrush(xPos, yPos);
                 }
             }
         });
+
+        addMouseWheelListener(new MouseWheelListener() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                viewport.zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+                repaint();
+            }
+        });
     }
 
-    /* Given some raw x or y coordinate (found at a given mouse position),
-       return the x,y corner that would be at the top left corner of the
-       square in the grid */
-    private int getXAtRawCoordinate(int x) {
-        return x / logic.getGridSize() * logic.getGridSize();
+    /* Draws an obstacle or paints a terrain weight, depending on the brush,
+       on the square at column x, row y */
+    private void paintWithBrush(int x, int y) {
+        // Do not paint over the starting/target nodes!
+        if ((x == logic.getStart().getX() && y == logic.getStart().getY()) ||
+            (x == logic.getTarget().getX() && y == logic.getTarget().getY()))
+            return;
+        if (brush == OBSTACLE_BRUSH)
+            logic.setObstaclePosition(x, y);
+        else
+            logic.setTerrainWeight(x, y, brush);
+        repaintCell(x, y);
     }
-    private int getYAtRawCoordinate(int y) {
-        return y / logic.getGridSize() * logic.getGridSize();
+
+    /* Whether the panel pixel x,y is on a node's square, or on its marker
+       while the squares are smaller than the markers */
+    private boolean isOnNode(Node node, int x, int y) {
+        if (viewport.columnAt(x) == node.getX() && viewport.rowAt(y) == node.getY())
+            return true;
+        return viewport.getScale() < GridRenderer.MARKER_SIZE &&
+               viewport.cellBounds(node.getX(), node.getY(), GridRenderer.MARKER_SIZE / 2).contains(x, y);
     }
 
     // To set size of the panel, override setPreferredSize
     public Dimension getPreferredSize() {
-        return new Dimension(800, 600);
+        return new Dimension((int) Math.min(logic.getColumns() * Viewport.DEFAULT_SCALE, MAX_PREFERRED_WIDTH),
+                             (int) Math.min(logic.getRows() * Viewport.DEFAULT_SCALE, MAX_PREFERRED_HEIGHT));
+    }
+
+    /* Zooms and pans so the whole map is in view */
+    public void fitView() {
+        viewport.fit();
+        repaint();
     }
 
     public void runAlgorithm() {
+        /* Only one search runs at a time, a click on Start while the last
+           one is still searching is ignored */
+        if (!logic.beginSearch())
+            return;
+
         /* Create a SwingWorker thread and command the AStarLogic instance
            to start the A* algorithm, which computes the A* algo logic and
-           repaints the panel throughout for visualization */
+           hands the recorded search to the trace player for visualization */
         SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() {
@@ -133,72 +196,76 @@ public class Grid extends JPanel {
         worker.execute(); // Start the thread
     }
 
+    /* Chooses the search algorithm used by the next run */
+    public void setAlgorithm(Algorithm algorithm) {
+        logic.setAlgorithm(algorithm);
+    }
+
+    /* Chooses what dragging the mouse paints, OBSTACLE_BRUSH or a weight */
+    public void setBrush(int brushType) {
+        brush = brushType;
+    }
+
+    /* Turns the time budgeted anytime search on or off */
+    public void setAnytime(boolean enabled, int budgetMillis) {
+        logic.setAnytime(enabled, budgetMillis);
+    }
+
+    /* Turns the search from both ends on or off */
+    public void setBidirectional(boolean enabled) {
+        logic.setBidirectional(enabled);
+    }
+
+    /* Sets how many agents the next run plans, 1 for the single path */
+    public void setAgentCount(int agents) {
+        logic.setAgentCount(agents);
+    }
+
+    /* Turns live replanning of the path on or off */
+    public void setLiveReplanning(boolean enabled) {
+        logic.setLiveReplanning(enabled);
+    }
+
+    /* The player that replays the last search on this panel */
+    public TracePlayer getTracePlayer() {
+        return logic.getTracePlayer();
+    }
+
+    /* Saves the map, start and target to file */
+    public void saveMap(Path file) throws IOException {
+        logic.saveMap(file);
+    }
+
+    /* Loads a map saved by saveMap, which replaces everything on the grid */
+    public void loadMap(Path file) throws IOException {
+        logic.loadMap(file);
+        repaintAll();
+    }
+
     /* Tells the logic instance to reset its data structures and halt the algo */
     public void reset() {
         logic.reset();
+        repaintAll();
+    }
+
+    /* Repaints the square at column x, row y, and the marker that may be
+       drawn over it. Safe to call from the search thread */
+    public void repaintCell(int x, int y) {
+        renderer.markDirty(x, y);
+        repaint(viewport.cellBounds(x, y, GridRenderer.MARKER_SIZE));
+    }
+
+    /* Repaints every square, after changes that touch the whole grid */
+    public void repaintAll() {
+        renderer.markAllDirty();
         repaint();
     }
 
+    /* The renderer keeps the view in a panel sized image and only redraws
+       the squares that changed since the last paint, unless the view moved */
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-
-        int panelWidth = getWidth();
-        int panelHeight = getHeight();
-        int gridSize = logic.getGridSize();
-
-        /* Paint the background white */
-        g.setColor(Color.WHITE);
-        g.fillRect(0, 0, panelWidth, panelHeight);
-
-        /* Paint the starting node (cyan) */
-        g.setColor(Color.cyan);
-        g.fillRect(logic.getStart().getX(), logic.getStart().getY(), gridSize, gridSize);
-
-        /* Paint the target node (orange) */
-        g.setColor(Color.orange);
-        g.fillRect(logic.getTarget().getX(), logic.getTarget().getY(), gridSize, gridSize);
-
-        /* Paint obstacles */
-        Iterator<Node> obstacleIterator = logic.getObstacleIterator();
-        g.setColor(Color.BLACK);
-        while (obstacleIterator.hasNext()) {
-            Node tmp = obstacleIterator.next();
-            g.fillRect(tmp.getX(), tmp.getY(), gridSize, gridSize);
-        }
-
-        // Only paint the progress of the algorithm if it is running!
-        if (logic.isRunning()) {
-            /* Paint the open nodes (Blue) */
-            Iterator<Node> openIterator = logic.getOpenSitesIterator();
-            g.setColor(Color.BLUE);
-            while (openIterator.hasNext()) {
-                Node tmp = openIterator.next();
-                g.fillRect(tmp.getX(), tmp.getY(), gridSize, gridSize);
-            }
-
-            /* Paint the closed nodes  (Red) */
-            Iterator<Node> closedIterator = logic.getClosedSitesIterator();
-            g.setColor(Color.RED);
-            while (closedIterator.hasNext()) {
-                Node tmp = closedIterator.next();
-                g.fillRect(tmp.getX(), tmp.getY(), gridSize, gridSize);
-            }
-
-            /* Paint the finished path */
-            Iterator<Node> finishedIterator = logic.getOptimalPathIterator();
-            g.setColor(Color.GREEN);
-            while (finishedIterator.hasNext()) {
-                Node tmp = finishedIterator.next();
-                g.fillRect(tmp.getX(), tmp.getY(), gridSize, gridSize);
-            }
-        }
-
-        /* Paint the underlying grid */
-        g.setColor(Color.LIGHT_GRAY);
-        for (int y = 0; y < panelHeight; y += gridSize) {
-            for (int x = 0; x < panelWidth; x += gridSize) {
-                g.drawRect(x, y, gridSize, gridSize);
-            }
-        }
+        viewport.setPanelSize(getWidth(), getHeight());
+        renderer.paint(g, getWidth(), getHeight());
     }
 }
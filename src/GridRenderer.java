@@ -0,0 +1,356 @@
+/*
+    GridRenderer draws the part of the map the Viewport shows into a frame
+    image the size of the Grid panel, so the cost of a frame depends on the
+    size of the panel and not on the size of the map. From half a pixel per
+    cell up every panel pixel shows the color of the cell under it; below
+    that the pixels come from a TilePyramid, whose levels average blocks of
+    cells into one color, so a zoomed out view of a huge map shows the
+    density of obstacles and of the explored cells. The path, the start
+    and the target would vanish in that average, so they are drawn on top
+    of the frame at least a pixel (the path) or MARKER_SIZE pixels large.
+
+    Cells that change are marked dirty (from any thread). While the view
+    stays where it is, the next paint rewrites just the pixels of those
+    cells in the frame's int[] pixel buffer; a new view, or a change to the
+    whole map, redraws the frame. Rasterizing the pyramid for a new view is
+    spread over several frames when it takes longer than FRAME_BUDGET.
+
+    Terrain weights are shaded from light tan (2) to dark brown (the
+    highest brush weight and above), weight 1 stays white. After a team run
+    each agent's route has its own color, hues spread by the golden ratio
+    so neighboring agent numbers never look alike. A bidirectional search
+    shows its backward frontier in magenta (open) and gold (closed) next to
+    the forward one's blue and red. Grid lines are drawn once the cells are
+    GRID_LINE_SCALE pixels large.
+ */
+
+import pathfinding.CellBitSet;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+public class GridRenderer {
+
+    public static final int MARKER_SIZE = 5;     // Smallest side of the start and target squares, in pixels
+    private static final int GRID_LINE_SCALE = 6; // Pixels per cell from which grid lines are drawn
+    private static final long FRAME_BUDGET = 15000000L; // Nanoseconds a frame may spend rasterizing tiles
+
+    private static final int BACKGROUND = Color.WHITE.getRGB();
+    private static final int OUTSIDE = new Color(0xD0D0D0).getRGB(); // Beyond the map, or not rasterized yet
+    private static final int START = Color.CYAN.getRGB();
+    private static final int TARGET = Color.ORANGE.getRGB();
+    private static final int OBSTACLE = Color.BLACK.getRGB();
+    private static final int OPEN = Color.BLUE.getRGB();
+    private static final int CLOSED = Color.RED.getRGB();
+    private static final int BACKWARD_OPEN = Color.MAGENTA.getRGB();
+    private static final int BACKWARD_CLOSED = new Color(230, 180, 0).getRGB();
+    private static final int PATH = Color.GREEN.getRGB();
+    private static final int[] TERRAIN = terrainColors(Grid.MAX_BRUSH_WEIGHT);
+    private static final int[] AGENTS = agentColors(Grid.MAX_AGENTS);
+
+    private final AStarLogic logic;
+    private final Viewport viewport;
+    private final JComponent panel; // Repainted again while the pyramid is incomplete
+    private final int columns;
+    private final int rows;
+    private final TilePyramid pyramid;
+
+    private BufferedImage frame;   // The panel's picture
+    private int[] pixels;          // The frame's pixel data
+    private int[] columnOfPixel;   // Column (or pyramid x) each pixel column of the frame shows, -1 off the map
+    private int[] rowOfPixel;
+    private double drawnScale;     // The view the frame shows
+    private double drawnOriginX, drawnOriginY;
+    private int drawnLevel;        // Pyramid level of the frame, 0 when drawn per cell
+    private boolean frameComplete; // False while some of the frame's tiles are stale or missing
+
+    /* Cells waiting to be redrawn, guarded by this */
+    private int[] dirtyCells;
+    private int[] spareCells; // Swapped with dirtyCells while they are redrawn
+    private int dirtyCount;
+    private final CellBitSet queued;
+    private boolean allDirty;
+
+    public GridRenderer(AStarLogic logic, Viewport viewport, JComponent panel) {
+        this.logic = logic;
+        this.viewport = viewport;
+        this.panel = panel;
+        columns = logic.getColumns();
+        rows = logic.getRows();
+        pyramid = new TilePyramid(columns, rows, new TilePyramid.CellColors() {
+            public int colorOf(int cell) {
+                return GridRenderer.this.colorOf(cell);
+            }
+        });
+
+        dirtyCells = new int[64];
+        spareCells = new int[64];
+        queued = new CellBitSet(columns * rows);
+        allDirty = true;
+    }
+
+    /* Marks the cell at column x, row y to be redrawn by the next paint */
+    public synchronized void markDirty(int x, int y) {
+        if (x < 0 || y < 0 || x >= columns || y >= rows || allDirty)
+            return;
+        int cell = y * columns + x;
+        if (queued.get(cell))
+            return;
+        queued.set(cell);
+        if (dirtyCount == dirtyCells.length)
+            dirtyCells = Arrays.copyOf(dirtyCells, dirtyCount * 2);
+        dirtyCells[dirtyCount++] = cell;
+    }
+
+    /* Marks every cell to be redrawn, after changes that touch the whole map */
+    public synchronized void markAllDirty() {
+        allDirty = true;
+        dirtyCount = 0;
+        queued.clear();
+    }
+
+    /* Brings the frame up to date with the view and the dirty cells, copies
+       it to the screen and draws the grid lines, path and markers on top */
+    public void paint(Graphics g, int panelWidth, int panelHeight) {
+        if (panelWidth <= 0 || panelHeight <= 0)
+            return;
+        update(panelWidth, panelHeight);
+        g.drawImage(frame, 0, 0, null);
+        if (viewport.getScale() >= GRID_LINE_SCALE)
+            drawGridLines(g);
+        if (viewport.getScale() < 1 && logic.isPathShown())
+            drawPath(g);
+        if (viewport.getScale() < MARKER_SIZE) {
+            drawMarker(g, logic.getStart(), START);
+            drawMarker(g, logic.getTarget(), TARGET);
+        }
+        if (!frameComplete)
+            panel.repaint(); // rasterize the rest of the pyramid in the next frame
+    }
+
+    /* Applies the dirty cells to the pyramid, then redraws either the whole
+       frame or just the pixels of those cells */
+    private void update(int width, int height) {
+        int[] cells;
+        int count;
+        boolean redrawAll;
+        synchronized (this) {
+            redrawAll = allDirty;
+            cells = dirtyCells;
+            count = dirtyCount;
+            if (count > 0) {
+                dirtyCells = spareCells;
+                spareCells = cells;
+                queued.clear();
+            }
+            dirtyCount = 0;
+            allDirty = false;
+        }
+
+        if (redrawAll)
+            pyramid.invalidate();
+        else
+            for (int i = 0; i < count; i++)
+                pyramid.cellChanged(cells[i]);
+
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+            columnOfPixel = new int[width];
+            rowOfPixel = new int[height];
+            redrawAll = true;
+        }
+        if (redrawAll || !frameComplete || viewport.getScale() != drawnScale ||
+            viewport.getOriginX() != drawnOriginX || viewport.getOriginY() != drawnOriginY) {
+            redrawFrame();
+        } else {
+            for (int i = 0; i < count; i++)
+                redrawCell(cells[i]);
+        }
+    }
+
+    /* Draws the whole view, per cell or from the pyramid */
+    private void redrawFrame() {
+        double scale = viewport.getScale();
+        drawnScale = scale;
+        drawnOriginX = viewport.getOriginX();
+        drawnOriginY = viewport.getOriginY();
+        drawnLevel = scale >= 0.5 ? 0 : pyramid.levelFor(scale);
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        for (int x = 0; x < width; x++) {
+            int column = viewport.columnAt(x);
+            columnOfPixel[x] = column < 0 || column >= columns ? -1 : column >> drawnLevel;
+        }
+        for (int y = 0; y < height; y++) {
+            int row = viewport.rowAt(y);
+            rowOfPixel[y] = row < 0 || row >= rows ? -1 : row >> drawnLevel;
+        }
+
+        frameComplete = true;
+        if (drawnLevel > 0)
+            frameComplete = pyramid.prepare(drawnLevel, firstOnMap(columnOfPixel), firstOnMap(rowOfPixel),
+                                             lastOnMap(columnOfPixel), lastOnMap(rowOfPixel),
+                                             System.nanoTime() + FRAME_BUDGET);
+
+        for (int y = 0, offset = 0; y < height; y++, offset += width) {
+            int row = rowOfPixel[y];
+            if (y > 0 && row == rowOfPixel[y - 1]) { // same cells as the line above
+                System.arraycopy(pixels, offset - width, pixels, offset, width);
+                continue;
+            }
+            if (row < 0) {
+                Arrays.fill(pixels, offset, offset + width, OUTSIDE);
+                continue;
+            }
+            int lastColumn = -2;
+            int rgb = OUTSIDE;
+            for (int x = 0; x < width; x++) {
+                int column = columnOfPixel[x];
+                if (column != lastColumn) {
+                    lastColumn = column;
+                    rgb = column < 0 ? OUTSIDE : colorAt(column, row);
+                }
+                pixels[offset + x] = rgb;
+            }
+        }
+    }
+
+    /* Rewrites the pixels of a cell, or of the pyramid pixel it is part of */
+    private void redrawCell(int cell) {
+        int x = cell % columns >> drawnLevel;
+        int y = cell / columns >> drawnLevel;
+        int left = Math.max(viewport.pixelOfColumn(x << drawnLevel), 0);
+        int right = Math.min(viewport.pixelOfColumn(Math.min((x + 1) << drawnLevel, columns)), frame.getWidth());
+        int top = Math.max(viewport.pixelOfRow(y << drawnLevel), 0);
+        int bottom = Math.min(viewport.pixelOfRow(Math.min((y + 1) << drawnLevel, rows)), frame.getHeight());
+        if (left >= right || top >= bottom)
+            return; // off screen, or not under any pixel's center
+        int rgb = colorAt(x, y);
+        int width = frame.getWidth();
+        for (int row = top, offset = top * width; row < bottom; row++, offset += width)
+            Arrays.fill(pixels, offset + left, offset + right, rgb);
+    }
+
+    /* The color of column x, row y of the frame's level */
+    private int colorAt(int x, int y) {
+        if (drawnLevel == 0)
+            return colorOf(y * columns + x);
+        int rgb = pyramid.pixel(drawnLevel, x, y);
+        return rgb == TilePyramid.NONE ? OUTSIDE : rgb;
+    }
+
+    /* The color of a single cell: the finished path, then open and closed
+       cells of the replayed search (forward side first), then obstacles,
+       start, target, agent routes and terrain */
+    private int colorOf(int cell) {
+        if (logic.isPathShown() && logic.getPathCells().get(cell))
+            return PATH;
+        if (logic.isRunning()) {
+            if (logic.getOpenCells().get(cell))
+                return OPEN;
+            if (logic.getClosedCells().get(cell))
+                return CLOSED;
+            if (logic.getBackwardOpenCells().get(cell))
+                return BACKWARD_OPEN;
+            if (logic.getBackwardClosedCells().get(cell))
+                return BACKWARD_CLOSED;
+        }
+        if (logic.getObstacleCells().get(cell))
+            return OBSTACLE;
+        if (cell == cellOf(logic.getTarget()))
+            return TARGET;
+        if (cell == cellOf(logic.getStart()))
+            return START;
+        int agent = logic.getAgentAt(cell);
+        if (agent >= 0)
+            return AGENTS[agent % AGENTS.length];
+        return logic.isWeighted() ? TERRAIN[logic.getWeight(cell)] : BACKGROUND;
+    }
+
+    /* Light gray lines along the cell borders of the map */
+    private void drawGridLines(Graphics g) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int top = Math.max(viewport.pixelOfRow(0), 0);
+        int bottom = Math.min(viewport.pixelOfRow(rows), height);
+        int left = Math.max(viewport.pixelOfColumn(0), 0);
+        int right = Math.min(viewport.pixelOfColumn(columns), width);
+        g.setColor(Color.LIGHT_GRAY);
+        for (int column = Math.max(viewport.columnAt(0), 0); column <= columns; column++) {
+            int x = viewport.pixelOfColumn(column);
+            if (x >= width)
+                break;
+            g.drawLine(x, top, x, bottom);
+        }
+        for (int row = Math.max(viewport.rowAt(0), 0); row <= rows; row++) {
+            int y = viewport.pixelOfRow(row);
+            if (y >= height)
+                break;
+            g.drawLine(left, y, right, y);
+        }
+    }
+
+    /* One pixel per path cell, so the path shows through the pyramid's averages */
+    private void drawPath(Graphics g) {
+        CellBitSet path = logic.getPathCells();
+        g.setColor(Color.GREEN);
+        for (int cell = path.nextSetBit(0); cell >= 0; cell = path.nextSetBit(cell + 1))
+            g.fillRect(viewport.pixelOfColumn(cell % columns), viewport.pixelOfRow(cell / columns), 1, 1);
+    }
+
+    /* A MARKER_SIZE square, outlined in black, centered on a node's cell */
+    private void drawMarker(Graphics g, Node node, int rgb) {
+        int x = (viewport.pixelOfColumn(node.getX()) + viewport.pixelOfColumn(node.getX() + 1)) / 2;
+        int y = (viewport.pixelOfRow(node.getY()) + viewport.pixelOfRow(node.getY() + 1)) / 2;
+        g.setColor(new Color(rgb));
+        g.fillRect(x - MARKER_SIZE / 2, y - MARKER_SIZE / 2, MARKER_SIZE, MARKER_SIZE);
+        g.setColor(Color.BLACK);
+        g.drawRect(x - MARKER_SIZE / 2 - 1, y - MARKER_SIZE / 2 - 1, MARKER_SIZE + 1, MARKER_SIZE + 1);
+    }
+
+    private int cellOf(Node node) {
+        return node.getY() * columns + node.getX();
+    }
+
+    private static int firstOnMap(int[] indices) {
+        for (int index : indices)
+            if (index >= 0)
+                return index;
+        return 0;
+    }
+    private static int lastOnMap(int[] indices) {
+        for (int i = indices.length - 1; i >= 0; i--)
+            if (indices[i] >= 0)
+                return indices[i];
+        return -1;
+    }
+
+    /* Agent 0 takes the path's green, the others step around the color wheel */
+    private static int[] agentColors(int count) {
+        int[] colors = new int[count];
+        float green = Color.RGBtoHSB(0, 255, 0, null)[0];
+        for (int agent = 0; agent < count; agent++)
+            colors[agent] = Color.HSBtoRGB((green + agent * 0.618034f) % 1f, 0.75f, 0.9f);
+        return colors;
+    }
+
+    /* Background for weight 1, then a ramp that reaches its darkest shade at darkest */
+    private static int[] terrainColors(int darkest) {
+        Color light = new Color(0xEEDFC0);
+        Color dark = new Color(0x7A5430);
+        int[] colors = new int[256];
+        colors[0] = colors[1] = BACKGROUND;
+        for (int weight = 2; weight < colors.length; weight++) {
+            float t = (float) (Math.min(weight, darkest) - 2) / (darkest - 2);
+            colors[weight] = new Color(Math.round(light.getRed() + t * (dark.getRed() - light.getRed())),
+                                       Math.round(light.getGreen() + t * (dark.getGreen() - light.getGreen())),
+                                       Math.round(light.getBlue() + t * (dark.getBlue() - light.getBlue()))).getRGB();
+        }
+        return colors;
+    }
+}
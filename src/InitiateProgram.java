@@ -3,10 +3,41 @@
    All it does when the program is executed is create an instance of
    a GUIManager object. The GUIManager will manage and run
    the GUI and handle all user events until the program is closed.
+   Started with --server and the PathServer arguments, it runs the
+   headless path service instead of the GUI. -size 10000x10000 sets the
+   number of columns and rows of the grid (80x60 by default), up to the
+   most cells a pathfinding.SearchTrace can record.
  */
 
+import pathfinding.PathServer;
+import pathfinding.SearchTrace;
+
+import java.io.IOException;
+import java.util.Arrays;
+
 public class InitiateProgram {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            PathServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("-size")) {
+            String[] size = args[1].split("x");
+            if (size.length == 2) {
+                int columns = Integer.parseInt(size[0]);
+                int rows = Integer.parseInt(size[1]);
+                if (columns > 0 && rows > 0 && (long) columns * rows <= SearchTrace.MAX_CELLS) {
+                    new GUIManager(columns, rows);
+                    return;
+                }
+                System.err.println("The grid can have at most " + SearchTrace.MAX_CELLS + " cells");
+                System.exit(1);
+            }
+        }
+        if (args.length > 0) {
+            System.err.println("Usage: java InitiateProgram [-size <columns>x<rows>] | --server <PathServer arguments>");
+            System.exit(1);
+        }
         new GUIManager();
     }
 }
@@ -0,0 +1,208 @@
+/*
+    TilePyramid -> The map shrunk by powers of two, for drawing it at less
+    than one pixel per cell. A pixel of level k stands for a 2^k x 2^k block
+    of cells and holds the average of their colors, so at low zoom a dense
+    wall shows dark, a few scattered obstacles show light gray, and the
+    explored area of a search as a tinted cloud. Level FIRST_LEVEL is
+    averaged from the cells' colors, every level above from the four pixels
+    below it.
+
+    Each level is cut into TILE x TILE pixel tiles that are only rasterized
+    when a view needs them, so a map of 10000 x 10000 cells costs nothing
+    here until it is zoomed out, and then about 33 MB for every level
+    together. A changed cell updates its one pixel on every level at once.
+    After changes that were not reported cell by cell, invalidate marks
+    every tile stale; stale tiles keep their pixels and are rebuilt, as
+    many as a frame's time allows, by prepare, so zooming out of a huge map
+    after such a change shows the old picture for a few frames rather than
+    stalling them.
+
+    Only used on the Event Dispatch Thread.
+ */
+
+public class TilePyramid {
+
+    /* Source of the colors of the cells */
+    public interface CellColors {
+        int colorOf(int cell);
+    }
+
+    public static final int FIRST_LEVEL = 2; // 4 x 4 cells per pixel, 0.5 and more pixels per cell are drawn per cell
+    public static final int TILE = 128;      // Pixels on a side of a tile
+    public static final int NONE = 0;        // pixel of a tile that was never rasterized, colors are opaque
+
+    private static final int TILE_SHIFT = 7;
+
+    private final int columns;
+    private final int rows;
+    private final CellColors colors;
+    private final int topLevel;
+    private final int[] levelWidth;  // Pixels across and down each level
+    private final int[] levelHeight;
+    private final int[] tilesAcross;
+    private final int[][][] tiles;   // [level][tile] pixels, null until rasterized
+    private final int[][] builtIn;   // [level][tile] epoch in which the tile was rasterized
+    private int epoch;
+
+    public TilePyramid(int columns, int rows, CellColors cellColors) {
+        this.columns = columns;
+        this.rows = rows;
+        colors = cellColors;
+        int level = FIRST_LEVEL;
+        while ((columns - 1) >> level > 0 || (rows - 1) >> level > 0) // until one pixel covers the map
+            level++;
+        topLevel = level;
+
+        levelWidth = new int[topLevel + 1];
+        levelHeight = new int[topLevel + 1];
+        tilesAcross = new int[topLevel + 1];
+        tiles = new int[topLevel + 1][][];
+        builtIn = new int[topLevel + 1][];
+        for (level = FIRST_LEVEL; level <= topLevel; level++) {
+            levelWidth[level] = ((columns - 1) >> level) + 1;
+            levelHeight[level] = ((rows - 1) >> level) + 1;
+            tilesAcross[level] = ((levelWidth[level] - 1) >> TILE_SHIFT) + 1;
+            int tilesDown = ((levelHeight[level] - 1) >> TILE_SHIFT) + 1;
+            tiles[level] = new int[tilesAcross[level] * tilesDown][];
+            builtIn[level] = new int[tilesAcross[level] * tilesDown];
+        }
+        epoch = 1;
+    }
+
+    /* The level whose pixels cover at least one panel pixel at scale (panel
+       pixels per cell), for scales below one half */
+    public int levelFor(double scale) {
+        int level = FIRST_LEVEL;
+        while (level < topLevel && (1 << level) * scale < 1)
+            level++;
+        return level;
+    }
+
+    /* Marks every tile as out of date */
+    public void invalidate() {
+        epoch++;
+    }
+
+    /* Rasterizes the stale tiles of level that hold the pixels from
+       fromX, fromY to toX, toY (inclusive), until System.nanoTime() passes
+       deadline. Returns true if they are all up to date */
+    public boolean prepare(int level, int fromX, int fromY, int toX, int toY, long deadline) {
+        fromX = Math.max(fromX, 0) >> TILE_SHIFT;
+        fromY = Math.max(fromY, 0) >> TILE_SHIFT;
+        toX = Math.min(toX, levelWidth[level] - 1) >> TILE_SHIFT;
+        toY = Math.min(toY, levelHeight[level] - 1) >> TILE_SHIFT;
+        boolean done = true;
+        for (int tileY = fromY; tileY <= toY; tileY++) {
+            for (int tileX = fromX; tileX <= toX; tileX++) {
+                if (!build(level, tileY * tilesAcross[level] + tileX, deadline))
+                    done = false;
+            }
+        }
+        return done;
+    }
+
+    /* The color of the pixel at x, y of level, NONE if its tile was never
+       rasterized. x and y must lie on the level */
+    public int pixel(int level, int x, int y) {
+        int[] tile = tiles[level][(y >> TILE_SHIFT) * tilesAcross[level] + (x >> TILE_SHIFT)];
+        return tile == null ? NONE : tile[(y & (TILE - 1)) << TILE_SHIFT | (x & (TILE - 1))];
+    }
+
+    public int getLevelWidth(int level) {
+        return levelWidth[level];
+    }
+    public int getLevelHeight(int level) {
+        return levelHeight[level];
+    }
+
+    /* Updates the pixels showing a cell whose color changed, on every level
+       whose tile is rasterized */
+    public void cellChanged(int cell) {
+        int x = cell % columns >> FIRST_LEVEL;
+        int y = cell / columns >> FIRST_LEVEL;
+        for (int level = FIRST_LEVEL; level <= topLevel; level++, x >>= 1, y >>= 1) {
+            int[] tile = tiles[level][(y >> TILE_SHIFT) * tilesAcross[level] + (x >> TILE_SHIFT)];
+            if (tile == null)
+                return; // nothing above it was rasterized either
+            tile[(y & (TILE - 1)) << TILE_SHIFT | (x & (TILE - 1))] =
+                level == FIRST_LEVEL ? averageCells(x, y) : averageBelow(level, x, y);
+        }
+    }
+
+    /* Rasterizes a tile unless it is up to date, and the tiles below it
+       first. Returns false if the deadline passed before it was done */
+    private boolean build(int level, int index, long deadline) {
+        if (tiles[level][index] != null && builtIn[level][index] == epoch)
+            return true;
+        int tileX = index % tilesAcross[level];
+        int tileY = index / tilesAcross[level];
+        if (level > FIRST_LEVEL) {
+            int below = level - 1;
+            for (int y = tileY * 2; y <= tileY * 2 + 1; y++) {
+                for (int x = tileX * 2; x <= tileX * 2 + 1; x++) {
+                    if (x < tilesAcross[below] && y * tilesAcross[below] + x < tiles[below].length &&
+                        !build(below, y * tilesAcross[below] + x, deadline))
+                        return false;
+                }
+            }
+        }
+        if (System.nanoTime() - deadline >= 0)
+            return false;
+
+        int[] tile = tiles[level][index];
+        if (tile == null)
+            tile = new int[TILE * TILE];
+        int width = Math.min(TILE, levelWidth[level] - tileX * TILE);
+        int height = Math.min(TILE, levelHeight[level] - tileY * TILE);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int levelX = tileX * TILE + x;
+                int levelY = tileY * TILE + y;
+                tile[y << TILE_SHIFT | x] = level == FIRST_LEVEL ? averageCells(levelX, levelY)
+                                                                 : averageBelow(level, levelX, levelY);
+            }
+        }
+        tiles[level][index] = tile;
+        builtIn[level][index] = epoch;
+        return true;
+    }
+
+    /* Average color of the cells of pixel x, y of the first level */
+    private int averageCells(int x, int y) {
+        int fromX = x << FIRST_LEVEL;
+        int fromY = y << FIRST_LEVEL;
+        int toX = Math.min(fromX + (1 << FIRST_LEVEL), columns);
+        int toY = Math.min(fromY + (1 << FIRST_LEVEL), rows);
+        int red = 0, green = 0, blue = 0;
+        for (int row = fromY; row < toY; row++) {
+            for (int cell = row * columns + fromX, end = row * columns + toX; cell < end; cell++) {
+                int rgb = colors.colorOf(cell);
+                red += rgb >> 16 & 0xFF;
+                green += rgb >> 8 & 0xFF;
+                blue += rgb & 0xFF;
+            }
+        }
+        return average(red, green, blue, (toX - fromX) * (toY - fromY));
+    }
+
+    /* Average color of the up to four pixels of the level below that pixel
+       x, y of level covers */
+    private int averageBelow(int level, int x, int y) {
+        int below = level - 1;
+        int red = 0, green = 0, blue = 0, count = 0;
+        for (int belowY = y * 2; belowY <= y * 2 + 1 && belowY < levelHeight[below]; belowY++) {
+            for (int belowX = x * 2; belowX <= x * 2 + 1 && belowX < levelWidth[below]; belowX++) {
+                int rgb = pixel(below, belowX, belowY);
+                red += rgb >> 16 & 0xFF;
+                green += rgb >> 8 & 0xFF;
+                blue += rgb & 0xFF;
+                count++;
+            }
+        }
+        return average(red, green, blue, count);
+    }
+
+    private static int average(int red, int green, int blue, int count) {
+        return 0xFF000000 | (red / count) << 16 | (green / count) << 8 | blue / count;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+    TracePlayer replays a recorded pathfinding.SearchTrace on the Grid. The
+    search itself runs at full speed on the worker thread; the player then
+    steps through its events on the Event Dispatch Thread with a Swing
+    Timer, at an adjustable number of events per second, and can be paused,
+    stepped and moved to any event.
+
+    Each event only moves one cell between unseen, open and closed, and a
+    cell is always open before it is closed, so the player can apply events
+    in either direction. Seeking repaints just the cells it changed. A
+    bidirectional search's trace moves the cells of its backward side
+    through sets of their own, so both frontiers can be shown at once.
+ */
+
+import pathfinding.CellBitSet;
+import pathfinding.SearchTrace;
+
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TracePlayer {
+
+    private static final int FRAME_MILLIS = 16;
+    private static final int FULL_REPAINT_EVENTS = 4096; // Longer seeks repaint everything
+
+    private final Grid graphicPanel;
+    private final Timer timer;
+    private final List<ChangeListener> listeners;
+
+    private SearchTrace trace;     // null until a search has been recorded
+    private CellBitSet openCells;  // State of the cells after position events
+    private CellBitSet closedCells;
+    private CellBitSet backwardOpenCells;  // Likewise for the backward side
+    private CellBitSet backwardClosedCells;
+    private int openCount;         // Cells set in the open and closed sets of both sides
+    private int closedCount;
+    private int position;          // Number of events applied
+    private double rate;           // Events per second while playing
+    private double pendingEvents;  // Fraction of an event carried to the next frame
+
+    public TracePlayer(Grid panel, int cellCount) {
+        graphicPanel = panel;
+        listeners = new ArrayList<>();
+        openCells = new CellBitSet(cellCount);
+        closedCells = new CellBitSet(cellCount);
+        backwardOpenCells = new CellBitSet(cellCount);
+        backwardClosedCells = new CellBitSet(cellCount);
+        rate = 100;
+        timer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                pendingEvents += rate * FRAME_MILLIS / 1000;
+                int events = (int) Math.min(pendingEvents, Integer.MAX_VALUE);
+                pendingEvents -= events;
+                seek(position + Math.min(events, getLength() - position));
+                if (isAtEnd())
+                    pause();
+            }
+        });
+    }
+
+    /* Replaces the current trace with a new one and starts playing it */
+    public void load(SearchTrace searchTrace) {
+        trace = searchTrace;
+        int cells = trace.getWidth() * trace.getHeight();
+        if (openCells.size() != cells) {
+            openCells = new CellBitSet(cells);
+            closedCells = new CellBitSet(cells);
+            backwardOpenCells = new CellBitSet(cells);
+            backwardClosedCells = new CellBitSet(cells);
+        } else {
+            openCells.clear();
+            closedCells.clear();
+            backwardOpenCells.clear();
+            backwardClosedCells.clear();
+        }
+        position = 0;
+        openCount = 0;
+        closedCount = 0;
+        pendingEvents = 0;
+        graphicPanel.repaintAll();
+        play();
+    }
+
+    /* Forgets the current trace */
+    public void clear() {
+        timer.stop();
+        trace = null;
+        openCells.clear();
+        closedCells.clear();
+        backwardOpenCells.clear();
+        backwardClosedCells.clear();
+        position = 0;
+        openCount = 0;
+        closedCount = 0;
+        fireChanged();
+    }
+
+    public void play() {
+        if (trace == null)
+            return;
+        if (isAtEnd())
+            seek(0);
+        timer.start();
+        fireChanged();
+    }
+
+    public void pause() {
+        timer.stop();
+        fireChanged();
+    }
+
+    /* Pauses and applies the next event */
+    public void step() {
+        timer.stop();
+        seek(position + 1);
+        fireChanged();
+    }
+
+    /* Moves the replay to just after the given number of events */
+    public void seek(int newPosition) {
+        newPosition = Math.max(0, Math.min(newPosition, getLength()));
+        if (newPosition == position)
+            return;
+        boolean wasAtEnd = isAtEnd();
+        boolean repaintCells = Math.abs(newPosition - position) <= FULL_REPAINT_EVENTS;
+        while (position < newPosition)
+            apply(trace.getEvent(position++), repaintCells);
+        while (position > newPosition)
+            undo(trace.getEvent(--position), repaintCells);
+        if (!repaintCells || wasAtEnd != isAtEnd()) // the path shows at the end
+            graphicPanel.repaintAll();
+        fireChanged();
+    }
+
+    public void setRate(double eventsPerSecond) {
+        rate = eventsPerSecond;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // Accessors
+    public SearchTrace getTrace() {
+        return trace;
+    }
+    public double getRate() {
+        return rate;
+    }
+    public int getPosition() {
+        return position;
+    }
+    public int getLength() {
+        return trace == null ? 0 : trace.getEventCount();
+    }
+    public boolean isPlaying() {
+        return timer.isRunning();
+    }
+    public boolean isAtEnd() {
+        return trace != null && position == trace.getEventCount();
+    }
+    /* Size of the frontier and number of expanded cells at the current event */
+    public int getOpenCount() {
+        return openCount;
+    }
+    public int getClosedCount() {
+        return closedCount;
+    }
+    public CellBitSet getOpenCells() {
+        return openCells;
+    }
+    public CellBitSet getClosedCells() {
+        return closedCells;
+    }
+    public CellBitSet getBackwardOpenCells() {
+        return backwardOpenCells;
+    }
+    public CellBitSet getBackwardClosedCells() {
+        return backwardClosedCells;
+    }
+
+    private void apply(int event, boolean repaint) {
+        int cell = SearchTrace.cellOf(event);
+        int type = SearchTrace.typeOf(event);
+        boolean backward = type == SearchTrace.OPENED_BACKWARD || type == SearchTrace.CLOSED_BACKWARD;
+        CellBitSet open = backward ? backwardOpenCells : openCells;
+        if (type == SearchTrace.OPENED || type == SearchTrace.OPENED_BACKWARD) {
+            open.set(cell);
+            openCount++;
+        } else {
+            open.clear(cell);
+            (backward ? backwardClosedCells : closedCells).set(cell);
+            openCount--;
+            closedCount++;
+        }
+        if (repaint)
+            repaintCell(cell);
+    }
+
+    private void undo(int event, boolean repaint) {
+        int cell = SearchTrace.cellOf(event);
+        int type = SearchTrace.typeOf(event);
+        boolean backward = type == SearchTrace.OPENED_BACKWARD || type == SearchTrace.CLOSED_BACKWARD;
+        CellBitSet open = backward ? backwardOpenCells : openCells;
+        if (type == SearchTrace.OPENED || type == SearchTrace.OPENED_BACKWARD) {
+            open.clear(cell);
+            openCount--;
+        } else {
+            (backward ? backwardClosedCells : closedCells).clear(cell);
+            open.set(cell);
+            openCount++;
+            closedCount--;
+        }
+        if (repaint)
+            repaintCell(cell);
+    }
+
+    private void repaintCell(int cell) {
+        int width = trace.getWidth();
+        graphicPanel.repaintCell(cell % width, cell / width);
+    }
+
+    private void fireChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listeners)
+            listener.stateChanged(event);
+    }
+}
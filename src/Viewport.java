@@ -0,0 +1,154 @@
+/*
+    Viewport -> Maps between the pixels of the Grid panel and the cells of
+    the map, so the size of the map no longer depends on the size of the
+    panel. The view is a scale, in panel pixels per cell, and the cell
+    coordinates (fractional) that sit at the panel's top left corner.
+
+    A panel pixel shows the cell under its center, so every cell is drawn
+    by the same pixels whether it is painted on its own or as part of the
+    whole view. Zooming keeps the cell under the mouse in place; the map is
+    kept from sliding out of the panel entirely. The scale goes from
+    MAX_SCALE down to a quarter of what fits the whole map into the panel,
+    below one pixel per cell the renderer switches to a TilePyramid.
+ */
+
+import java.awt.Rectangle;
+
+public class Viewport {
+
+    public static final double DEFAULT_SCALE = 10; // The original 10 x 10 pixel squares
+    public static final double MAX_SCALE = 64;
+
+    private final int columns;
+    private final int rows;
+    private int panelWidth, panelHeight;
+    private double scale;    // Panel pixels per cell
+    private double originX;  // Column, fractional, at the left edge of the panel
+    private double originY;  // Row, fractional, at the top edge of the panel
+    private boolean placed;  // False until the panel's size was known once
+
+    public Viewport(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        scale = DEFAULT_SCALE;
+    }
+
+    /* Called with the panel's size whenever it may have changed. The first
+       call shows the map at the default scale if it fits, or all of it */
+    public void setPanelSize(int width, int height) {
+        if (width <= 0 || height <= 0 || (width == panelWidth && height == panelHeight))
+            return;
+        panelWidth = width;
+        panelHeight = height;
+        if (!placed) {
+            placed = true;
+            if (columns * DEFAULT_SCALE <= width && rows * DEFAULT_SCALE <= height) {
+                scale = DEFAULT_SCALE;
+                originX = 0;
+                originY = 0;
+                return;
+            }
+            fit();
+            return;
+        }
+        clamp();
+    }
+
+    /* Shows the whole map, centered */
+    public void fit() {
+        if (panelWidth <= 0)
+            return;
+        scale = Math.min(MAX_SCALE, Math.min((double) panelWidth / columns, (double) panelHeight / rows));
+        originX = (columns - panelWidth / scale) / 2;
+        originY = (rows - panelHeight / scale) / 2;
+    }
+
+    /* Multiplies the scale by factor, keeping the cell at panel pixel x,y
+       where it is */
+    public void zoomAt(int x, int y, double factor) {
+        double cellX = originX + (x + 0.5) / scale;
+        double cellY = originY + (y + 0.5) / scale;
+        scale = Math.max(getMinScale(), Math.min(MAX_SCALE, scale * factor));
+        originX = cellX - (x + 0.5) / scale;
+        originY = cellY - (y + 0.5) / scale;
+        clamp();
+    }
+
+    /* Moves the map by dx, dy panel pixels */
+    public void panBy(int dx, int dy) {
+        originX -= dx / scale;
+        originY -= dy / scale;
+        clamp();
+    }
+
+    // Accessors
+    public double getScale() {
+        return scale;
+    }
+    public double getOriginX() {
+        return originX;
+    }
+    public double getOriginY() {
+        return originY;
+    }
+    public int getPanelWidth() {
+        return panelWidth;
+    }
+    public int getPanelHeight() {
+        return panelHeight;
+    }
+    /* A quarter of the scale that fits the whole map */
+    public double getMinScale() {
+        if (panelWidth <= 0)
+            return DEFAULT_SCALE;
+        return Math.min(DEFAULT_SCALE, Math.min((double) panelWidth / columns, (double) panelHeight / rows) / 4);
+    }
+
+    /* The column (row) shown by the panel pixels at x (y), which can lie
+       outside of the map */
+    public int columnAt(int x) {
+        return (int) Math.floor(originX + (x + 0.5) / scale);
+    }
+    public int rowAt(int y) {
+        return (int) Math.floor(originY + (y + 0.5) / scale);
+    }
+
+    /* The first panel pixel that shows column (row) c or a later one, so
+       column c covers the pixels from pixelOfColumn(c) to pixelOfColumn(c + 1) - 1 */
+    public int pixelOfColumn(int c) {
+        return (int) Math.ceil((c - originX) * scale - 0.5);
+    }
+    public int pixelOfRow(int r) {
+        return (int) Math.ceil((r - originY) * scale - 0.5);
+    }
+
+    /* The panel pixels of a cell, at least one pixel wide and grown by
+       margin on every side */
+    public Rectangle cellBounds(int x, int y, int margin) {
+        int left = pixelOfColumn(x);
+        int top = pixelOfRow(y);
+        int right = Math.max(pixelOfColumn(x + 1), left + 1);
+        int bottom = Math.max(pixelOfRow(y + 1), top + 1);
+        return new Rectangle(left - margin, top - margin, right - left + 2 * margin, bottom - top + 2 * margin);
+    }
+
+    /* Keeps at least a quarter of the panel on the map in each direction,
+       or the whole map in view when it is smaller than that */
+    private void clamp() {
+        double viewWidth = panelWidth / scale;
+        double viewHeight = panelHeight / scale;
+        originX = clampAxis(originX, viewWidth, columns);
+        originY = clampAxis(originY, viewHeight, rows);
+    }
+
+    private static double clampAxis(double origin, double view, int cells) {
+        double margin = view * 0.75;
+        double low = Math.min(-margin, cells - view);
+        double high = Math.max(cells - view + margin, 0);
+        if (cells <= view / 4) { // tiny map, keep all of it in view
+            low = cells - view;
+            high = 0;
+        }
+        return Math.max(low, Math.min(high, origin));
+    }
+}
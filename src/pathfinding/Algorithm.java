@@ -0,0 +1,24 @@
+/*
+    Algorithm -> The search strategies a SearchEngine can run. All of them
+    return paths of the same cost, they differ in how many cells they expand.
+ */
+
+package pathfinding;
+
+public enum Algorithm {
+    ASTAR("A*"),                     // Expands every neighbor of every cell
+    JPS("Jump Point Search"),        // Only expands jump points found by scanning
+    JPS_PLUS("JPS+ (precomputed)"),  // Jump points read from a JumpTable, for static maps
+    ALT("A* + landmarks (ALT)");     // A* guided by a LandmarkTable, for static maze-like maps
+
+    private final String label;
+
+    Algorithm(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
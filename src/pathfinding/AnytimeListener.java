@@ -0,0 +1,10 @@
+/*
+    AnytimeListener -> Callback for the successive paths of an AnytimeSearch,
+    called on the searching thread as soon as each one is found.
+ */
+
+package pathfinding;
+
+public interface AnytimeListener {
+    void solutionFound(AnytimeSolution solution);
+}
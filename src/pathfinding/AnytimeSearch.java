@@ -0,0 +1,330 @@
+/*
+    AnytimeSearch -> Time budgeted search with Likhachev's Anytime Repairing
+    A* (ARA*). The first pass is weighted A*, with the heuristic inflated by
+    epsilon, which finds a path quickly whose cost is at most epsilon times
+    the optimum. While the deadline allows, epsilon is lowered and the search
+    repaired: g costs and parents carry over, and only the cells whose cost
+    improved after they were expanded (the INCONS list) are queued again, so
+    each pass reuses the work of the ones before it.
+
+    Every path found is kept as an AnytimeSolution, with the bound it is
+    proven to be within. If the deadline passes during a pass, search returns
+    with the solutions found so far; the last one is the best. Costs are the
+    same as SearchEngine's, including terrain weights.
+
+    A search can be run for a SearchHandle, which it polls like SearchEngine
+    does, so cancelling the handle stops it even before it has started.
+
+    An instance is not thread safe; use one per thread.
+ */
+
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class AnytimeSearch {
+
+    public static final double DEFAULT_INITIAL_EPSILON = 3.0;
+    public static final double DEFAULT_EPSILON_STEP = 0.5;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final int DEADLINE_CHECK_INTERVAL = 256; // Expansions between clock reads
+
+    private double initialEpsilon;
+    private double epsilonStep;
+
+    private int[] gCost;      // Best known distance from the start cell
+    private int[] hCost;      // Octile distance to the target, set when first seen
+    private int[] parent;
+    private int[] stamp;      // Generation in which the cell's data was written
+    private int generation;
+    private CellBitSet closed;    // Expanded in the current pass
+    private CellBitSet incons;    // Improved after being expanded in the current pass
+    private int[] inconsCells;
+    private int inconsCount;
+    private int[] rekeyBuffer;
+    private final IndexedHeap open; // Keyed by g + epsilon * h, then h
+
+    private final List<AnytimeSolution> solutions;
+    private AnytimeListener listener;
+    private volatile SearchHandle handle; // Query of the running search
+    private int expandedCount;
+
+    public AnytimeSearch() {
+        initialEpsilon = DEFAULT_INITIAL_EPSILON;
+        epsilonStep = DEFAULT_EPSILON_STEP;
+        gCost = new int[0];
+        hCost = new int[0];
+        parent = new int[0];
+        stamp = new int[0];
+        closed = new CellBitSet(0);
+        incons = new CellBitSet(0);
+        inconsCells = new int[64];
+        rekeyBuffer = new int[64];
+        open = new IndexedHeap();
+        solutions = new ArrayList<>();
+    }
+
+    /* The inflation of the first pass, and how much each later pass lowers it */
+    public void setEpsilon(double initial, double step) {
+        if (initial < 1.0 || step <= 0.0)
+            throw new IllegalArgumentException("Epsilon must be at least 1 and the step positive");
+        initialEpsilon = initial;
+        epsilonStep = step;
+    }
+
+    /* Called on the searching thread with each new solution as it is found */
+    public void setListener(AnytimeListener anytimeListener) {
+        listener = anytimeListener;
+    }
+
+    /* Requests that a running search stops, keeping what it found so far.
+       Does nothing between searches, cancel a SearchHandle to stop a query
+       that may not have started yet */
+    public void cancel() {
+        SearchHandle query = handle;
+        if (query != null)
+            query.cancel(true);
+    }
+
+    /* Searches from start to target until an optimal path is proven, the
+       open list runs out, or System.nanoTime() passes deadline. Returns true
+       if at least one path was found */
+    public boolean search(GridMap map, int start, int target, long deadline) {
+        SearchHandle query = new SearchHandle(start, target);
+        query.begin();
+        return run(map, query, deadline);
+    }
+
+    /* The same for the query of a handle, which also stops the search when
+       it is cancelled or its own deadline passes. A handle stopped before
+       the search starts is not searched. The handle is completed with the
+       best path, or expires if the deadline left no time for one */
+    public boolean search(GridMap map, SearchHandle query, long deadline) {
+        if (!query.begin())
+            return false;
+        boolean found = run(map, query, deadline);
+        if (found)
+            query.complete(getBestSolution().getPath().clone(), getBestSolution().getCost());
+        else if (!query.stopRequested(false) && System.nanoTime() - deadline >= 0)
+            query.expire();
+        else if (!query.stopRequested(false))
+            query.complete(null, -1);
+        return found;
+    }
+
+    private boolean run(GridMap map, SearchHandle query, long deadline) {
+        int start = query.getStart();
+        int target = query.getTarget();
+        long begin = System.nanoTime();
+        ensureCapacity(map.getCellCount());
+        beginQuery();
+        handle = query;
+
+        int width = map.getWidth();
+        int targetX = target % width;
+        int targetY = target / width;
+        double epsilon = initialEpsilon;
+
+        see(start, width, targetX, targetY);
+        gCost[start] = 0;
+        open.insert(start, key(start, epsilon), hCost[start]);
+
+        while (true) {
+            if (!improvePath(map, target, epsilon, deadline))
+                break;
+            if (stamp[target] != generation || gCost[target] >= INFINITY)
+                break; // no path at all
+            double bound = Math.min(epsilon, proveBound(target));
+            AnytimeSolution last = getBestSolution();
+            if (last == null || gCost[target] < last.getCost() || bound < last.getBound())
+                publish(map, target, epsilon, bound, System.nanoTime() - begin);
+            if (bound <= 1.0)
+                break;
+
+            // A pass at an epsilon above the proven bound could not improve on it
+            epsilon = Math.max(1.0, Math.min(epsilon - epsilonStep, bound));
+            requeue(epsilon);
+        }
+        handle = null;
+        return !solutions.isEmpty();
+    }
+
+    // Accessors for the solutions of the last search, from the first to the best
+    public int getSolutionCount() {
+        return solutions.size();
+    }
+    public AnytimeSolution getSolution(int i) {
+        return solutions.get(i);
+    }
+    public AnytimeSolution getBestSolution() {
+        return solutions.isEmpty() ? null : solutions.get(solutions.size() - 1);
+    }
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+
+    /* One weighted A* pass. Stops once no open cell could still improve the
+       path to the target at this epsilon. Returns false if the deadline
+       passed or the search was cancelled first */
+    private boolean improvePath(GridMap map, int target, double epsilon, long deadline) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int targetX = target % width;
+        int targetY = target / width;
+        int sinceCheck = 0;
+
+        while (!open.isEmpty() && open.getFCost(open.peek()) < targetKey(target)) {
+            boolean checkClock = ++sinceCheck == DEADLINE_CHECK_INTERVAL;
+            if (checkClock) {
+                sinceCheck = 0;
+                if (System.nanoTime() - deadline >= 0)
+                    return false;
+            }
+            if (handle.stopRequested(checkClock && handle.hasDeadline()))
+                return false;
+
+            int current = open.pop();
+            closed.set(current);
+            expandedCount++;
+
+            int currentX = current % width;
+            int currentY = current / width;
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i == 0 && j == 0)
+                        continue;
+                    int neighborX = currentX + i;
+                    int neighborY = currentY + j;
+                    if (neighborX < 0 || neighborX >= width || neighborY < 0 || neighborY >= height)
+                        continue;
+                    int neighbor = neighborY * width + neighborX;
+                    if (map.isBlocked(neighbor))
+                        continue;
+
+                    see(neighbor, width, targetX, targetY);
+                    int g = gCost[current] + (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST
+                                                               : SearchEngine.STRAIGHT_COST) * map.getWeight(neighbor);
+                    if (g >= gCost[neighbor])
+                        continue;
+                    gCost[neighbor] = g;
+                    parent[neighbor] = current;
+                    if (closed.get(neighbor))
+                        addIncons(neighbor);
+                    else if (open.contains(neighbor))
+                        open.decreaseKey(neighbor, key(neighbor, epsilon), hCost[neighbor]);
+                    else
+                        open.insert(neighbor, key(neighbor, epsilon), hCost[neighbor]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /* The cost to the target divided by the lowest g + h of any cell that is
+       still open or inconsistent: no path can be cheaper than that minimum */
+    private double proveBound(int target) {
+        long lowest = gCost[target];
+        for (int i = 0; i < open.size(); i++) {
+            int cell = open.get(i);
+            lowest = Math.min(lowest, (long) gCost[cell] + hCost[cell]);
+        }
+        for (int i = 0; i < inconsCount; i++) {
+            int cell = inconsCells[i];
+            lowest = Math.min(lowest, (long) gCost[cell] + hCost[cell]);
+        }
+        return lowest <= 0 ? 1.0 : Math.max(1.0, (double) gCost[target] / lowest);
+    }
+
+    /* Moves the inconsistent cells into the open list, re-keys every open
+       cell for the new epsilon and empties the closed set for the next pass */
+    private void requeue(double epsilon) {
+        int count = open.size();
+        if (rekeyBuffer.length < count + inconsCount)
+            rekeyBuffer = new int[count + inconsCount];
+        for (int i = 0; i < count; i++)
+            rekeyBuffer[i] = open.get(i);
+        System.arraycopy(inconsCells, 0, rekeyBuffer, count, inconsCount);
+        count += inconsCount;
+
+        open.clear();
+        for (int i = 0; i < count; i++) {
+            int cell = rekeyBuffer[i];
+            open.insert(cell, key(cell, epsilon), hCost[cell]);
+        }
+        incons.clear();
+        inconsCount = 0;
+        closed.clear();
+    }
+
+    private void publish(GridMap map, int target, double epsilon, double bound, long nanos) {
+        int length = 0;
+        for (int cell = target; cell != -1; cell = parent[cell])
+            length++;
+        int[] path = new int[length];
+        for (int cell = target, i = length - 1; cell != -1; cell = parent[cell], i--)
+            path[i] = cell;
+        AnytimeSolution solution = new AnytimeSolution(path, gCost[target], epsilon, bound, expandedCount, nanos);
+        solutions.add(solution);
+        if (listener != null)
+            listener.solutionFound(solution);
+    }
+
+    private int key(int cell, double epsilon) {
+        return gCost[cell] + (int) (epsilon * hCost[cell]);
+    }
+    private int targetKey(int target) {
+        return stamp[target] == generation ? gCost[target] : INFINITY;
+    }
+
+    private void addIncons(int cell) {
+        if (incons.get(cell))
+            return;
+        incons.set(cell);
+        if (inconsCount == inconsCells.length)
+            inconsCells = Arrays.copyOf(inconsCells, inconsCount * 2);
+        inconsCells[inconsCount++] = cell;
+    }
+
+    /* Initializes a cell the first time this query reaches it */
+    private void see(int cell, int width, int targetX, int targetY) {
+        if (stamp[cell] == generation)
+            return;
+        stamp[cell] = generation;
+        gCost[cell] = INFINITY;
+        parent[cell] = -1;
+        int dx = Math.abs(targetX - cell % width);
+        int dy = Math.abs(targetY - cell / width);
+        hCost[cell] = SearchEngine.STRAIGHT_COST * Math.max(dx, dy)
+                      + (SearchEngine.DIAGONAL_COST - SearchEngine.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    private void ensureCapacity(int cellCount) {
+        if (gCost.length >= cellCount)
+            return;
+        gCost = new int[cellCount];
+        hCost = new int[cellCount];
+        parent = new int[cellCount];
+        stamp = new int[cellCount];
+        generation = 0;
+        closed = new CellBitSet(cellCount);
+        incons = new CellBitSet(cellCount);
+        open.ensureCapacity(cellCount);
+    }
+
+    private void beginQuery() {
+        generation++;
+        if (generation == 0) { // wrapped around, stale stamps could now match
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        open.clear();
+        closed.clear();
+        incons.clear();
+        inconsCount = 0;
+        solutions.clear();
+        expandedCount = 0;
+    }
+}
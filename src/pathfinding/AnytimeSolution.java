@@ -0,0 +1,50 @@
+/*
+    AnytimeSolution -> One of the successive paths found by AnytimeSearch.
+    Its cost is at most getBound() times the cost of an optimal path, a
+    bound of 1 means the path is optimal.
+ */
+
+package pathfinding;
+
+public final class AnytimeSolution {
+
+    private final int[] path;     // Cells from start to target
+    private final int cost;
+    private final double epsilon; // Heuristic inflation of the pass that found it
+    private final double bound;   // Proven suboptimality bound, <= epsilon
+    private final int expanded;   // Cells expanded since the query began
+    private final long nanos;     // Time since the query began
+
+    AnytimeSolution(int[] pathCells, int pathCost, double inflation, double suboptimality,
+                    int expandedCount, long elapsedNanos) {
+        path = pathCells;
+        cost = pathCost;
+        epsilon = inflation;
+        bound = suboptimality;
+        expanded = expandedCount;
+        nanos = elapsedNanos;
+    }
+
+    // Accessors
+    public int[] getPath() { // Do not modify
+        return path;
+    }
+    public int getCost() {
+        return cost;
+    }
+    public double getEpsilon() {
+        return epsilon;
+    }
+    public double getBound() {
+        return bound;
+    }
+    public boolean isOptimal() {
+        return bound <= 1.0;
+    }
+    public int getExpanded() {
+        return expanded;
+    }
+    public long getNanos() {
+        return nanos;
+    }
+}
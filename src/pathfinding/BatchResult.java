@@ -0,0 +1,44 @@
+/*
+    BatchResult -> The answers to a batch of path queries, packed into flat
+    arrays: the paths of all queries are stored back to back in one int[] of
+    cell indices, and offsets[q] .. offsets[q + 1] is the slice of query q.
+ */
+
+package pathfinding;
+
+public final class BatchResult {
+
+    private final int[] costs;   // Path cost of each query, -1 if it has no path
+    private final int[] offsets; // Start of each query's path in cells, plus the end
+    private final int[] cells;   // Every path, start->target, back to back
+
+    BatchResult(int[] pathCosts, int[] pathOffsets, int[] pathCells) {
+        costs = pathCosts;
+        offsets = pathOffsets;
+        cells = pathCells;
+    }
+
+    // Accessors
+    public int size() {
+        return costs.length;
+    }
+    public boolean isFound(int query) {
+        return costs[query] >= 0;
+    }
+    public int getCost(int query) {
+        return costs[query];
+    }
+    public int getPathLength(int query) {
+        return offsets[query + 1] - offsets[query];
+    }
+    public int getPathCell(int query, int step) {
+        return cells[offsets[query] + step];
+    }
+
+    /* Copies the path of a query into dest, returns the number of cells copied */
+    public int copyPath(int query, int[] dest) {
+        int length = getPathLength(query);
+        System.arraycopy(cells, offsets[query], dest, 0, length);
+        return length;
+    }
+}
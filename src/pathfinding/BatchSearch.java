@@ -0,0 +1,165 @@
+/*
+    BatchSearch -> Answers many start/target queries against one map using
+    every core. The map (and JPS+ jump table or ALT landmarks) is shared read-only by all
+    workers, while each worker owns a SearchEngine and a path buffer that are
+    kept between batches, so steady state batches only allocate the result.
+
+    Workers pull the next query from a shared counter instead of getting a
+    fixed slice, which keeps all cores busy when query costs vary a lot.
+    The map must not be edited while solve is running.
+ */
+
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class BatchSearch implements AutoCloseable {
+
+    private final GridMap map;
+    private final Algorithm algorithm;
+    private final ForkJoinPool pool;
+    private final SearchEngine[] engines; // Scratch space of each worker
+    private final int[][] pathBuffers;    // Paths found by each worker in the current batch
+    private JumpTable jumpTable;          // Shared by the engines, for JPS_PLUS
+    private LandmarkTable landmarkTable;  // Shared by the engines, for ALT
+
+    public BatchSearch(GridMap gridMap, Algorithm searchAlgorithm, int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Thread count must be positive");
+        map = gridMap;
+        algorithm = searchAlgorithm;
+        pool = new ForkJoinPool(threads);
+        engines = new SearchEngine[threads];
+        pathBuffers = new int[threads][];
+        for (int i = 0; i < threads; i++) {
+            engines[i] = new SearchEngine();
+            engines[i].setAlgorithm(algorithm);
+            pathBuffers[i] = new int[1024];
+        }
+    }
+
+    /* One worker per available core */
+    public BatchSearch(GridMap gridMap, Algorithm searchAlgorithm) {
+        this(gridMap, searchAlgorithm, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getThreadCount() {
+        return engines.length;
+    }
+
+    /* Solves every query of {start0, target0, start1, target1, ...} */
+    public BatchResult solve(int[] queries) {
+        if (queries.length % 2 != 0)
+            throw new IllegalArgumentException("Queries must be start/target pairs");
+        int count = queries.length / 2;
+
+        // Precompute once, rather than once per engine, and keep it for the
+        // next batches until the map changes. On a weighted map the engines
+        // run A* instead of JPS+, so no table is built
+        if (algorithm == Algorithm.JPS_PLUS && !map.isWeighted()
+            && (jumpTable == null || !jumpTable.isFor(map))) {
+            jumpTable = new JumpTable(map);
+            for (SearchEngine engine : engines)
+                engine.setJumpTable(jumpTable);
+        } else if (algorithm == Algorithm.ALT && (landmarkTable == null || !landmarkTable.isFor(map))) {
+            landmarkTable = new LandmarkTable(map, LandmarkTable.DEFAULT_COUNT, engines.length);
+            for (SearchEngine engine : engines)
+                engine.setLandmarkTable(landmarkTable);
+        }
+
+        Batch batch = new Batch(queries, count);
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < engines.length; i++)
+            workers.add(new Worker(i, batch));
+        for (Future<Void> future : pool.invokeAll(workers)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while solving a batch", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A batch query failed", e.getCause());
+            }
+        }
+        return batch.collect();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /* State of one solve call, filled in by the workers */
+    private final class Batch {
+        final int[] queries;
+        final AtomicInteger next;
+        final int[] costs;
+        final int[] lengths;
+        final int[] owner;       // Worker that solved each query
+        final int[] localOffset; // Where that worker put the path in its buffer
+
+        Batch(int[] batchQueries, int count) {
+            queries = batchQueries;
+            next = new AtomicInteger();
+            costs = new int[count];
+            lengths = new int[count];
+            owner = new int[count];
+            localOffset = new int[count];
+        }
+
+        /* Copies the paths out of the worker buffers into one packed array */
+        BatchResult collect() {
+            int count = costs.length;
+            int[] offsets = new int[count + 1];
+            for (int q = 0; q < count; q++)
+                offsets[q + 1] = offsets[q] + lengths[q];
+            int[] cells = new int[offsets[count]];
+            for (int q = 0; q < count; q++)
+                System.arraycopy(pathBuffers[owner[q]], localOffset[q], cells, offsets[q], lengths[q]);
+            return new BatchResult(costs, offsets, cells);
+        }
+    }
+
+    private final class Worker implements Callable<Void> {
+        private final int index;
+        private final Batch batch;
+
+        Worker(int workerIndex, Batch currentBatch) {
+            index = workerIndex;
+            batch = currentBatch;
+        }
+
+        @Override
+        public Void call() {
+            SearchEngine engine = engines[index];
+            int[] buffer = pathBuffers[index];
+            int used = 0;
+            int count = batch.costs.length;
+
+            for (int q = batch.next.getAndIncrement(); q < count; q = batch.next.getAndIncrement()) {
+                batch.owner[q] = index;
+                batch.localOffset[q] = used;
+                if (!engine.search(map, batch.queries[2 * q], batch.queries[2 * q + 1])) {
+                    batch.costs[q] = -1;
+                    continue;
+                }
+                int length = engine.getPathLength();
+                if (used + length > buffer.length)
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, used + length));
+                System.arraycopy(engine.getPath(), 0, buffer, used, length);
+                batch.costs[q] = engine.getPathCost();
+                batch.lengths[q] = length;
+                used += length;
+            }
+            pathBuffers[index] = buffer;
+            return null;
+        }
+    }
+}
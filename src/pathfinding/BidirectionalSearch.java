@@ -0,0 +1,466 @@
+/*
+    BidirectionalSearch -> A* from both ends at once: a forward search from
+    the start towards the target runs on the calling thread while a backward
+    search from the target towards the start runs on a thread of its own,
+    and a query is over as soon as either of them has proven the best path
+    through the cells where they met. Costs are the same as SearchEngine's,
+    terrain weights included, so the paths are optimal and cost the same.
+
+    The two sides follow PNBA* (parallel New Bidirectional A*). Each keeps
+    its own open list and parents, and publishes its g costs, the lowest f
+    on its open list and the cells it is done with (the "middle" set shared
+    by both) in arrays written and read with volatile VarHandle accesses, so
+    neither side ever waits for the other. Whenever a side lowers the cost
+    of a cell the other side has reached, their sum is a path, and the
+    cheapest one so far is kept with a compare-and-set. A cell is expanded
+    only if its f, and its g plus the other side's lowest f minus the other
+    side's heuristic of it, are both below that cost; cells in the middle
+    set are not touched again by either side. Reading the other side's
+    values late only makes a side expand more than it had to, never less,
+    and as every write is volatile at least one side sees a meeting. The
+    query ends once one side's open list is empty.
+
+    The backward side needs the cost of a step into the cell it comes from:
+    entering a cell costs the step times the cell's weight, so stepping back
+    from v to u costs the step times v's weight. Both heuristics are the
+    octile distance, towards the target and towards the start.
+
+    A query can be run for a SearchHandle, which both sides poll, so a
+    cancel or the handle's deadline stops them promptly, also when the
+    handle is cancelled before the search starts. cancel stops whatever
+    query is running.
+
+    Listeners of the two sides are called under a common lock, so a
+    SearchTrace can record both, see SearchTrace.backward. An instance is
+    not thread safe; close stops the backward thread.
+ */
+
+package pathfinding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class BidirectionalSearch implements AutoCloseable {
+
+    private static final VarHandle COSTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final long NO_MEETING = (long) UNREACHED << 32; // best cost UNREACHED, cell 0
+    private static final int DEADLINE_CHECK_INTERVAL = 256; // Pops between clock reads, per side
+
+    private final Side forward;
+    private final Side backward;
+    private int[] middle;   // Generation in which a cell was finished by either side
+    private int generation; // Current query number, also the high half of every cost entry
+
+    private final AtomicLong best; // Cost of the best path found << 32 | the cell where the sides met
+    private volatile boolean finished;  // Set by the first side whose open list runs empty
+    private volatile SearchHandle handle; // Query of the running search, polled by both sides
+    private final ExecutorService backwardThread;
+
+    private final Object listenerLock;
+    private GridMap map;    // Map of the running query
+
+    private int[] path;     // Cells from start to target of the last search
+    private int pathLength;
+    private int pathCost;
+    private int meetingCell;
+    private final SearchMetrics metrics;
+
+    public BidirectionalSearch() {
+        forward = new Side(false);
+        backward = new Side(true);
+        forward.other = backward;
+        backward.other = forward;
+        middle = new int[0];
+        best = new AtomicLong();
+        listenerLock = new Object();
+        path = new int[64];
+        metrics = new SearchMetrics();
+        backwardThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "backward-search");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /* Observers of the forward and the backward side, either may be null.
+       They are called from different threads, one at a time */
+    public void setListeners(SearchListener forwardListener, SearchListener backwardListener) {
+        forward.listener = forwardListener;
+        backward.listener = backwardListener;
+    }
+
+    /* Requests that a running search stops, both sides at their next
+       expansion. Does nothing between searches; to stop a query that may
+       not have started yet, run it for a SearchHandle and cancel that */
+    public void cancel() {
+        SearchHandle query = handle;
+        if (query != null)
+            query.cancel(true);
+    }
+
+    /* Searches from start to target (cell indices of map). Returns true if a
+       path was found, which can then be read with getPath */
+    public boolean search(GridMap gridMap, int start, int target) {
+        SearchHandle query = new SearchHandle(start, target);
+        query.begin();
+        return run(gridMap, query);
+    }
+
+    /* Runs the query of a handle, unless it was cancelled or expired before
+       it started, as SearchEngine.search does. The handle is completed with
+       a copy of the path, or with no path; if it is stopped while the search
+       runs, the search returns false and the handle keeps its status */
+    public boolean search(GridMap gridMap, SearchHandle query) {
+        if (!query.begin())
+            return false;
+        boolean found = run(gridMap, query);
+        if (found)
+            query.complete(Arrays.copyOf(path, pathLength), pathCost);
+        else if (!query.stopRequested(false))
+            query.complete(null, -1);
+        return found;
+    }
+
+    private boolean run(GridMap gridMap, SearchHandle query) {
+        int start = query.getStart();
+        int target = query.getTarget();
+        map = gridMap;
+        metrics.begin(Algorithm.ASTAR, start, target);
+        ensureCapacity(map.getCellCount());
+        beginQuery();
+        handle = query;
+
+        boolean found = false;
+        if (start == target || !map.isBlocked(target)) { // as in SearchEngine, start == target is found even on a blocked cell
+            forward.begin(start, target);
+            backward.begin(target, start);
+            Future<?> other = backwardThread.submit(new Callable<Void>() {
+                public Void call() {
+                    backward.run();
+                    return null;
+                }
+            });
+            try {
+                forward.run();
+            } finally {
+                finished = true; // stops the backward side if the forward side threw
+                join(other);
+            }
+            found = !query.stopRequested(false) && best.get() != NO_MEETING;
+        }
+        handle = null;
+        if (found)
+            buildPath(start, target, (int) best.get());
+
+        metrics.end(found, pathLength, found ? pathCost : -1,
+                    forward.heap.getPeakSize() + backward.heap.getPeakSize());
+        metrics.expanded = forward.expanded + backward.expanded;
+        metrics.pushes = forward.pushes + backward.pushes;
+        metrics.pops = forward.pops + backward.pops;
+        metrics.decreaseKeys = forward.decreaseKeys + backward.decreaseKeys;
+        map = null;
+        return found;
+    }
+
+    @Override
+    public void close() {
+        backwardThread.shutdownNow();
+    }
+
+    // Accessors for the results of the last search
+    public int[] getPath() { // Shared buffer, only the first getPathLength() cells are valid
+        return path;
+    }
+    public int getPathLength() {
+        return pathLength;
+    }
+    public int getPathCost() {
+        return pathLength == 0 ? -1 : pathCost;
+    }
+    public int getMeetingCell() { // The cell of the path where the two sides joined, -1 without a path
+        return pathLength == 0 ? -1 : meetingCell;
+    }
+    public int getForwardExpanded() {
+        return forward.expanded;
+    }
+    public int getBackwardExpanded() {
+        return backward.expanded;
+    }
+    public SearchMetrics getMetrics() { // Both sides together; peak open is the sum of their peaks
+        return metrics;
+    }
+
+    /* Waits for the backward side to finish */
+    private static void join(Future<?> other) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                other.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Backward search failed", e.getCause());
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private boolean isFinished(int cell) {
+        return (int) STAMPS.getVolatile(middle, cell) == generation;
+    }
+
+    /* Lowers the best path cost to cost, through cell, if that is better */
+    private void offerMeeting(long cost, int cell) {
+        long candidate = cost << 32 | cell;
+        long current;
+        do {
+            current = best.get();
+            if (candidate >= current)
+                return;
+        } while (!best.compareAndSet(current, candidate));
+    }
+
+    private int bestCost() {
+        return (int) (best.get() >>> 32);
+    }
+
+    private void ensureCapacity(int cellCount) {
+        if (middle.length >= cellCount)
+            return;
+        middle = new int[cellCount];
+        forward.ensureCapacity(cellCount);
+        backward.ensureCapacity(cellCount);
+        generation = 0;
+    }
+
+    /* Invalidates the costs and middle set of the previous query, as the
+       stamps of SearchEngine do */
+    private void beginQuery() {
+        generation++;
+        if (generation == 0) { // wrapped around, stale stamps could now match
+            Arrays.fill(middle, 0);
+            Arrays.fill(forward.cost, 0);
+            Arrays.fill(backward.cost, 0);
+            generation = 1;
+        }
+        best.set(NO_MEETING);
+        finished = false;
+        pathLength = 0;
+        pathCost = -1;
+    }
+
+    /* The forward parents from the meeting cell back to the start, reversed,
+       then the backward parents on to the target */
+    private void buildPath(int start, int target, int meeting) {
+        int length = 0;
+        for (int cell = meeting; cell != -1; cell = forward.parent[cell]) {
+            if (length == path.length)
+                path = Arrays.copyOf(path, length * 2);
+            path[length++] = cell;
+        }
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = path[i];
+            path[i] = path[j];
+            path[j] = tmp;
+        }
+        for (int cell = backward.parent[meeting]; cell != -1; cell = backward.parent[cell]) {
+            if (length == path.length)
+                path = Arrays.copyOf(path, length * 2);
+            path[length++] = cell;
+        }
+        pathLength = length;
+        pathCost = forward.costOf(meeting) + backward.costOf(meeting);
+        meetingCell = meeting;
+    }
+
+    /* One direction of the search. The backward side walks the edges in
+       reverse, from a cell to the cells that step into it */
+    private final class Side {
+        private final boolean reverse;
+        Side other;
+        SearchListener listener;
+
+        private final IndexedHeap heap;
+        long[] cost;          // generation << 32 | g, read by the other side
+        int[] parent;         // Towards this side's origin, -1 at the origin
+        private volatile int lowestF; // f at the top of the open list, UNREACHED once it is empty
+
+        private int goalX, goalY;     // The other end, which the heuristic aims at
+        private int originX, originY; // This end, which the other side's heuristic aims at
+        private int origin;
+
+        int expanded, pushes, pops, decreaseKeys;
+        private int sinceCheck; // Pops since the handle's deadline was checked
+
+        Side(boolean backwards) {
+            reverse = backwards;
+            heap = new IndexedHeap();
+            cost = new long[0];
+            parent = new int[0];
+        }
+
+        void ensureCapacity(int cellCount) {
+            cost = new long[cellCount];
+            parent = new int[cellCount];
+            heap.ensureCapacity(cellCount);
+        }
+
+        /* Opens the origin. Runs on the calling thread before either side starts */
+        void begin(int originCell, int goalCell) {
+            int width = map.getWidth();
+            origin = originCell;
+            originX = originCell % width;
+            originY = originCell / width;
+            goalX = goalCell % width;
+            goalY = goalCell / width;
+            heap.clear();
+            expanded = 0;
+            pushes = 0;
+            pops = 0;
+            decreaseKeys = 0;
+            sinceCheck = 0;
+
+            int h = heuristic(originX, originY, goalX, goalY);
+            setCost(originCell, 0);
+            parent[originCell] = -1;
+            heap.insert(originCell, h, h);
+            pushes++;
+            lowestF = h;
+            if (originCell == goalCell)
+                offerMeeting(0, originCell);
+            opened(originCell);
+        }
+
+        /* Expands cells until this side has proven the best path, the other
+           side has, or the search was cancelled */
+        void run() {
+            int width = map.getWidth();
+            while (!finished && !stopped()) {
+                if (heap.isEmpty()) {
+                    finished = true;
+                    break;
+                }
+                int current = heap.pop();
+                pops++;
+                if (!isFinished(current)) {
+                    int x = current % width;
+                    int y = current / width;
+                    long g = costOf(current);
+                    long bound = bestCost();
+                    if (g + heuristic(x, y, goalX, goalY) < bound &&
+                        g + other.lowestF - heuristic(x, y, originX, originY) < bound)
+                        expand(current, x, y, (int) g);
+                    STAMPS.setVolatile(middle, current, generation);
+                }
+                lowestF = heap.isEmpty() ? UNREACHED : heap.getFCost(heap.peek());
+            }
+        }
+
+        /* The handle's status, and every DEADLINE_CHECK_INTERVAL pops its deadline */
+        private boolean stopped() {
+            boolean checkClock = false;
+            if (++sinceCheck == DEADLINE_CHECK_INTERVAL) {
+                sinceCheck = 0;
+                checkClock = handle.hasDeadline();
+            }
+            return handle.stopRequested(checkClock);
+        }
+
+        private void expand(int current, int currentX, int currentY, int currentG) {
+            expanded++;
+            closed(current);
+            int width = map.getWidth();
+            int height = map.getHeight();
+            int currentWeight = map.getWeight(current);
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i == 0 && j == 0)
+                        continue;
+
+                    int neighborX = currentX + i;
+                    int neighborY = currentY + j;
+                    if (neighborX < 0 || neighborX >= width ||
+                        neighborY < 0 || neighborY >= height)
+                        continue;
+
+                    int neighbor = neighborY * width + neighborX;
+                    if (map.isBlocked(neighbor) && !(reverse && neighbor == other.origin))
+                        continue; // a blocked start can still be left
+                    if (isFinished(neighbor))
+                        continue;
+
+                    int step = i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST;
+                    int g = currentG + step * (reverse ? currentWeight : map.getWeight(neighbor));
+                    int known = costOf(neighbor);
+                    if (g >= known)
+                        continue;
+
+                    setCost(neighbor, g);
+                    parent[neighbor] = current;
+                    int h = heuristic(neighborX, neighborY, goalX, goalY);
+                    if (known == UNREACHED) {
+                        heap.insert(neighbor, g + h, h);
+                        pushes++;
+                        opened(neighbor);
+                    } else {
+                        heap.decreaseKey(neighbor, g + h, h);
+                        decreaseKeys++;
+                    }
+
+                    int otherG = other.costOf(neighbor);
+                    if (otherG != UNREACHED && (long) g + otherG < bestCost())
+                        offerMeeting((long) g + otherG, neighbor);
+                }
+            }
+        }
+
+        /* g of a cell in the current query, UNREACHED if this side has not
+           reached it. Safe to call from the other side's thread */
+        int costOf(int cell) {
+            long entry = (long) COSTS.getVolatile(cost, cell);
+            return (int) (entry >>> 32) == generation ? (int) entry : UNREACHED;
+        }
+
+        private void setCost(int cell, int g) {
+            COSTS.setVolatile(cost, cell, (long) generation << 32 | g);
+        }
+
+        private void opened(int cell) {
+            if (listener != null) {
+                synchronized (listenerLock) {
+                    listener.cellOpened(cell);
+                }
+            }
+        }
+
+        private void closed(int cell) {
+            if (listener != null) {
+                synchronized (listenerLock) {
+                    listener.cellClosed(cell);
+                }
+            }
+        }
+    }
+
+    /* Octile distance, as in SearchEngine */
+    private static int heuristic(int x, int y, int goalX, int goalY) {
+        int dx = Math.abs(goalX - x);
+        int dy = Math.abs(goalY - y);
+        return SearchEngine.STRAIGHT_COST * Math.max(dx, dy)
+               + (SearchEngine.DIAGONAL_COST - SearchEngine.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    BucketQueue -> An open list that files cells into one bucket per f cost
+    (Dial's algorithm) instead of keeping them in a heap. With a consistent
+    heuristic f never decreases from one expanded cell to the next, and a
+    single step raises it by at most a known range, so every queued cell has
+    an f in [minF, minF + range]. A circular array of range+1 buckets (rounded
+    up to a power of two) therefore covers all of them, and insert, decreaseKey
+    and pop take O(1) amortized time: pop only ever scans forward.
+
+    Each bucket is a doubly linked list threaded through per-cell arrays, so
+    a cell can be moved to a lower bucket without searching for it. Within a
+    bucket the most recently queued cell comes out first, which, like the
+    heap's tie break on h, tends to favor cells nearer the target.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+final class BucketQueue implements OpenList {
+
+    private static final int NONE = -1;
+    private static final int NOT_QUEUED = -2;
+
+    private int[] head;     // First cell of each bucket, or NONE
+    private int mask;       // head.length - 1
+    private int[] next;     // Following cell in the same bucket, or NONE
+    private int[] prev;     // Preceding cell in the same bucket, NONE if first, NOT_QUEUED if not in the queue
+    private int[] fCost;    // Key of every queued cell
+    private int size;
+    private int peakSize;
+    private int minF;       // No queued cell has a lower f
+
+    BucketQueue() {
+        head = new int[0];
+        next = new int[0];
+        prev = new int[0];
+        fCost = new int[0];
+    }
+
+    /* Sets the largest amount by which f can grow over a single step. Only
+       allowed while the queue is empty */
+    void setRange(int range) {
+        if (size != 0)
+            throw new IllegalStateException("Queue is not empty");
+        int buckets = Integer.highestOneBit(range) << 1; // > range
+        if (head.length != buckets) {
+            head = new int[buckets];
+            Arrays.fill(head, NONE);
+            mask = buckets - 1;
+        }
+    }
+
+    public void ensureCapacity(int cellCount) {
+        if (prev.length >= cellCount)
+            return;
+        int oldLength = prev.length;
+        next = Arrays.copyOf(next, cellCount);
+        prev = Arrays.copyOf(prev, cellCount);
+        Arrays.fill(prev, oldLength, cellCount, NOT_QUEUED);
+        fCost = Arrays.copyOf(fCost, cellCount);
+    }
+
+    /* Empties the queue, only walking the buckets that can hold cells */
+    public void clear() {
+        for (int f = minF; size > 0; f++) {
+            int bucket = f & mask;
+            for (int cell = head[bucket]; cell != NONE; cell = next[cell]) {
+                prev[cell] = NOT_QUEUED;
+                size--;
+            }
+            head[bucket] = NONE;
+        }
+        peakSize = 0;
+    }
+
+    // Accessors
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public int size() {
+        return size;
+    }
+    public int getPeakSize() {
+        return peakSize;
+    }
+    public boolean contains(int cell) {
+        return prev[cell] != NOT_QUEUED;
+    }
+
+    public void insert(int cell, int f, int h) {
+        if (size == 0 || f < minF)
+            minF = f;
+        fCost[cell] = f;
+        link(cell);
+        if (++size > peakSize)
+            peakSize = size;
+    }
+
+    public void decreaseKey(int cell, int f, int h) {
+        unlink(cell);
+        fCost[cell] = f;
+        if (f < minF)
+            minF = f;
+        link(cell);
+    }
+
+    public int pop() {
+        while (head[minF & mask] == NONE)
+            minF++;
+        int cell = head[minF & mask];
+        unlink(cell);
+        prev[cell] = NOT_QUEUED;
+        size--;
+        return cell;
+    }
+
+    /* Puts a cell at the front of the bucket of its f cost */
+    private void link(int cell) {
+        int bucket = fCost[cell] & mask;
+        int first = head[bucket];
+        next[cell] = first;
+        prev[cell] = NONE;
+        if (first != NONE)
+            prev[first] = cell;
+        head[bucket] = cell;
+    }
+
+    private void unlink(int cell) {
+        int before = prev[cell];
+        int after = next[cell];
+        if (before == NONE)
+            head[fCost[cell] & mask] = after;
+        else
+            next[before] = after;
+        if (after != NONE)
+            prev[after] = before;
+    }
+}
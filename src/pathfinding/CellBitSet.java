@@ -0,0 +1,152 @@
+/*
+    CellBitSet -> One bit per cell, packed 64 cells to a long. Besides single
+    bit access it exposes whole words, so callers can test or skip 64 cells
+    with one operation (rendering only the set cells, scanning a row for the
+    next obstacle, ...).
+
+    clear only touches the words that were written since the last clear, so a
+    bit set that is reused by many small searches stays cheap to reset.
+ */
+
+package pathfinding;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+public final class CellBitSet {
+
+    private final long[] words;
+    private final int size;  // Number of cells
+    private int dirtyFrom;   // Range of words written since the last clear
+    private int dirtyTo;
+
+    public CellBitSet(int cellCount) {
+        size = cellCount;
+        words = new long[(cellCount + 63) >>> 6];
+        dirtyFrom = words.length;
+        dirtyTo = -1;
+    }
+
+    // Accessors
+    public int size() {
+        return size;
+    }
+    public int getWordCount() {
+        return words.length;
+    }
+    public long getWord(int wordIndex) {
+        return words[wordIndex];
+    }
+    public long getMemoryBytes() {
+        return 8L * words.length;
+    }
+
+    public boolean get(int cell) {
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public void set(int cell) {
+        int w = cell >>> 6;
+        words[w] |= 1L << cell;
+        if (w < dirtyFrom)
+            dirtyFrom = w;
+        if (w > dirtyTo)
+            dirtyTo = w;
+    }
+
+    public void clear(int cell) {
+        words[cell >>> 6] &= ~(1L << cell);
+    }
+
+    public void set(int cell, boolean value) {
+        if (value)
+            set(cell);
+        else
+            clear(cell);
+    }
+
+    /* The 64 bits of cells from .. from+63, bit i is cell from+i. Cells
+       outside of the set read as 0 */
+    public long get64(int from) {
+        if (from < 0)
+            return from <= -64 ? 0 : get64(0) << -from;
+        int w = from >>> 6;
+        int shift = from & 63;
+        if (w >= words.length)
+            return 0;
+        long bits = words[w] >>> shift;
+        if (shift != 0 && w + 1 < words.length)
+            bits |= words[w + 1] << (64 - shift);
+        return bits;
+    }
+
+    /* Index of the first set cell at or after from, or -1 */
+    public int nextSetBit(int from) {
+        if (from >= size)
+            return -1;
+        int w = from >>> 6;
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+                return cell < size ? cell : -1;
+            }
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /* Sets the cells from .. to-1, a word at a time */
+    void set(int from, int to) {
+        if (from >= to)
+            return;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+        } else {
+            words[first] |= firstMask;
+            Arrays.fill(words, first + 1, last, -1L);
+            words[last] |= lastMask;
+        }
+        dirtyFrom = Math.min(dirtyFrom, first);
+        dirtyTo = Math.max(dirtyTo, last);
+    }
+
+    /* Overwrites count words from wordIndex with the next words of source,
+       to load saved bits in bulk. Bits past the last cell are dropped */
+    void readWords(LongBuffer source, int wordIndex, int count) {
+        source.get(words, wordIndex, count);
+        if (wordIndex + count == words.length && (size & 63) != 0)
+            words[words.length - 1] &= -1L >>> -size;
+        dirtyFrom = Math.min(dirtyFrom, wordIndex);
+        dirtyTo = Math.max(dirtyTo, wordIndex + count - 1);
+    }
+
+    /* Makes this set a copy of other, which must have the same size */
+    public void copyFrom(CellBitSet other) {
+        if (other.size != size)
+            throw new IllegalArgumentException("Bit sets differ in size");
+        System.arraycopy(other.words, 0, words, 0, words.length);
+        dirtyFrom = 0;
+        dirtyTo = words.length - 1;
+    }
+
+    /* Clears every bit, only touching the words set since the last clear */
+    public void clear() {
+        if (dirtyTo >= dirtyFrom)
+            Arrays.fill(words, dirtyFrom, dirtyTo + 1, 0L);
+        dirtyFrom = words.length;
+        dirtyTo = -1;
+    }
+}
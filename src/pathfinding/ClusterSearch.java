@@ -0,0 +1,126 @@
+/*
+    ClusterSearch -> Dijkstra search that never leaves a rectangle of the map,
+    used by HierarchicalSearch to measure distances inside one cluster and to
+    refine abstract path segments. Cells are indexed locally within the
+    rectangle, so the buffers only need to be as large as one cluster.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+final class ClusterSearch {
+
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private final GridMap map;
+    private final int[] distance; // Local cell -> cost from the source
+    private final int[] parent;   // Local cell -> preceding local cell
+    private final int[] goalMark; // Local cell -> run number if it is a goal of that run
+    private int runNumber;
+    private final IndexedHeap openSites;
+
+    private int left, top, width, height; // Rectangle of the last run
+
+    ClusterSearch(GridMap gridMap, int maxCells) {
+        map = gridMap;
+        distance = new int[maxCells];
+        parent = new int[maxCells];
+        goalMark = new int[maxCells];
+        openSites = new IndexedHeap();
+        openSites.ensureCapacity(maxCells);
+    }
+
+    /* Computes the distance from source (a map cell inside the rectangle) to
+       every cell of the rectangle */
+    void run(int rectLeft, int rectTop, int rectWidth, int rectHeight, int source) {
+        run(rectLeft, rectTop, rectWidth, rectHeight, source, null, 0, 0);
+    }
+
+    /* Same, but stops as soon as the distances to goals[from .. to-1] are final.
+       Only those distances are valid afterwards */
+    void run(int rectLeft, int rectTop, int rectWidth, int rectHeight, int source,
+             int[] goals, int from, int to) {
+        left = rectLeft;
+        top = rectTop;
+        width = rectWidth;
+        height = rectHeight;
+        int cells = width * height;
+        Arrays.fill(distance, 0, cells, INFINITY);
+        openSites.clear();
+
+        int remaining = -1; // no early exit
+        if (goals != null) {
+            runNumber++;
+            remaining = 0;
+            for (int g = from; g < to; g++) {
+                int goal = local(goals[g] % map.getWidth(), goals[g] / map.getWidth());
+                if (goalMark[goal] != runNumber) {
+                    goalMark[goal] = runNumber;
+                    remaining++;
+                }
+            }
+            if (remaining == 0)
+                return;
+        }
+
+        int mapWidth = map.getWidth();
+        int sourceLocal = local(source % mapWidth, source / mapWidth);
+        distance[sourceLocal] = 0;
+        parent[sourceLocal] = -1;
+        openSites.insert(sourceLocal, 0, 0);
+
+        while (!openSites.isEmpty()) {
+            int current = openSites.pop();
+            if (remaining > 0 && goalMark[current] == runNumber && --remaining == 0)
+                return;
+            int cx = current % width;
+            int cy = current / width;
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    int nx = cx + i;
+                    int ny = cy + j;
+                    if ((i == 0 && j == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height ||
+                        map.isBlocked(left + nx, top + ny))
+                        continue;
+                    int neighbor = ny * width + nx;
+                    int d = distance[current] +
+                            (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST);
+                    if (d < distance[neighbor]) {
+                        distance[neighbor] = d;
+                        parent[neighbor] = current;
+                        if (openSites.contains(neighbor))
+                            openSites.decreaseKey(neighbor, d, 0);
+                        else
+                            openSites.insert(neighbor, d, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Distance from the last source to a map cell of the rectangle */
+    int distanceTo(int cell) {
+        int mapWidth = map.getWidth();
+        return distance[local(cell % mapWidth, cell / mapWidth)];
+    }
+
+    /* Writes the map cells from the last source to cell (excluding the source)
+       into dest at offset, returns the new end offset. dest must be large enough */
+    int appendPath(int cell, int[] dest, int offset) {
+        int mapWidth = map.getWidth();
+        int steps = 0;
+        for (int c = local(cell % mapWidth, cell / mapWidth); parent[c] != -1; c = parent[c])
+            steps++;
+        int c = local(cell % mapWidth, cell / mapWidth);
+        for (int i = offset + steps - 1; i >= offset; i--) {
+            dest[i] = (top + c / width) * mapWidth + left + c % width;
+            c = parent[c];
+        }
+        return offset + steps;
+    }
+
+    private int local(int x, int y) {
+        return (y - top) * width + (x - left);
+    }
+}
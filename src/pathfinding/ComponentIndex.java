@@ -0,0 +1,369 @@
+/*
+    ComponentIndex -> Labels the connected regions of free cells of a
+    GridMap (8-connected, like the search moves), so a query whose target
+    lies in another region than its start can be rejected in O(1) instead
+    of flooding the whole region of the start.
+
+    The labeling is built with a single union-find pass over the grid. After
+    that it is kept up to date edit by edit through cellChanged:
+
+      - a cell that becomes free joins the labels of its free neighbors,
+        which is a union in a small union-find over the labels themselves,
+        so no cell is relabeled;
+      - a cell that becomes blocked can only split its region if its free
+        neighbors are not connected to each other around it. If they are
+        not, a flood fill runs from each separate group in lockstep until
+        they meet (no split) or all but one have run out; the cells of the
+        groups that ran out get fresh labels. The work is proportional to
+        the smaller side of the split.
+
+    An index is for one map, edited through cellChanged after every change,
+    isFor tells whether it is still in step with the map.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class ComponentIndex {
+
+    public static final int NONE = -1; // Label of blocked cells
+
+    /* Ring around a cell, in order, so consecutive entries are neighbors */
+    private static final int[] RING_DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] RING_DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+    private final GridMap map;
+    private int mapVersion;
+    private final int[] label;    // Label of each free cell, NONE if blocked
+    private int[] labelParent;    // Union-find over labels, a root is the region's id
+    private int labelCount;       // Labels handed out, including merged ones
+    private int componentCount;   // Regions of free cells
+
+    /* Lockstep flood fill state, reused between splits. The per-cell arrays
+       are only allocated by the first split */
+    private int[] floodStamp;
+    private byte[] floodOwner;
+    private int floodGeneration;
+    private final int[][] queues;
+    private final int[] queueHead;
+    private final int[] queueTail;
+
+    public ComponentIndex(GridMap gridMap) {
+        this(gridMap, new int[gridMap.getCellCount()]);
+        rebuild();
+    }
+
+    /* An index read back by MapSnapshot: regions holds the region of every
+       cell, numbered 0 .. regionCount-1, or NONE where it is blocked */
+    ComponentIndex(GridMap gridMap, int[] regions, int regionCount) {
+        this(gridMap, regions);
+        labelParent = new int[Math.max(64, regionCount * 2)];
+        for (int i = 0; i < regionCount; i++)
+            labelParent[i] = i;
+        labelCount = regionCount;
+        componentCount = regionCount;
+        mapVersion = map.getVersion();
+    }
+
+    private ComponentIndex(GridMap gridMap, int[] labels) {
+        if (labels.length != gridMap.getCellCount())
+            throw new IllegalArgumentException("One label per cell expected");
+        map = gridMap;
+        label = labels;
+        labelParent = new int[64];
+        queues = new int[4][64];
+        queueHead = new int[4];
+        queueTail = new int[4];
+    }
+
+    /* Labels every region from scratch: one pass that unions each free cell
+       with its already visited free neighbors (west, north west, north,
+       north east), then a pass that numbers the roots */
+    public void rebuild() {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int[] parent = label; // used as the cell union-find during the build
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                if (map.isBlocked(cell)) {
+                    parent[cell] = NONE;
+                    continue;
+                }
+                parent[cell] = cell;
+                if (x > 0 && !map.isBlocked(cell - 1))
+                    union(parent, cell, cell - 1);
+                if (y > 0) {
+                    int up = cell - width;
+                    if (x > 0 && !map.isBlocked(up - 1))
+                        union(parent, cell, up - 1);
+                    if (!map.isBlocked(up))
+                        union(parent, cell, up);
+                    if (x + 1 < width && !map.isBlocked(up + 1))
+                        union(parent, cell, up + 1);
+                }
+            }
+        }
+
+        // Every cell points at a lower cell or is a root, so by the time a
+        // forward pass reaches a cell its parent already holds the final label
+        labelCount = 0;
+        for (int cell = 0; cell < label.length; cell++) {
+            if (parent[cell] != NONE)
+                label[cell] = parent[cell] == cell ? labelCount++ : label[parent[cell]];
+        }
+        labelParent = new int[Math.max(64, labelCount * 2)];
+        for (int i = 0; i < labelCount; i++)
+            labelParent[i] = i;
+        componentCount = labelCount;
+        mapVersion = map.getVersion();
+    }
+
+    /* True while every change to the map has been passed to cellChanged */
+    public boolean isFor(GridMap gridMap) {
+        return gridMap == map && gridMap.getVersion() == mapVersion;
+    }
+
+    /* Makes this index a copy of other, which must be for a map of the same
+       size. Used with GridMap.copyFrom, so the copy of a map keeps an index
+       without rebuilding it */
+    public void copyFrom(ComponentIndex other) {
+        if (other.label.length != label.length)
+            throw new IllegalArgumentException("Indices differ in size");
+        System.arraycopy(other.label, 0, label, 0, label.length);
+        if (labelParent.length < other.labelCount)
+            labelParent = new int[other.labelParent.length];
+        System.arraycopy(other.labelParent, 0, labelParent, 0, other.labelCount);
+        labelCount = other.labelCount;
+        componentCount = other.componentCount;
+        mapVersion = map.getVersion();
+    }
+
+    // Accessors
+    public int getComponentCount() {
+        return componentCount;
+    }
+    /* Id of the region of a cell, NONE if it is blocked. Ids are only
+       meaningful until the next edit */
+    public int componentOf(int cell) {
+        int l = label[cell];
+        return l == NONE ? NONE : findLabel(l);
+    }
+    /* True if a path from a to b exists, both must be free */
+    public boolean connected(int a, int b) {
+        int la = label[a];
+        int lb = label[b];
+        return la != NONE && lb != NONE && findLabel(la) == findLabel(lb);
+    }
+
+    /* Updates the labels after the blocked state (or weight) of cell changed */
+    public void cellChanged(int cell) {
+        boolean wasFree = label[cell] != NONE;
+        boolean free = !map.isBlocked(cell);
+        if (free && !wasFree)
+            cellFreed(cell);
+        else if (!free && wasFree)
+            cellBlocked(cell);
+        mapVersion = map.getVersion();
+    }
+
+    /* Joins the regions of the free neighbors, or starts a new region */
+    private void cellFreed(int cell) {
+        int width = map.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        int joined = NONE;
+        for (int i = 0; i < 8; i++) {
+            int nx = x + RING_DX[i];
+            int ny = y + RING_DY[i];
+            if (map.isBlocked(nx, ny))
+                continue;
+            int neighborLabel = findLabel(label[ny * width + nx]);
+            if (joined == NONE) {
+                joined = neighborLabel;
+            } else if (neighborLabel != joined) {
+                labelParent[neighborLabel] = joined;
+                componentCount--;
+            }
+        }
+        if (joined == NONE) {
+            joined = newLabel();
+            componentCount++;
+        }
+        label[cell] = joined;
+    }
+
+    /* Splits the region of cell if blocking it disconnected its neighbors */
+    private void cellBlocked(int cell) {
+        int width = map.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        label[cell] = NONE;
+
+        // Group the free ring cells that are neighbors of each other
+        int[] group = new int[8];
+        int groups = 0;
+        int free = 0;
+        for (int i = 0; i < 8; i++) {
+            group[i] = -1;
+            if (!map.isBlocked(x + RING_DX[i], y + RING_DY[i]))
+                free++;
+        }
+        if (free == 0) {
+            componentCount--; // it was a region of its own
+            return;
+        }
+        for (int i = 0; i < 8; i++) {
+            if (group[i] != -1 || map.isBlocked(x + RING_DX[i], y + RING_DY[i]))
+                continue;
+            group[i] = groups;
+            markRing(x, y, i, group, groups);
+            groups++;
+        }
+        if (groups > 1)
+            splitGroups(x, y, group, groups);
+    }
+
+    /* Spreads group g from ring position i to every free ring cell next to it */
+    private void markRing(int x, int y, int i, int[] group, int g) {
+        for (int j = 0; j < 8; j++) {
+            if (group[j] != -1 || map.isBlocked(x + RING_DX[j], y + RING_DY[j]))
+                continue;
+            if (Math.abs(RING_DX[i] - RING_DX[j]) <= 1 && Math.abs(RING_DY[i] - RING_DY[j]) <= 1) {
+                group[j] = g;
+                markRing(x, y, j, group, g);
+            }
+        }
+    }
+
+    /* Floods from each ring group in lockstep, one cell per region per
+       round. Groups whose floods meet are in one region and go on as one;
+       a region whose floods run out of cells before meeting the others is
+       cut off and gets a new label. The last region keeps the old one */
+    private void splitGroups(int x, int y, int[] group, int groups) {
+        int width = map.getWidth();
+        if (floodStamp == null) {
+            floodStamp = new int[map.getCellCount()];
+            floodOwner = new byte[map.getCellCount()];
+        }
+        if (++floodGeneration == 0) {
+            Arrays.fill(floodStamp, 0);
+            floodGeneration = 1;
+        }
+        int[] merged = new int[groups]; // union-find over the groups, as floods meet
+        for (int g = 0; g < groups; g++) {
+            merged[g] = g;
+            queueHead[g] = 0;
+            queueTail[g] = 0;
+        }
+        for (int i = 0; i < 8; i++) {
+            int g = group[i];
+            if (g >= 0 && queueTail[g] == 0) // one seed per group is enough
+                visit((y + RING_DY[i]) * width + x + RING_DX[i], g);
+        }
+
+        boolean[] cutOff = new boolean[groups];
+        int live = groups; // regions that are still flooding
+        while (live > 1) {
+            for (int region = 0; region < groups && live > 1; region++) {
+                if (cutOff[region] || merged[region] != region)
+                    continue;
+                int g = nextQueue(merged, region, groups);
+                if (g == -1) {
+                    cutOff[region] = true;
+                    live--;
+                    relabel(merged, region, groups);
+                    continue;
+                }
+
+                int current = queues[g][queueHead[g]++];
+                int cx = current % width;
+                int cy = current / width;
+                for (int i = 0; i < 8; i++) {
+                    int nx = cx + RING_DX[i];
+                    int ny = cy + RING_DY[i];
+                    if (map.isBlocked(nx, ny))
+                        continue;
+                    int neighbor = ny * width + nx;
+                    if (floodStamp[neighbor] != floodGeneration) {
+                        visit(neighbor, g);
+                        continue;
+                    }
+                    int mine = rootGroup(merged, g);
+                    int other = rootGroup(merged, floodOwner[neighbor]);
+                    if (other != mine) { // the floods met, from now on they are one region
+                        merged[mine] = other;
+                        live--;
+                    }
+                }
+            }
+        }
+    }
+
+    /* A group of region that still has cells to expand, or -1 */
+    private int nextQueue(int[] merged, int region, int groups) {
+        for (int g = 0; g < groups; g++)
+            if (rootGroup(merged, g) == region && queueHead[g] < queueTail[g])
+                return g;
+        return -1;
+    }
+
+    /* Gives every cell flooded by the groups of region a new label */
+    private void relabel(int[] merged, int region, int groups) {
+        int fresh = newLabel();
+        componentCount++;
+        for (int g = 0; g < groups; g++)
+            if (rootGroup(merged, g) == region)
+                for (int i = 0; i < queueTail[g]; i++)
+                    label[queues[g][i]] = fresh;
+    }
+
+    private void visit(int cell, int g) {
+        floodStamp[cell] = floodGeneration;
+        floodOwner[cell] = (byte) g;
+        if (queueTail[g] == queues[g].length)
+            queues[g] = Arrays.copyOf(queues[g], queueTail[g] * 2);
+        queues[g][queueTail[g]++] = cell;
+    }
+
+    private static int rootGroup(int[] merged, int g) {
+        while (merged[g] != g)
+            g = merged[g];
+        return g;
+    }
+
+    private int newLabel() {
+        if (labelCount == labelParent.length)
+            labelParent = Arrays.copyOf(labelParent, labelCount * 2);
+        labelParent[labelCount] = labelCount;
+        return labelCount++;
+    }
+
+    private int findLabel(int l) {
+        while (labelParent[l] != l) {
+            labelParent[l] = labelParent[labelParent[l]]; // path halving
+            l = labelParent[l];
+        }
+        return l;
+    }
+
+    private static int find(int[] parent, int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA == rootB)
+            return;
+        if (rootA < rootB) // the lower cell stays root, which the numbering pass needs
+            parent[rootB] = rootA;
+        else
+            parent[rootA] = rootB;
+    }
+}
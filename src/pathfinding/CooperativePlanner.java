@@ -0,0 +1,308 @@
+/*
+    CooperativePlanner -> Windowed Hierarchical Cooperative A* (WHCA*) for a
+    team of agents on one GridMap. Agents plan one after the other, each with
+    A* in (cell, tick) space against a ReservationTable holding the moves of
+    the agents that planned before it, so no two agents are on the same cell
+    at the same tick or swap cells between two ticks. At every tick an agent
+    moves to a neighbor or waits where it is. An agent that has not planned
+    yet holds its cell for the whole window, so when its search finds no
+    way through, waiting in place is still free of collisions.
+
+    Each search only looks window ticks ahead; past that the remaining cost
+    is the exact distance to the agent's target, read from a FlowField per
+    target (the "hierarchical" part), so a window can end anywhere and
+    still point the right way. The agents then follow the first half of
+    their windows, the table is cleared and every agent plans its next
+    window from where it stands, with the order of the agents rotated so
+    none of them always yields.
+
+    Moving costs the step cost times the weight of the entered cell, as in
+    SearchEngine. Waiting costs a straight step, except on the target, so an
+    agent that arrived stays there unless it has to make room.
+
+    Planning can be stopped through a SearchHandle, which is checked before
+    each agent's search and while a FlowField is computed; a window that
+    was stopped is dropped, so the routes end at the last window that was
+    planned in full.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class CooperativePlanner {
+
+    public static final int DEFAULT_WINDOW = 16;
+
+    private final GridMap map;
+    private final int window;   // Ticks each search looks ahead
+    private final int stride;   // Ticks followed before replanning
+    private final ReservationTable reservations;
+    private final Map<Integer, FlowField> fields; // Distances to each target
+
+    /* Agents */
+    private int agentCount;
+    private int[] targets;
+    private int[] positions;
+    private int[][] routes;     // Cell of each agent at every tick so far
+    private int tick;
+    private int windowCount;
+
+    /* Space-time search state, one node per (cell, tick of the window) */
+    private final LongIntMap nodes;
+    private final IndexedHeap open;
+    private int[] nodeCell;
+    private int[] nodeTime;
+    private int[] nodeG;
+    private int[] nodeParent;
+    private boolean[] nodeClosed;
+    private int nodeCount;
+    private int[] plan;         // Cells of the window just planned, ticks 0 .. window
+
+    /* Statistics */
+    private int searchCount;
+    private int failedCount;    // Searches that found no way through the window
+    private long expandedCount;
+
+    public CooperativePlanner(GridMap gridMap) {
+        this(gridMap, DEFAULT_WINDOW);
+    }
+
+    public CooperativePlanner(GridMap gridMap, int windowTicks) {
+        if (windowTicks < 2)
+            throw new IllegalArgumentException("Window must be at least 2 ticks");
+        map = gridMap;
+        window = windowTicks;
+        stride = windowTicks / 2;
+        reservations = new ReservationTable();
+        fields = new HashMap<>();
+        targets = new int[8];
+        positions = new int[8];
+        routes = new int[8][];
+        nodes = new LongIntMap(1024);
+        open = new IndexedHeap();
+        nodeCell = new int[1024];
+        nodeTime = new int[1024];
+        nodeG = new int[1024];
+        nodeParent = new int[1024];
+        nodeClosed = new boolean[1024];
+        open.ensureCapacity(nodeCell.length);
+        plan = new int[window + 1];
+    }
+
+    /* Adds an agent standing on start, returns its number */
+    public int addAgent(int start, int target) {
+        if (map.isBlocked(start) || map.isBlocked(target))
+            throw new IllegalArgumentException("Agents must start and end on free cells");
+        if (agentCount == targets.length) {
+            targets = Arrays.copyOf(targets, agentCount * 2);
+            positions = Arrays.copyOf(positions, agentCount * 2);
+            routes = Arrays.copyOf(routes, agentCount * 2);
+        }
+        targets[agentCount] = target;
+        positions[agentCount] = start;
+        routes[agentCount] = new int[] {start};
+        return agentCount++;
+    }
+
+    /* Plans and follows windows until every agent stands on its target or
+       maxTicks have passed. Returns true if all of them arrived */
+    public boolean plan(int maxTicks) {
+        return plan(maxTicks, null);
+    }
+
+    /* The same, but gives up once query is cancelled or its deadline passes.
+       The handle only serves to stop the planning, it is not completed */
+    public boolean plan(int maxTicks, SearchHandle query) {
+        while (!allArrived() && tick < maxTicks) {
+            if (!planWindow(Math.min(stride, maxTicks - tick), query))
+                return false;
+        }
+        return allArrived();
+    }
+
+    /* Plans one window for every agent and follows the first steps of it */
+    public void planWindow(int steps) {
+        planWindow(steps, null);
+    }
+
+    /* Returns false, leaving the agents where they are, if query was stopped */
+    private boolean planWindow(int steps, SearchHandle query) {
+        // Until it has planned, every agent holds its cell for the whole
+        // window, so the wait it falls back on never meets an earlier plan
+        reservations.clear();
+        for (int agent = 0; agent < agentCount; agent++)
+            for (int t = 0; t <= window; t++)
+                reservations.reserve(positions[agent], tick + t, agent);
+
+        int[][] windows = new int[agentCount][];
+        for (int i = 0; i < agentCount; i++) {
+            if (query != null && query.stopRequested(query.hasDeadline()))
+                return false;
+            int agent = (i + windowCount) % agentCount;
+            if (fieldOf(targets[agent], query) == null)
+                return false;
+            searchWindow(agent);
+            for (int t = 0; t <= window; t++)
+                if (plan[t] != positions[agent])
+                    reservations.release(positions[agent], tick + t, agent);
+            for (int t = 0; t <= window; t++)
+                reservations.reserve(plan[t], tick + t, agent);
+            windows[agent] = plan.clone();
+        }
+
+        for (int agent = 0; agent < agentCount; agent++) {
+            int length = routes[agent].length;
+            routes[agent] = Arrays.copyOf(routes[agent], length + steps);
+            System.arraycopy(windows[agent], 1, routes[agent], length, steps);
+            positions[agent] = windows[agent][steps];
+        }
+        tick += steps;
+        windowCount++;
+        return true;
+    }
+
+    // Accessors
+    public int getAgentCount() {
+        return agentCount;
+    }
+    public int getWindow() {
+        return window;
+    }
+    /* Ticks planned and followed so far, the makespan once all arrived */
+    public int getTick() {
+        return tick;
+    }
+    public int getPosition(int agent) {
+        return positions[agent];
+    }
+    public int getTarget(int agent) {
+        return targets[agent];
+    }
+    public boolean hasArrived(int agent) {
+        return positions[agent] == targets[agent];
+    }
+    /* The cell of the agent at every tick from 0 to getTick() */
+    public int[] getRoute(int agent) {
+        return routes[agent];
+    }
+    public int getSearchCount() {
+        return searchCount;
+    }
+    public int getFailedCount() {
+        return failedCount;
+    }
+    public long getExpandedCount() {
+        return expandedCount;
+    }
+
+    private boolean allArrived() {
+        for (int agent = 0; agent < agentCount; agent++)
+            if (positions[agent] != targets[agent])
+                return false;
+        return true;
+    }
+
+    /* The field of target, computed first if needed; null if query stopped
+       its computation */
+    private FlowField fieldOf(int target, SearchHandle query) {
+        FlowField field = fields.get(target);
+        if (field == null || !field.isFor(map)) {
+            field = new FlowField(map, target, 1, query);
+            if (!field.isFor(map))
+                return null;
+            fields.put(target, field);
+        }
+        return field;
+    }
+
+    /* Space-time A* for agent from its position over the next window ticks,
+       leaves the cells of the best window in plan. If no way through the
+       reservations exists the agent waits where it is */
+    private void searchWindow(int agent) {
+        searchCount++;
+        FlowField field = fieldOf(targets[agent], null);
+        int position = positions[agent];
+        int width = map.getWidth();
+        nodes.clear();
+        open.clear();
+        nodeCount = 0;
+
+        int first = node(position, 0, 0, -1);
+        if (field.getDistance(position) != FlowField.UNREACHABLE)
+            open.insert(first, field.getDistance(position), field.getDistance(position));
+        int last = -1;
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            int cell = nodeCell[current];
+            int t = nodeTime[current];
+            if (t == window) {
+                last = current;
+                break;
+            }
+            nodeClosed[current] = true;
+            expandedCount++;
+
+            int x = cell % width;
+            int y = cell / width;
+            for (int d = -1; d < 8; d++) { // -1 is waiting
+                int next = cell;
+                int cost = cell == targets[agent] ? 0 : SearchEngine.STRAIGHT_COST;
+                if (d >= 0) {
+                    int nx = x + JumpTable.DX[d];
+                    int ny = y + JumpTable.DY[d];
+                    if (map.isBlocked(nx, ny))
+                        continue;
+                    next = ny * width + nx;
+                    cost = (JumpTable.DX[d] != 0 && JumpTable.DY[d] != 0 ? SearchEngine.DIAGONAL_COST
+                                                                        : SearchEngine.STRAIGHT_COST) * map.getWeight(next);
+                }
+                int h = field.getDistance(next);
+                if (h == FlowField.UNREACHABLE || !reservations.canMove(cell, next, tick + t, agent))
+                    continue;
+                int g = nodeG[current] + cost;
+                long key = (long) (t + 1) << 32 | next;
+                int successor = nodes.get(key, -1);
+                if (successor == -1) {
+                    successor = node(next, t + 1, g, current);
+                    open.insert(successor, g + h, h);
+                } else if (!nodeClosed[successor] && g < nodeG[successor]) {
+                    nodeG[successor] = g;
+                    nodeParent[successor] = current;
+                    open.decreaseKey(successor, g + h, h);
+                }
+            }
+        }
+
+        if (last == -1) {
+            failedCount++;
+            Arrays.fill(plan, position);
+            return;
+        }
+        for (int n = last; n != -1; n = nodeParent[n])
+            plan[nodeTime[n]] = nodeCell[n];
+    }
+
+    /* Creates the node of cell at tick t of the window */
+    private int node(int cell, int t, int g, int parent) {
+        if (nodeCount == nodeCell.length) {
+            int capacity = nodeCount * 2;
+            nodeCell = Arrays.copyOf(nodeCell, capacity);
+            nodeTime = Arrays.copyOf(nodeTime, capacity);
+            nodeG = Arrays.copyOf(nodeG, capacity);
+            nodeParent = Arrays.copyOf(nodeParent, capacity);
+            nodeClosed = Arrays.copyOf(nodeClosed, capacity);
+            open.ensureCapacity(capacity);
+        }
+        int n = nodeCount++;
+        nodeCell[n] = cell;
+        nodeTime[n] = t;
+        nodeG[n] = g;
+        nodeParent[n] = parent;
+        nodeClosed[n] = false;
+        nodes.put((long) t << 32 | cell, n);
+        return n;
+    }
+}
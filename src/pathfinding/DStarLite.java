@@ -0,0 +1,271 @@
+/*
+    DStarLite -> Incremental shortest path search (Koenig & Likhachev's
+    D* Lite) that keeps its state between queries. It searches backwards from
+    the goal, so when obstacles change or the start moves, only the cells whose
+    distance to the goal is affected are expanded again instead of the whole
+    search being redone.
+
+    Each cell has g (its current distance to the goal) and rhs (a one step
+    lookahead of it). Cells where the two disagree are "inconsistent" and wait
+    in the open list, keyed by [min(g, rhs) + h + km, min(g, rhs)].
+
+    Moving the goal invalidates every distance, so moveGoal starts over.
+    The heuristic is the octile distance, which D* Lite needs to be consistent.
+    Steps cost the same as in SearchEngine, terrain weights included, so on
+    a weighted map the live path is as cheap as a fresh A* search's.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class DStarLite {
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private final GridMap map;
+    private final int[] g;          // Distance to the goal after the last expansion
+    private final int[] rhs;        // One step lookahead distance to the goal
+    private final IndexedHeap open; // Inconsistent cells, ordered by (k1, k2)
+
+    private int start;
+    private int goal;
+    private int lastStart;          // Start at the time km was last updated
+    private int km;                 // Key modifier, accumulates start moves
+
+    private int[] path;
+    private int pathLength;
+    private int expandedCount;      // Expansions of the last computePath call
+
+    public DStarLite(GridMap gridMap, int startCell, int goalCell) {
+        map = gridMap;
+        g = new int[map.getCellCount()];
+        rhs = new int[map.getCellCount()];
+        open = new IndexedHeap();
+        open.ensureCapacity(map.getCellCount());
+        path = new int[64];
+        start = startCell;
+        goal = goalCell;
+        initialize();
+    }
+
+    /* Forgets all previous search effort, used when the goal moves */
+    private void initialize() {
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        open.clear();
+        km = 0;
+        lastStart = start;
+        rhs[goal] = 0;
+        open.insert(goal, octile(start, goal), 0);
+    }
+
+    /* Repairs the distances after the last changes and extracts the path from
+       start to goal. Returns false if the goal cannot be reached */
+    public boolean computePath() {
+        expandedCount = 0;
+        int width = map.getWidth();
+
+        while (!open.isEmpty() &&
+               (keyLess(open.getFCost(open.peek()), open.getHCost(open.peek()), key1(start), key2(start))
+                || rhs[start] > g[start])) {
+            int u = open.peek();
+            int oldK1 = open.getFCost(u);
+            int oldK2 = open.getHCost(u);
+            int newK1 = key1(u);
+            int newK2 = key2(u);
+
+            if (keyLess(oldK1, oldK2, newK1, newK2)) {
+                open.changeKey(u, newK1, newK2);
+            } else if (g[u] > rhs[u]) {
+                expandedCount++;
+                g[u] = rhs[u];
+                open.pop();
+                int ux = u % width;
+                int uy = u / width;
+                for (int i = -1; i <= 1; i++) {
+                    for (int j = -1; j <= 1; j++) {
+                        int s = neighbor(ux + i, uy + j, i, j);
+                        if (s == -1 || s == goal)
+                            continue;
+                        int viaU = add(g[u], cost(s, u, i, j));
+                        if (viaU < rhs[s]) {
+                            rhs[s] = viaU;
+                            updateVertex(s);
+                        }
+                    }
+                }
+            } else {
+                expandedCount++;
+                int oldG = g[u];
+                g[u] = INFINITY;
+                int ux = u % width;
+                int uy = u / width;
+                for (int i = -1; i <= 1; i++) {
+                    for (int j = -1; j <= 1; j++) {
+                        int s = (i == 0 && j == 0) ? u : neighbor(ux + i, uy + j, i, j);
+                        if (s == -1 || s == goal)
+                            continue;
+                        // Only cells that relied on u's old distance need a new rhs
+                        if (s == u || rhs[s] == add(oldG, cost(s, u, i, j)))
+                            rhs[s] = lookahead(s);
+                        updateVertex(s);
+                    }
+                }
+            }
+        }
+        return extractPath();
+    }
+
+    /* Moves the start, the search state stays valid thanks to km */
+    public void moveStart(int cell) {
+        km += octile(lastStart, cell);
+        lastStart = cell;
+        start = cell;
+    }
+
+    /* Moves the goal, which means starting from scratch */
+    public void moveGoal(int cell) {
+        goal = cell;
+        initialize();
+    }
+
+    /* Must be called after the blocked state or the weight of a cell
+       changes in the map. Every edge into or out of the cell changed cost,
+       so the cell and its neighbors get their lookahead recomputed */
+    public void cellChanged(int cell) {
+        int width = map.getWidth();
+        int cx = cell % width;
+        int cy = cell / width;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                int s = (i == 0 && j == 0) ? cell : neighbor(cx + i, cy + j, i, j);
+                if (s == -1 || s == goal)
+                    continue;
+                rhs[s] = lookahead(s);
+                updateVertex(s);
+            }
+        }
+    }
+
+    /* Starts over from the current start and goal, e.g. after clearing the map */
+    public void reset() {
+        initialize();
+    }
+
+    // Accessors for the results of the last computePath
+    public int[] getPath() { // Shared buffer, only the first getPathLength() cells are valid
+        return path;
+    }
+    public int getPathLength() {
+        return pathLength;
+    }
+    public int getPathCost() {
+        return rhs[start] >= INFINITY ? -1 : rhs[start];
+    }
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+
+    /* Follows the cheapest lookahead from the start down to the goal */
+    private boolean extractPath() {
+        pathLength = 0;
+        if (rhs[start] >= INFINITY) // the search may stop with only rhs of the start final
+            return false;
+
+        int width = map.getWidth();
+        int current = start;
+        path[pathLength++] = current;
+        while (current != goal && pathLength <= map.getCellCount()) {
+            int cx = current % width;
+            int cy = current / width;
+            int best = -1;
+            int bestCost = INFINITY;
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    int s = neighbor(cx + i, cy + j, i, j);
+                    if (s == -1)
+                        continue;
+                    int viaS = add(g[s], cost(current, s, i, j));
+                    if (viaS < bestCost) {
+                        bestCost = viaS;
+                        best = s;
+                    }
+                }
+            }
+            if (best == -1)
+                return false;
+            if (pathLength == path.length)
+                path = Arrays.copyOf(path, pathLength * 2);
+            path[pathLength++] = best;
+            current = best;
+        }
+        return current == goal;
+    }
+
+    /* Lowest cost to the goal through any neighbor of s */
+    private int lookahead(int s) {
+        int width = map.getWidth();
+        int sx = s % width;
+        int sy = s / width;
+        int best = INFINITY;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                int next = neighbor(sx + i, sy + j, i, j);
+                if (next != -1)
+                    best = Math.min(best, add(g[next], cost(s, next, i, j)));
+            }
+        }
+        return best;
+    }
+
+    /* Puts s in the open list if it is inconsistent, takes it out otherwise */
+    private void updateVertex(int s) {
+        boolean queued = open.contains(s);
+        if (g[s] != rhs[s]) {
+            if (queued)
+                open.changeKey(s, key1(s), key2(s));
+            else
+                open.insert(s, key1(s), key2(s));
+        } else if (queued) {
+            open.remove(s);
+        }
+    }
+
+    private int key1(int s) {
+        return add(Math.min(g[s], rhs[s]), octile(start, s) + km);
+    }
+    private int key2(int s) {
+        return Math.min(g[s], rhs[s]);
+    }
+    private static boolean keyLess(int a1, int a2, int b1, int b2) {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    /* Cell at x,y, or -1 for the cell itself (i = j = 0) or cells off the grid */
+    private int neighbor(int x, int y, int i, int j) {
+        if ((i == 0 && j == 0) || !map.inBounds(x, y))
+            return -1;
+        return map.indexOf(x, y);
+    }
+
+    /* Cost of the step from a into the adjacent cell b, the step times b's
+       weight, infinite if either is blocked */
+    private int cost(int a, int b, int i, int j) {
+        if (map.isBlocked(a) || map.isBlocked(b))
+            return INFINITY;
+        return (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST) * map.getWeight(b);
+    }
+
+    private static int add(int a, int b) {
+        return a >= INFINITY || b >= INFINITY ? INFINITY : a + b;
+    }
+
+    private int octile(int a, int b) {
+        int width = map.getWidth();
+        int dx = Math.abs(a % width - b % width);
+        int dy = Math.abs(a / width - b / width);
+        return SearchEngine.STRAIGHT_COST * Math.max(dx, dy)
+             + (SearchEngine.DIAGONAL_COST - SearchEngine.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+}
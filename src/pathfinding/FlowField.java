@@ -0,0 +1,521 @@
+/*
+    FlowField -> A Dijkstra map for many agents heading to one target. One
+    reverse search from the target stores, for every cell, its cost to the
+    target and the direction of its next step, so any number of agents can
+    follow the field with one array lookup per step instead of each running
+    its own search. Costs are the same as SearchEngine's, terrain weights
+    included, and following the directions gives an optimal path.
+
+    The search is a wavefront over buckets of width STRAIGHT_COST, the
+    cheapest possible step: a cell's cost is final once the wavefront reaches
+    its bucket, so all the cells of a bucket can be expanded at once. Large
+    buckets are split across threads, which lower the costs of their
+    neighbors with a compare-and-set, so the result does not depend on the
+    number of threads.
+
+    cellChanged repairs the field after an edit instead of recomputing it:
+    when a cell gets more expensive (blocked, or a higher weight) only the
+    cells whose path ran through it are reset and searched again from their
+    surroundings; when it gets cheaper the wavefront restarts from it and
+    only spreads as far as costs go down.
+
+    A full computation can be run under a SearchHandle, for a planner that
+    must give up when its query is cancelled; a field that was stopped is
+    left unusable, isFor tells.
+ */
+
+package pathfinding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public final class FlowField implements AutoCloseable {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    public static final int NO_DIRECTION = -1;
+
+    /* Buckets with at least this many cells are expanded in parallel */
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    private static final int BUCKET_WIDTH = SearchEngine.STRAIGHT_COST;
+    private static final byte BLOCKED = 0;
+    private static final VarHandle DISTANCE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final GridMap map;
+    private int mapVersion;
+    private boolean complete;      // False after a computation was stopped
+    private int target;
+    private final int[] distance;  // Cost from each cell to the target
+    private final byte[] direction; // JumpTable direction of the next step, NO_DIRECTION if none
+    private final byte[] known;    // State of each cell when the field was last updated, BLOCKED or its weight
+
+    private final ForkJoinPool pool; // null for a single thread
+    private final int threads;
+
+    /* Wavefront state, reused between updates */
+    private IntList[] buckets;
+    private final CellBitSet settled;
+    private final IntList changed; // Cells whose cost changed in the last update
+    private boolean tracking;      // Whether changed is filled, only for repairs
+    private SearchHandle stop;     // Checked once per bucket while set
+    private int expandedCount;
+
+    public FlowField(GridMap gridMap, int targetCell) {
+        this(gridMap, targetCell, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FlowField(GridMap gridMap, int targetCell, int threadCount) {
+        this(gridMap, targetCell, threadCount, null);
+    }
+
+    /* A field whose computation stops early, leaving it unusable, once query
+       (if not null) is cancelled or its deadline passes */
+    FlowField(GridMap gridMap, int targetCell, int threadCount, SearchHandle query) {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Thread count must be positive");
+        map = gridMap;
+        target = targetCell;
+        threads = threadCount;
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        distance = new int[map.getCellCount()];
+        direction = new byte[map.getCellCount()];
+        known = new byte[map.getCellCount()];
+        settled = new CellBitSet(map.getCellCount());
+        changed = new IntList();
+        buckets = new IntList[0];
+        stop = query;
+        try {
+            compute();
+        } finally {
+            stop = null;
+        }
+    }
+
+    /* Points the field at a new target, which needs a full recompute */
+    public void setTarget(int targetCell) {
+        target = targetCell;
+        compute();
+    }
+
+    /* Recomputes the whole field */
+    public void compute() {
+        Arrays.fill(distance, UNREACHABLE);
+        for (int cell = 0; cell < known.length; cell++)
+            known[cell] = map.isBlocked(cell) ? BLOCKED : (byte) map.getWeight(cell);
+        tracking = false;
+        expandedCount = 0;
+        complete = true;
+        if (!map.isBlocked(target)) {
+            distance[target] = 0;
+            wavefront(target);
+        }
+        if (!complete)
+            return;
+        deriveDirections();
+        mapVersion = map.getVersion();
+    }
+
+    /* True while every change to the map has been passed to cellChanged */
+    public boolean isFor(GridMap gridMap) {
+        return gridMap == map && complete && gridMap.getVersion() == mapVersion;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    // Accessors
+    public int getTarget() {
+        return target;
+    }
+    public int getDistance(int cell) {
+        return distance[cell];
+    }
+    public int getDirection(int cell) {
+        return direction[cell];
+    }
+    public int getStepX(int cell) {
+        return direction[cell] == NO_DIRECTION ? 0 : JumpTable.DX[direction[cell]];
+    }
+    public int getStepY(int cell) {
+        return direction[cell] == NO_DIRECTION ? 0 : JumpTable.DY[direction[cell]];
+    }
+    /* Cells expanded by the last compute or cellChanged */
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+
+    /* The cell an agent on cell moves to next, or -1 at the target or
+       where the target cannot be reached */
+    public int nextStep(int cell) {
+        int d = direction[cell];
+        if (d == NO_DIRECTION)
+            return -1;
+        return cell + JumpTable.DY[d] * map.getWidth() + JumpTable.DX[d];
+    }
+
+    /* Follows the field from start into path, returns the number of cells
+       (start and target included), or 0 if the target is unreachable */
+    public int path(int start, int[] path) {
+        if (distance[start] == UNREACHABLE)
+            return 0;
+        int length = 0;
+        for (int cell = start; cell != -1; cell = nextStep(cell))
+            path[length++] = cell;
+        return length;
+    }
+
+    /* Repairs the field after the blocked state or weight of cell changed */
+    public void cellChanged(int cell) {
+        int before = known[cell] & 0xFF;
+        int after = map.isBlocked(cell) ? BLOCKED : map.getWeight(cell);
+        known[cell] = (byte) after;
+        mapVersion = map.getVersion();
+        if (before == after)
+            return;
+        if (cell == target) {
+            compute();
+            return;
+        }
+
+        changed.clear();
+        tracking = true;
+        expandedCount = 0;
+        if (before != BLOCKED && (after == BLOCKED || after > before))
+            invalidate(cell, after == BLOCKED);
+        else
+            lower(cell);
+
+        // A cell's direction depends on the costs of its neighbors and the
+        // weights of the cells around it
+        redirect(cell);
+        for (int i = 0; i < changed.size(); i++)
+            redirect(changed.get(i));
+    }
+
+    /* The cell got more expensive: every cell whose path entered it loses
+       its cost, then those cells are searched again, seeded from their
+       neighbors outside of the reset region */
+    private void invalidate(int cell, boolean blocked) {
+        int width = map.getWidth();
+        IntList reset = new IntList();
+        if (blocked) {
+            distance[cell] = UNREACHABLE;
+            changed.add(cell);
+        }
+        // The cells upstream of cell, by following the directions backwards
+        reset.add(cell);
+        for (int i = 0; i < reset.size(); i++) {
+            int current = reset.get(i);
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 8; d++) {
+                int nx = x + JumpTable.DX[d];
+                int ny = y + JumpTable.DY[d];
+                if (!map.inBounds(nx, ny))
+                    continue;
+                int neighbor = ny * width + nx;
+                if (nextStep(neighbor) == current && distance[neighbor] != UNREACHABLE) {
+                    distance[neighbor] = UNREACHABLE;
+                    changed.add(neighbor);
+                    reset.add(neighbor);
+                }
+            }
+        }
+
+        // Each reset cell starts from its best neighbor that kept its cost.
+        // Their costs can be far apart, so they join the wavefront in order
+        // of cost instead of all going into the buckets up front
+        long[] seeds = new long[reset.size()];
+        int seedCount = 0;
+        for (int i = 1; i < reset.size(); i++) {
+            int current = reset.get(i);
+            int best = bestThroughNeighbors(current);
+            if (best == UNREACHABLE)
+                continue;
+            distance[current] = best;
+            seeds[seedCount++] = (long) best << 32 | current;
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        runBuckets(seeds, seedCount);
+    }
+
+    /* The cell got cheaper (freed, or a lower weight): spread the lower costs
+       outwards from it */
+    private void lower(int cell) {
+        if (distance[cell] == UNREACHABLE) {
+            int best = bestThroughNeighbors(cell);
+            if (best == UNREACHABLE)
+                return;
+            distance[cell] = best;
+            changed.add(cell);
+        }
+        wavefront(cell);
+    }
+
+    /* Dijkstra from seed, whose cost is set, over the bucket queue */
+    private void wavefront(int seed) {
+        runBuckets(new long[] {(long) distance[seed] << 32 | seed}, 1);
+    }
+
+    /* Expands the buckets in order until they are empty and every seed,
+       sorted by the cost in its high half, has joined. Cells can sit in a
+       bucket more than once or in a stale one; only the first entry that
+       matches their final cost is expanded */
+    private void runBuckets(long[] seeds, int seedCount) {
+        ensureBuckets();
+        settled.clear();
+        int next = 0;
+        int empty = buckets.length;
+        IntList frontier = new IntList();
+        for (int index = 0; ; index++) {
+            if (stop != null && stop.stopRequested(stop.hasDeadline())) {
+                complete = false;
+                for (IntList stale : buckets)
+                    stale.clear();
+                break;
+            }
+            if (empty >= buckets.length) {
+                // Nothing left in the buckets, skip ahead to the next seed
+                if (next == seedCount)
+                    break;
+                index = Math.max(index, (int) (seeds[next] >>> 32) / BUCKET_WIDTH);
+            }
+            for (; next < seedCount && (int) (seeds[next] >>> 32) / BUCKET_WIDTH <= index; next++) {
+                int cell = (int) seeds[next];
+                if (distance[cell] / BUCKET_WIDTH == index)
+                    bucket(distance[cell]).add(cell);
+            }
+            IntList bucket = buckets[index % buckets.length];
+            if (bucket.size() == 0) {
+                empty++;
+                continue;
+            }
+            empty = 0;
+            frontier.clear();
+            for (int i = 0; i < bucket.size(); i++) {
+                int cell = bucket.get(i);
+                if (distance[cell] / BUCKET_WIDTH == index && !settled.get(cell)) {
+                    settled.set(cell);
+                    frontier.add(cell);
+                }
+            }
+            bucket.clear();
+            expandedCount += frontier.size();
+            if (pool != null && frontier.size() >= PARALLEL_THRESHOLD)
+                expandParallel(frontier);
+            else
+                expand(frontier, 0, frontier.size(), null);
+        }
+    }
+
+    /* Splits a bucket into one slice per thread. Each thread collects the
+       cells it improved and they are filed into buckets afterwards */
+    private void expandParallel(final IntList frontier) {
+        List<Callable<IntList>> tasks = new ArrayList<>();
+        int slice = (frontier.size() + threads - 1) / threads;
+        for (int begin = 0; begin < frontier.size(); begin += slice) {
+            final int from = begin;
+            final int to = Math.min(frontier.size(), begin + slice);
+            tasks.add(new Callable<IntList>() {
+                public IntList call() {
+                    IntList improved = new IntList();
+                    expand(frontier, from, to, improved);
+                    return improved;
+                }
+            });
+        }
+        for (IntList improved : invoke(tasks)) {
+            for (int i = 0; i < improved.size(); i++) {
+                int cell = improved.get(i);
+                bucket(distance[cell]).add(cell);
+                if (tracking)
+                    changed.add(cell);
+            }
+        }
+    }
+
+    /* Runs the tasks on the pool and waits for all of their results */
+    private <T> List<T> invoke(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks))
+                results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing a flow field", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Computing a flow field failed", e.getCause());
+        }
+        return results;
+    }
+
+    /* Relaxes the neighbors of frontier[from, to). Moving from a neighbor
+       onto a frontier cell costs the step times the frontier cell's weight.
+       With improved null the cells are filed into buckets directly,
+       otherwise collected for the caller and the costs set atomically */
+    private void expand(IntList frontier, int from, int to, IntList improved) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for (int i = from; i < to; i++) {
+            int current = frontier.get(i);
+            int x = current % width;
+            int y = current / width;
+            int weight = map.getWeight(current);
+            int base = distance[current];
+            for (int d = 0; d < 8; d++) {
+                int nx = x + JumpTable.DX[d];
+                int ny = y + JumpTable.DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height)
+                    continue;
+                int neighbor = ny * width + nx;
+                if (map.isBlocked(neighbor))
+                    continue;
+                int cost = base + (JumpTable.DX[d] != 0 && JumpTable.DY[d] != 0 ? SearchEngine.DIAGONAL_COST
+                                                                              : SearchEngine.STRAIGHT_COST) * weight;
+                if (improved == null) {
+                    if (cost < distance[neighbor]) {
+                        distance[neighbor] = cost;
+                        bucket(cost).add(neighbor);
+                        if (tracking)
+                            changed.add(neighbor);
+                    }
+                } else if (lowerAtomically(neighbor, cost)) {
+                    improved.add(neighbor);
+                }
+            }
+        }
+    }
+
+    private boolean lowerAtomically(int cell, int cost) {
+        int current = (int) DISTANCE.getVolatile(distance, cell);
+        while (cost < current) {
+            if (DISTANCE.compareAndSet(distance, cell, current, cost))
+                return true;
+            current = (int) DISTANCE.getVolatile(distance, cell);
+        }
+        return false;
+    }
+
+    /* Lowest cost of reaching the target from cell through one of its neighbors */
+    private int bestThroughNeighbors(int cell) {
+        int d = bestDirection(cell);
+        if (d == NO_DIRECTION)
+            return UNREACHABLE;
+        int next = cell + JumpTable.DY[d] * map.getWidth() + JumpTable.DX[d];
+        return distance[next] + stepCost(d, next);
+    }
+
+    /* Sets the direction of every cell from the finished costs, in bands of
+       rows when there is a pool */
+    private void deriveDirections() {
+        if (pool == null || direction.length < PARALLEL_THRESHOLD) {
+            for (int cell = 0; cell < direction.length; cell++)
+                direction[cell] = (byte) bestDirection(cell);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int rows = (map.getHeight() + threads - 1) / threads;
+        for (int row = 0; row < map.getHeight(); row += rows) {
+            final int from = row * map.getWidth();
+            final int to = Math.min(map.getHeight(), row + rows) * map.getWidth();
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int cell = from; cell < to; cell++)
+                        direction[cell] = (byte) bestDirection(cell);
+                    return null;
+                }
+            });
+        }
+        invoke(tasks);
+    }
+
+    /* Recomputes the directions of cell and its neighbors */
+    private void redirect(int cell) {
+        int width = map.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        for (int dy = -1; dy <= 1; dy++)
+            for (int dx = -1; dx <= 1; dx++)
+                if (map.inBounds(x + dx, y + dy))
+                    direction[cell + dy * width + dx] = (byte) bestDirection(cell + dy * width + dx);
+    }
+
+    /* The direction of the neighbor with the cheapest way to the target */
+    private int bestDirection(int cell) {
+        if (cell == target || map.isBlocked(cell))
+            return NO_DIRECTION;
+        int width = map.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        int best = NO_DIRECTION;
+        long bestCost = UNREACHABLE;
+        for (int d = 0; d < 8; d++) {
+            int nx = x + JumpTable.DX[d];
+            int ny = y + JumpTable.DY[d];
+            if (map.isBlocked(nx, ny))
+                continue;
+            int neighbor = ny * width + nx;
+            if (distance[neighbor] == UNREACHABLE)
+                continue;
+            long cost = (long) distance[neighbor] + stepCost(d, neighbor);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    private int stepCost(int d, int entered) {
+        return (JumpTable.DX[d] != 0 && JumpTable.DY[d] != 0 ? SearchEngine.DIAGONAL_COST
+                                                             : SearchEngine.STRAIGHT_COST) * map.getWeight(entered);
+    }
+
+    /* Makes sure there are enough buckets for the most expensive step, so
+       the ones in use never wrap onto each other. Only called between runs,
+       while every bucket is empty */
+    private void ensureBuckets() {
+        int needed = SearchEngine.DIAGONAL_COST * map.getMaxWeight() / BUCKET_WIDTH + 2;
+        if (buckets.length >= needed)
+            return;
+        IntList[] grown = Arrays.copyOf(buckets, needed);
+        for (int i = buckets.length; i < needed; i++)
+            grown[i] = new IntList();
+        buckets = grown;
+    }
+
+    private IntList bucket(int cost) {
+        return buckets[cost / BUCKET_WIDTH % buckets.length];
+    }
+
+    /* A growable list of ints */
+    private static final class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+        int get(int i) {
+            return items[i];
+        }
+        int size() {
+            return size;
+        }
+        void clear() {
+            size = 0;
+        }
+    }
+}
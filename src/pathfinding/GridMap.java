@@ -0,0 +1,200 @@
+/*
+    GridMap -> The obstacle layer of a rectangular grid of cells, independent
+    of any GUI. A cell is addressed either by its x,y column/row or by a single
+    int index (y * width + x), which is what the search engine works with so
+    that all per-cell data can live in flat primitive arrays.
+
+    Obstacles are stored one bit per cell, so a 10000 x 10000 map takes
+    12.5 MB, and blockedBits reads 64 cells of a row in one operation.
+
+    Free cells can also carry a terrain weight from 1 to MAX_WEIGHT, one
+    unsigned byte per cell: entering a cell costs the step cost times its
+    weight. The byte layer is only allocated once a weight other than 1 is
+    set, and a count of cells per weight keeps getMaxWeight O(1).
+ */
+
+package pathfinding;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+public final class GridMap {
+
+    public static final int MAX_WEIGHT = 255;
+
+    private final int width;      // Number of columns
+    private final int height;     // Number of rows
+    private final CellBitSet blocked; // Set for cells that are obstacles
+    private byte[] weights;       // Unsigned terrain weight of each cell, null while all are 1
+    private final int[] weightCounts; // Number of cells of each weight, index 0 unused
+    private int maxWeight;        // Highest weight of any cell
+    private int version;          // Incremented on every edit, lets caches detect changes
+
+    public GridMap(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Grid dimensions must be positive");
+        if ((long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Grid has too many cells to index");
+        this.width = width;
+        this.height = height;
+        blocked = new CellBitSet(width * height);
+        weightCounts = new int[MAX_WEIGHT + 1];
+        weightCounts[1] = width * height;
+        maxWeight = 1;
+    }
+
+    // Accessors
+    public int getWidth() {
+        return width;
+    }
+    public int getHeight() {
+        return height;
+    }
+    public int getCellCount() {
+        return blocked.size();
+    }
+    public int getVersion() {
+        return version;
+    }
+    /* The obstacle bits themselves, for word at a time scans. Do not modify */
+    public CellBitSet getObstacles() {
+        return blocked;
+    }
+
+    /* Conversions between x,y coordinates and cell indices */
+    public int indexOf(int x, int y) {
+        return y * width + x;
+    }
+    public int xOf(int cell) {
+        return cell % width;
+    }
+    public int yOf(int cell) {
+        return cell / width;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked.get(cell);
+    }
+    /* Cells outside of the grid are treated as obstacles */
+    public boolean isBlocked(int x, int y) {
+        return !inBounds(x, y) || blocked.get(indexOf(x, y));
+    }
+
+    /* Blocked state of the 64 cells x .. x+63 of row y, bit i is cell x+i.
+       Like isBlocked, cells outside of the grid read as blocked */
+    public long blockedBits(int x, int y) {
+        if (y < 0 || y >= height || x <= -64 || x >= width)
+            return -1L;
+        long bits = blocked.get64(y * width + x);
+        if (x < 0)
+            bits |= (1L << -x) - 1;       // columns left of the row
+        if (width - x < 64)
+            bits |= -1L << (width - x);   // columns right of the row
+        return bits;
+    }
+
+    public int getWeight(int cell) {
+        return weights == null ? 1 : weights[cell] & 0xFF;
+    }
+    public int getWeight(int x, int y) {
+        return getWeight(indexOf(x, y));
+    }
+    /* Highest terrain weight on the map, 1 if it is not weighted */
+    public int getMaxWeight() {
+        return maxWeight;
+    }
+    public boolean isWeighted() {
+        return maxWeight > 1;
+    }
+
+    public void setWeight(int cell, int weight) {
+        if (weight < 1 || weight > MAX_WEIGHT)
+            throw new IllegalArgumentException("Weight must be between 1 and " + MAX_WEIGHT);
+        int old = getWeight(cell);
+        if (old == weight)
+            return;
+        if (weights == null) {
+            weights = new byte[getCellCount()];
+            Arrays.fill(weights, (byte) 1);
+        }
+        weights[cell] = (byte) weight;
+        weightCounts[old]--;
+        weightCounts[weight]++;
+        if (weight > maxWeight)
+            maxWeight = weight;
+        while (weightCounts[maxWeight] == 0)
+            maxWeight--;
+        version++;
+    }
+    public void setWeight(int x, int y, int weight) {
+        setWeight(indexOf(x, y), weight);
+    }
+
+    public void setBlocked(int cell, boolean isBlocked) {
+        blocked.set(cell, isBlocked);
+        version++;
+    }
+    public void setBlocked(int x, int y, boolean isBlocked) {
+        setBlocked(indexOf(x, y), isBlocked);
+    }
+
+    /* Bulk loading for MapSnapshot, much faster than a call per cell. Each
+       counts as one edit */
+    void setBlockedRange(int from, int to) {
+        blocked.set(from, to);
+        version++;
+    }
+    void readObstacleWords(LongBuffer source, int wordIndex, int count) {
+        blocked.readWords(source, wordIndex, count);
+        version++;
+    }
+    /* Takes over cellWeights (one unsigned byte per cell, 0 read as 1) as
+       the terrain weights */
+    void setWeights(byte[] cellWeights) {
+        if (cellWeights.length != getCellCount())
+            throw new IllegalArgumentException("One weight per cell expected");
+        Arrays.fill(weightCounts, 0);
+        for (int cell = 0; cell < cellWeights.length; cell++) {
+            if (cellWeights[cell] == 0)
+                cellWeights[cell] = 1;
+            weightCounts[cellWeights[cell] & 0xFF]++;
+        }
+        weights = cellWeights;
+        maxWeight = MAX_WEIGHT;
+        while (maxWeight > 1 && weightCounts[maxWeight] == 0)
+            maxWeight--;
+        version++;
+    }
+
+    /* Makes this map a copy of other, which must have the same size. The
+       copy takes other's version, so comparing versions tells whether it
+       is still up to date */
+    public void copyFrom(GridMap other) {
+        if (other.width != width || other.height != height)
+            throw new IllegalArgumentException("Maps differ in size");
+        blocked.copyFrom(other.blocked);
+        if (other.weights == null)
+            weights = null;
+        else if (weights == null)
+            weights = other.weights.clone();
+        else
+            System.arraycopy(other.weights, 0, weights, 0, weights.length);
+        System.arraycopy(other.weightCounts, 0, weightCounts, 0, weightCounts.length);
+        maxWeight = other.maxWeight;
+        version = other.version;
+    }
+
+    /* Removes every obstacle and terrain weight from the grid */
+    public void clear() {
+        blocked.clear();
+        weights = null;
+        Arrays.fill(weightCounts, 0);
+        weightCounts[1] = getCellCount();
+        maxWeight = 1;
+        version++;
+    }
+}
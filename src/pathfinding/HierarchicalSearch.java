@@ -0,0 +1,475 @@
+/*
+    HierarchicalSearch -> HPA* (Botea, Mueller & Schaeffer) for very large maps.
+    The map is split into square clusters. Wherever two neighboring clusters
+    share a run of free cells along their border, an entrance is placed (one
+    in the middle of a short run, one at each end of a long run), and the
+    cells on either side of it become nodes of an abstract graph. Inside each
+    cluster the distances between its nodes are precomputed, so a query only
+    searches the small abstract graph and then refines the abstract path one
+    cluster at a time, when the caller asks for it.
+
+    Paths are near optimal rather than optimal: a path is forced through the
+    entrances and cannot cut diagonally across a cluster corner. If the
+    abstract graph finds no path at all the query falls back to a flat search,
+    so queries are still answered correctly when a path exists.
+
+    After editing a cell of the map, call cellChanged so only the cluster of
+    that cell and its four neighbors are rebuilt. Not thread safe.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class HierarchicalSearch {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    private static final int INFINITY = ClusterSearch.INFINITY;
+    private static final int LONG_ENTRANCE = 6; // Runs this long get two entrances
+
+    private final GridMap map;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+
+    /* Abstract graph, everything indexed by cluster */
+    private final int[][] eastEntrances;  // Pairs {cell here, cell in east cluster, ...}
+    private final int[][] southEntrances; // Pairs {cell here, cell in south cluster, ...}
+    private final int[][] nodes;          // Entrance cells inside the cluster
+    private final int[][] distances;      // k*k distances between the k nodes
+    private final ClusterSearch clusterSearch;
+    private final int[] runBuffer;        // Scratch space for finding entrances
+    private final long buildNanos;
+
+    /* Abstract search, same generation scheme as SearchEngine */
+    private final int[] gCost;
+    private final int[] parent;
+    private final int[] stamp;
+    private final byte[] closed;
+    private int generation;
+    private final IndexedHeap openSites;
+    private int[] startLinks;  // Distances from the start to the nodes of its cluster
+    private int[] targetLinks; // Distances from the target to the nodes of its cluster
+
+    private int[] waypoints;   // Abstract path, start->target
+    private int waypointCount;
+    private int pathCost;
+    private int expandedCount;
+    private SearchEngine flatEngine; // Fallback, created on first use
+
+    private int[] path;        // Refined path, filled by getPath
+    private int pathLength;
+    private boolean refined;
+
+    public HierarchicalSearch(GridMap gridMap) {
+        this(gridMap, DEFAULT_CLUSTER_SIZE);
+    }
+
+    public HierarchicalSearch(GridMap gridMap, int clusterSideLength) {
+        if (clusterSideLength < 2)
+            throw new IllegalArgumentException("Clusters must be at least 2 cells wide");
+        long begin = System.nanoTime();
+        map = gridMap;
+        clusterSize = clusterSideLength;
+        clustersX = (map.getWidth() + clusterSize - 1) / clusterSize;
+        clustersY = (map.getHeight() + clusterSize - 1) / clusterSize;
+        int clusters = clustersX * clustersY;
+
+        eastEntrances = new int[clusters][];
+        southEntrances = new int[clusters][];
+        nodes = new int[clusters][];
+        distances = new int[clusters][];
+        clusterSearch = new ClusterSearch(map, clusterSize * clusterSize);
+        runBuffer = new int[clusterSize * 4];
+
+        for (int c = 0; c < clusters; c++) {
+            eastEntrances[c] = findEntrances(c, true);
+            southEntrances[c] = findEntrances(c, false);
+        }
+        for (int c = 0; c < clusters; c++)
+            connectCluster(c);
+
+        gCost = new int[map.getCellCount()];
+        parent = new int[map.getCellCount()];
+        stamp = new int[map.getCellCount()];
+        closed = new byte[map.getCellCount()];
+        openSites = new IndexedHeap();
+        openSites.ensureCapacity(map.getCellCount());
+        startLinks = new int[16];
+        targetLinks = new int[16];
+        waypoints = new int[64];
+        path = new int[64];
+        buildNanos = System.nanoTime() - begin;
+    }
+
+    // Preprocessing statistics
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+    public int getClusterSize() {
+        return clusterSize;
+    }
+    public int getNodeCount() {
+        int count = 0;
+        for (int[] clusterNodes : nodes)
+            count += clusterNodes.length;
+        return count;
+    }
+    /* Bytes held by the abstract graph (entrances, nodes and distance tables) */
+    public long getGraphMemoryBytes() {
+        long bytes = 0;
+        for (int c = 0; c < nodes.length; c++) {
+            bytes += 4L * (eastEntrances[c].length + southEntrances[c].length
+                           + nodes[c].length + distances[c].length);
+            bytes += 4 * 16; // array headers
+        }
+        return bytes;
+    }
+
+    /* Rebuilds the clusters affected by a change to the blocked state of cell */
+    public void cellChanged(int cell) {
+        int c = clusterOf(cell);
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+
+        // The four borders of the cluster
+        eastEntrances[c] = findEntrances(c, true);
+        southEntrances[c] = findEntrances(c, false);
+        if (cx > 0)
+            eastEntrances[c - 1] = findEntrances(c - 1, true);
+        if (cy > 0)
+            southEntrances[c - clustersX] = findEntrances(c - clustersX, false);
+
+        // The cluster and every neighbor whose nodes may have changed
+        connectCluster(c);
+        if (cx > 0)
+            connectCluster(c - 1);
+        if (cx < clustersX - 1)
+            connectCluster(c + 1);
+        if (cy > 0)
+            connectCluster(c - clustersX);
+        if (cy < clustersY - 1)
+            connectCluster(c + clustersX);
+    }
+
+    /* Finds an abstract path from start to target. Returns true if there is
+       a path, whose waypoints can then be read or refined */
+    public boolean search(int start, int target) {
+        beginQuery();
+        if (start == target) {
+            waypoints[waypointCount++] = start;
+            pathCost = 0;
+            return true;
+        }
+
+        int startCluster = clusterOf(start);
+        int targetCluster = clusterOf(target);
+        startLinks = linkToCluster(startCluster, start, startLinks);
+        int direct = startCluster == targetCluster ? clusterSearch.distanceTo(target) : INFINITY;
+        targetLinks = linkToCluster(targetCluster, target, targetLinks);
+
+        visit(start, 0, -1);
+        int startH = octile(start, target);
+        openSites.insert(start, startH, startH);
+
+        while (!openSites.isEmpty()) {
+            int current = openSites.pop();
+            if (current == target) {
+                buildWaypoints(target);
+                return true;
+            }
+            closed[current] = 1;
+            expandedCount++;
+
+            int c = clusterOf(current);
+            int[] clusterNodes = nodes[c];
+            if (current == start) {
+                for (int j = 0; j < clusterNodes.length; j++)
+                    relax(current, clusterNodes[j], startLinks[j], target);
+                relax(current, target, direct, target);
+            } else {
+                int i = indexOf(clusterNodes, current);
+                if (i >= 0) {
+                    int k = clusterNodes.length;
+                    for (int j = 0; j < k; j++) {
+                        if (j != i)
+                            relax(current, clusterNodes[j], distances[c][i * k + j], target);
+                    }
+                    if (c == targetCluster)
+                        relax(current, target, targetLinks[i], target);
+                }
+            }
+
+            // Entrances leading out of the cluster
+            int cx = c % clustersX;
+            int cy = c / clustersX;
+            relaxAcross(current, eastEntrances[c], 0, target);
+            relaxAcross(current, southEntrances[c], 0, target);
+            if (cx > 0)
+                relaxAcross(current, eastEntrances[c - 1], 1, target);
+            if (cy > 0)
+                relaxAcross(current, southEntrances[c - clustersX], 1, target);
+        }
+        return searchFlat(start, target);
+    }
+
+    // Accessors for the results of the last search
+    public int[] getWaypoints() { // Shared buffer, only the first getWaypointCount() cells are valid
+        return waypoints;
+    }
+    public int getWaypointCount() {
+        return waypointCount;
+    }
+    public int getPathCost() {
+        return waypointCount == 0 ? -1 : pathCost;
+    }
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+    /* No refined segment is longer than this, useful for sizing refineSegment buffers */
+    public int getMaxSegmentLength() {
+        return clusterSize * clusterSize;
+    }
+
+    /* Refines the part of the path between waypoint segment and segment + 1,
+       writing its cells (excluding the first waypoint) into dest at offset.
+       Returns the offset after the last written cell */
+    public int refineSegment(int segment, int[] dest, int offset) {
+        int from = waypoints[segment];
+        int to = waypoints[segment + 1];
+        int c = clusterOf(from);
+        if (c != clusterOf(to)) { // an entrance, the two cells are adjacent
+            dest[offset] = to;
+            return offset + 1;
+        }
+        runInCluster(c, from);
+        return clusterSearch.appendPath(to, dest, offset);
+    }
+
+    /* The whole refined path, refined on the first call after a search */
+    public int[] getPath() { // Shared buffer, only the first getPathLength() cells are valid
+        if (!refined) {
+            pathLength = 0;
+            if (waypointCount > 0) {
+                path[pathLength++] = waypoints[0];
+                for (int segment = 0; segment < waypointCount - 1; segment++) {
+                    if (pathLength + getMaxSegmentLength() > path.length)
+                        path = Arrays.copyOf(path, Math.max(path.length * 2, pathLength + getMaxSegmentLength()));
+                    pathLength = refineSegment(segment, path, pathLength);
+                }
+            }
+            refined = true;
+        }
+        return path;
+    }
+    public int getPathLength() {
+        getPath();
+        return pathLength;
+    }
+
+    /* Finds the entrances on the east (or south) border of a cluster and
+       returns them as pairs of cells, one on each side */
+    private int[] findEntrances(int c, boolean east) {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+        if ((east && cx == clustersX - 1) || (!east && cy == clustersY - 1))
+            return new int[0];
+
+        int left = cx * clusterSize;
+        int top = cy * clusterSize;
+        int length = east ? Math.min(clusterSize, map.getHeight() - top)
+                          : Math.min(clusterSize, map.getWidth() - left);
+        int count = 0;
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = false;
+            if (i < length) {
+                int x = east ? left + clusterSize - 1 : left + i;
+                int y = east ? top + i : top + clusterSize - 1;
+                open = !map.isBlocked(x, y) && !map.isBlocked(x + (east ? 1 : 0), y + (east ? 0 : 1));
+            }
+            if (open && runStart == -1) {
+                runStart = i;
+            } else if (!open && runStart != -1) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+                    count = addEntrance(left, top, east, runStart, count);
+                    count = addEntrance(left, top, east, runEnd, count);
+                } else {
+                    count = addEntrance(left, top, east, (runStart + runEnd) / 2, count);
+                }
+                runStart = -1;
+            }
+        }
+        return Arrays.copyOf(runBuffer, count);
+    }
+
+    private int addEntrance(int left, int top, boolean east, int offset, int count) {
+        int x = east ? left + clusterSize - 1 : left + offset;
+        int y = east ? top + offset : top + clusterSize - 1;
+        runBuffer[count++] = map.indexOf(x, y);
+        runBuffer[count++] = map.indexOf(x + (east ? 1 : 0), y + (east ? 0 : 1));
+        return count;
+    }
+
+    /* Collects the nodes of a cluster from its four borders and precomputes
+       the distances between them */
+    private void connectCluster(int c) {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+        int[] found = new int[eastEntrances[c].length + southEntrances[c].length
+                              + (cx > 0 ? eastEntrances[c - 1].length : 0)
+                              + (cy > 0 ? southEntrances[c - clustersX].length : 0)];
+        int count = collectSide(eastEntrances[c], 0, found, 0);
+        count = collectSide(southEntrances[c], 0, found, count);
+        if (cx > 0)
+            count = collectSide(eastEntrances[c - 1], 1, found, count);
+        if (cy > 0)
+            count = collectSide(southEntrances[c - clustersX], 1, found, count);
+        int[] clusterNodes = Arrays.copyOf(found, count);
+
+        // Distances are symmetric, so each search only has to settle the nodes after it
+        int k = clusterNodes.length;
+        int[] table = new int[k * k];
+        int left = cx * clusterSize;
+        int top = cy * clusterSize;
+        int width = Math.min(clusterSize, map.getWidth() - left);
+        int height = Math.min(clusterSize, map.getHeight() - top);
+        for (int i = 0; i < k - 1; i++) {
+            clusterSearch.run(left, top, width, height, clusterNodes[i], clusterNodes, i + 1, k);
+            for (int j = i + 1; j < k; j++) {
+                table[i * k + j] = clusterSearch.distanceTo(clusterNodes[j]);
+                table[j * k + i] = table[i * k + j];
+            }
+        }
+        nodes[c] = clusterNodes;
+        distances[c] = table;
+    }
+
+    /* Adds one side of each entrance pair to found, skipping duplicates
+       (a corner cell can be on two borders) */
+    private static int collectSide(int[] pairs, int side, int[] found, int count) {
+        for (int p = side; p < pairs.length; p += 2) {
+            if (indexOf(found, count, pairs[p]) < 0)
+                found[count++] = pairs[p];
+        }
+        return count;
+    }
+
+    /* Distances from a cell to every node of its cluster. Leaves the cluster
+       search holding the distances from cell */
+    private int[] linkToCluster(int c, int cell, int[] links) {
+        int[] clusterNodes = nodes[c];
+        if (links.length < clusterNodes.length)
+            links = new int[clusterNodes.length * 2];
+        runInCluster(c, cell);
+        for (int j = 0; j < clusterNodes.length; j++)
+            links[j] = clusterSearch.distanceTo(clusterNodes[j]);
+        return links;
+    }
+
+    private void runInCluster(int c, int source) {
+        int left = (c % clustersX) * clusterSize;
+        int top = (c / clustersX) * clusterSize;
+        clusterSearch.run(left, top, Math.min(clusterSize, map.getWidth() - left),
+                          Math.min(clusterSize, map.getHeight() - top), source);
+    }
+
+    /* Relaxes the entrance edges of current, side says which cell of each pair is in its cluster */
+    private void relaxAcross(int current, int[] pairs, int side, int target) {
+        for (int p = side; p < pairs.length; p += 2) {
+            if (pairs[p] == current)
+                relax(current, pairs[p ^ 1], SearchEngine.STRAIGHT_COST, target);
+        }
+    }
+
+    private void relax(int current, int next, int cost, int target) {
+        if (cost >= INFINITY)
+            return;
+        int g = gCost[current] + cost;
+        if (stamp[next] != generation) {
+            visit(next, g, current);
+            int h = octile(next, target);
+            openSites.insert(next, g + h, h);
+        } else if (closed[next] == 0 && g < gCost[next]) {
+            int h = openSites.getFCost(next) - gCost[next];
+            gCost[next] = g;
+            parent[next] = current;
+            openSites.decreaseKey(next, g + h, h);
+        }
+    }
+
+    private void visit(int cell, int g, int parentCell) {
+        stamp[cell] = generation;
+        closed[cell] = 0;
+        gCost[cell] = g;
+        parent[cell] = parentCell;
+    }
+
+    private void beginQuery() {
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        openSites.clear();
+        waypointCount = 0;
+        expandedCount = 0;
+        refined = false;
+    }
+
+    private void buildWaypoints(int target) {
+        int count = 0;
+        for (int cell = target; cell != -1; cell = parent[cell])
+            count++;
+        if (waypoints.length < count)
+            waypoints = new int[count * 2];
+        int i = count;
+        for (int cell = target; cell != -1; cell = parent[cell])
+            waypoints[--i] = cell;
+        waypointCount = count;
+        pathCost = gCost[target];
+    }
+
+    /* Used when the entrances miss a connection, e.g. a diagonal step across
+       a cluster corner. The flat path's cells all become waypoints */
+    private boolean searchFlat(int start, int target) {
+        if (flatEngine == null)
+            flatEngine = new SearchEngine();
+        if (!flatEngine.search(map, start, target))
+            return false;
+        int length = flatEngine.getPathLength();
+        if (waypoints.length < length)
+            waypoints = new int[length];
+        System.arraycopy(flatEngine.getPath(), 0, waypoints, 0, length);
+        waypointCount = length;
+        pathCost = flatEngine.getPathCost();
+        expandedCount += flatEngine.getExpandedCount();
+        return true;
+    }
+
+    private int clusterOf(int cell) {
+        int width = map.getWidth();
+        return (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize;
+    }
+
+    private static int indexOf(int[] cells, int cell) {
+        return indexOf(cells, cells.length, cell);
+    }
+    private static int indexOf(int[] cells, int count, int cell) {
+        for (int i = 0; i < count; i++) {
+            if (cells[i] == cell)
+                return i;
+        }
+        return -1;
+    }
+
+    private int octile(int a, int b) {
+        int width = map.getWidth();
+        int dx = Math.abs(a % width - b % width);
+        int dy = Math.abs(a / width - b / width);
+        return SearchEngine.STRAIGHT_COST * Math.max(dx, dy)
+             + (SearchEngine.DIAGONAL_COST - SearchEngine.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+    IndexedHeap -> The open list of a search: a binary min heap of cell
+    indices that also remembers where each cell sits in the heap. That makes
+    "is this cell open?" an O(1) array lookup and lets an improved cell move
+    up in O(log n) (decrease-key) instead of being searched for and removed.
+
+    Cells are ordered by f cost, and cells with equal f cost by h cost, so on
+    a plateau the cell closest to the target is expanded first.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class IndexedHeap implements OpenList {
+
+    private int[] heap;     // Cells, heap[0] has the lowest (f, h)
+    private int size;
+    private int peakSize;   // Largest size since the last clear
+    private int[] position; // Index of each cell in heap, or -1 if not in it
+    private int[] fCost;    // Keys of every cell currently in the heap
+    private int[] hCost;
+
+    public IndexedHeap() {
+        heap = new int[64];
+        position = new int[0];
+        fCost = new int[0];
+        hCost = new int[0];
+    }
+
+    /* Makes room for cells 0 .. cellCount-1, only allocating when growing */
+    public void ensureCapacity(int cellCount) {
+        if (position.length >= cellCount)
+            return;
+        int oldLength = position.length;
+        position = Arrays.copyOf(position, cellCount);
+        Arrays.fill(position, oldLength, cellCount, -1);
+        fCost = Arrays.copyOf(fCost, cellCount);
+        hCost = Arrays.copyOf(hCost, cellCount);
+    }
+
+    /* Empties the heap, only touching the cells that are still in it */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            position[heap[i]] = -1;
+        size = 0;
+        peakSize = 0;
+    }
+
+    // Accessors
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public int size() {
+        return size;
+    }
+    public int getPeakSize() {
+        return peakSize;
+    }
+    public boolean contains(int cell) {
+        return position[cell] >= 0;
+    }
+    public int getFCost(int cell) {
+        return fCost[cell];
+    }
+    public int getHCost(int cell) {
+        return hCost[cell];
+    }
+    public int peek() {
+        return heap[0];
+    }
+    /* The i-th cell in heap order (not sorted), for 0 <= i < size() */
+    public int get(int i) {
+        return heap[i];
+    }
+
+    public void insert(int cell, int f, int h) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+        fCost[cell] = f;
+        hCost[cell] = h;
+        heap[size] = cell;
+        position[cell] = size;
+        siftUp(size++);
+        if (size > peakSize)
+            peakSize = size;
+    }
+
+    /* Lowers the keys of a cell that is already in the heap */
+    public void decreaseKey(int cell, int f, int h) {
+        fCost[cell] = f;
+        hCost[cell] = h;
+        siftUp(position[cell]);
+    }
+
+    /* Sets new keys for a cell that is already in the heap, in either direction */
+    public void changeKey(int cell, int f, int h) {
+        fCost[cell] = f;
+        hCost[cell] = h;
+        siftDown(position[cell]);
+        siftUp(position[cell]);
+    }
+
+    /* Removes and returns the cell with the lowest (f, h) */
+    public int pop() {
+        int top = heap[0];
+        position[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /* Removes any cell from the heap, used when a cell stops being open
+       for a reason other than being expanded */
+    public void remove(int cell) {
+        int i = position[cell];
+        position[cell] = -1;
+        if (i != --size) {
+            heap[i] = heap[size];
+            position[heap[i]] = i;
+            siftDown(i);
+            siftUp(i);
+        }
+    }
+
+    private boolean less(int a, int b) {
+        return fCost[a] < fCost[b] || (fCost[a] == fCost[b] && hCost[a] < hCost[b]);
+    }
+
+    private void siftUp(int i) {
+        int cell = heap[i];
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (!less(cell, heap[up]))
+                break;
+            heap[i] = heap[up];
+            position[heap[i]] = i;
+            i = up;
+        }
+        heap[i] = cell;
+        position[cell] = i;
+    }
+
+    private void siftDown(int i) {
+        int cell = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && less(heap[child + 1], heap[child]))
+                child++;
+            if (!less(heap[child], cell))
+                break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        position[cell] = i;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+    JumpPoints -> The pruning rules of Jump Point Search (Harabor & Grastien)
+    for the engine's movement model, where a diagonal step is allowed whenever
+    the destination cell is free. Shared by the JPS scan and by JumpTable.
+
+    Moving in direction (dx, dy), a cell only needs the "natural" neighbors
+    that continue the move, plus any "forced" neighbor that an obstacle next
+    to the cell makes unreachable by a path of equal cost through the parent.
+ */
+
+package pathfinding;
+
+final class JumpPoints {
+
+    private static final int BLOCK_CELLS = 63;
+    private static final long BLOCK_MASK = (1L << BLOCK_CELLS) - 1;
+
+    private JumpPoints() {
+    }
+
+    /* True if the cell at x,y, reached while moving in (dx, dy), has a forced neighbor */
+    static boolean hasForcedNeighbor(GridMap map, int x, int y, int dx, int dy) {
+        if (dx != 0 && dy != 0) {
+            return (map.isBlocked(x - dx, y) && !map.isBlocked(x - dx, y + dy)) ||
+                   (map.isBlocked(x, y - dy) && !map.isBlocked(x + dx, y - dy));
+        } else if (dx != 0) {
+            return (map.isBlocked(x, y + 1) && !map.isBlocked(x + dx, y + 1)) ||
+                   (map.isBlocked(x, y - 1) && !map.isBlocked(x + dx, y - 1));
+        } else {
+            return (map.isBlocked(x + 1, y) && !map.isBlocked(x + 1, y + dy)) ||
+                   (map.isBlocked(x - 1, y) && !map.isBlocked(x - 1, y + dy));
+        }
+    }
+
+    /* Bit mask of the JumpTable directions worth exploring from x,y when it
+       was reached moving in (dx, dy). (0, 0) means x,y is the start cell */
+    static int prunedDirections(GridMap map, int x, int y, int dx, int dy) {
+        if (dx == 0 && dy == 0)
+            return 0xFF;
+
+        int directions;
+        if (dx != 0 && dy != 0) {
+            directions = bit(dx, 0) | bit(0, dy) | bit(dx, dy);
+            if (map.isBlocked(x - dx, y))
+                directions |= bit(-dx, dy);
+            if (map.isBlocked(x, y - dy))
+                directions |= bit(dx, -dy);
+        } else if (dx != 0) {
+            directions = bit(dx, 0);
+            if (map.isBlocked(x, y + 1))
+                directions |= bit(dx, 1);
+            if (map.isBlocked(x, y - 1))
+                directions |= bit(dx, -1);
+        } else {
+            directions = bit(0, dy);
+            if (map.isBlocked(x + 1, y))
+                directions |= bit(1, dy);
+            if (map.isBlocked(x - 1, y))
+                directions |= bit(-1, dy);
+        }
+        return directions;
+    }
+
+    /* Scans from x,y in (dx, dy) and returns the first jump point (or the
+       target) it reaches, or -1 if the scan runs into an obstacle */
+    static int jump(GridMap map, int x, int y, int dx, int dy, int target) {
+        if (dy == 0)
+            return jumpHorizontal(map, x, y, dx, target);
+        int width = map.getWidth();
+        while (true) {
+            x += dx;
+            y += dy;
+            if (map.isBlocked(x, y))
+                return -1;
+            int cell = y * width + x;
+            if (cell == target || hasForcedNeighbor(map, x, y, dx, dy))
+                return cell;
+            if (dx != 0 && dy != 0 &&
+                (jump(map, x, y, dx, 0, target) != -1 || jump(map, x, y, 0, dy, target) != -1))
+                return cell;
+        }
+    }
+
+    /* Horizontal scans test a block of 63 cells at once, using the obstacle
+       bits of the row and of the rows above and below it. Bit i of each block
+       is the i-th cell in the direction of the scan */
+    private static int jumpHorizontal(GridMap map, int x, int y, int dx, int target) {
+        int width = map.getWidth();
+        int targetX = target % width;
+        int targetY = target / width;
+        int first = x + dx; // first cell of the current block
+
+        while (true) {
+            long row, above, below;
+            if (dx > 0) {
+                row = map.blockedBits(first, y);
+                above = map.blockedBits(first, y - 1);
+                below = map.blockedBits(first, y + 1);
+            } else {
+                row = Long.reverse(map.blockedBits(first - 63, y));
+                above = Long.reverse(map.blockedBits(first - 63, y - 1));
+                below = Long.reverse(map.blockedBits(first - 63, y + 1));
+            }
+            // A cell has a forced neighbor if the cell above (or below) it is
+            // blocked and the next one is free. Bit 63 has no next bit here
+            long forced = ((above & ~(above >>> 1)) | (below & ~(below >>> 1))) & BLOCK_MASK;
+            int stop = Math.min(Long.numberOfTrailingZeros(row), BLOCK_CELLS);
+            int forcedAt = Long.numberOfTrailingZeros(forced);
+
+            if (targetY == y) {
+                int toTarget = (targetX - first) * dx;
+                if (toTarget >= 0 && toTarget < stop && toTarget <= forcedAt)
+                    return target;
+            }
+            if (forcedAt < stop)
+                return y * width + first + forcedAt * dx;
+            if (stop < BLOCK_CELLS)
+                return -1;
+            first += BLOCK_CELLS * dx;
+        }
+    }
+
+    private static int bit(int dx, int dy) {
+        return 1 << JumpTable.directionOf(dx, dy);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+    JumpTable -> Precomputed jump distances for JPS+. For every free cell and
+    each of the 8 directions it stores how far a Jump Point Search scan in
+    that direction would travel:
+
+      distance > 0   -> a jump point is exactly that many steps away
+      distance <= 0  -> there is no jump point, -distance free cells lie
+                        before the next obstacle or the edge of the grid
+
+    The table describes one version of one map, isFor tells whether it is
+    still valid. Building it costs O(cells), and 8 ints per cell of memory.
+ */
+
+package pathfinding;
+
+public final class JumpTable {
+
+    /* Directions, counter-clockwise starting east (y grows downwards) */
+    public static final int EAST = 0;
+    public static final int NORTH_EAST = 1;
+    public static final int NORTH = 2;
+    public static final int NORTH_WEST = 3;
+    public static final int WEST = 4;
+    public static final int SOUTH_WEST = 5;
+    public static final int SOUTH = 6;
+    public static final int SOUTH_EAST = 7;
+
+    static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    static final int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    private final GridMap map;
+    private final int mapVersion;
+    private final int[][] distance; // distance[direction][cell]
+
+    public JumpTable(GridMap gridMap) {
+        map = gridMap;
+        mapVersion = gridMap.getVersion();
+        distance = new int[8][gridMap.getCellCount()];
+
+        // Straight directions first, the diagonal scans look them up
+        for (int direction = 0; direction < 8; direction += 2)
+            buildStraight(direction);
+        for (int direction = 1; direction < 8; direction += 2)
+            buildDiagonal(direction);
+    }
+
+    /* A table read back by MapSnapshot, distances as returned by get */
+    JumpTable(GridMap gridMap, int[][] distances) {
+        if (distances.length != 8 || distances[0].length != gridMap.getCellCount())
+            throw new IllegalArgumentException("Jump table does not fit the map");
+        map = gridMap;
+        mapVersion = gridMap.getVersion();
+        distance = distances;
+    }
+
+    /* True if the table was built from this map and the map has not changed since */
+    public boolean isFor(GridMap gridMap) {
+        return gridMap == map && gridMap.getVersion() == mapVersion;
+    }
+
+    public int get(int direction, int cell) {
+        return distance[direction][cell];
+    }
+
+    /* Index of the direction with the given x,y steps (each -1, 0 or 1) */
+    public static int directionOf(int dx, int dy) {
+        for (int direction = 0; direction < 8; direction++) {
+            if (DX[direction] == dx && DY[direction] == dy)
+                return direction;
+        }
+        throw new IllegalArgumentException("Not a direction: " + dx + "," + dy);
+    }
+
+    /* Scans every line against the direction, so the next cell of each scan
+       has already been computed when a cell is visited */
+    private void buildStraight(int direction) {
+        int dx = DX[direction];
+        int dy = DY[direction];
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int[] table = distance[direction];
+
+        for (int i = 0; i < width * height; i++) {
+            int x, y;
+            if (dx != 0) { // rows, from the far end towards the scan's origin
+                y = i / width;
+                x = dx > 0 ? width - 1 - i % width : i % width;
+            } else {       // columns
+                x = i / height;
+                y = dy > 0 ? height - 1 - i % height : i % height;
+            }
+            int cell = y * width + x;
+            int nextX = x + dx;
+            int nextY = y + dy;
+            if (map.isBlocked(x, y) || map.isBlocked(nextX, nextY)) {
+                table[cell] = 0;
+                continue;
+            }
+            int next = nextY * width + nextX;
+            if (JumpPoints.hasForcedNeighbor(map, nextX, nextY, dx, dy))
+                table[cell] = 1;
+            else
+                table[cell] = table[next] > 0 ? table[next] + 1 : table[next] - 1;
+        }
+    }
+
+    /* Scans rows against the vertical component of the direction */
+    private void buildDiagonal(int direction) {
+        int dx = DX[direction];
+        int dy = DY[direction];
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int[] table = distance[direction];
+        int[] horizontal = distance[directionOf(dx, 0)];
+        int[] vertical = distance[directionOf(0, dy)];
+
+        for (int row = 0; row < height; row++) {
+            int y = dy > 0 ? height - 1 - row : row;
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                int nextX = x + dx;
+                int nextY = y + dy;
+                if (map.isBlocked(x, y) || map.isBlocked(nextX, nextY)) {
+                    table[cell] = 0;
+                    continue;
+                }
+                int next = nextY * width + nextX;
+                if (JumpPoints.hasForcedNeighbor(map, nextX, nextY, dx, dy) ||
+                    horizontal[next] > 0 || vertical[next] > 0)
+                    table[cell] = 1;
+                else
+                    table[cell] = table[next] > 0 ? table[next] + 1 : table[next] - 1;
+            }
+        }
+    }
+}
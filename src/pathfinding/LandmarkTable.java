@@ -0,0 +1,326 @@
+/*
+    LandmarkTable -> Precomputed distances for the ALT heuristic (A*,
+    Landmarks, Triangle inequality). A few landmark cells are picked by
+    farthest-point selection, each new one as far as possible from those
+    already picked, so they sit at the ends of the map. A Dijkstra pass from
+    each landmark then stores its distance to and from every cell. By the
+    triangle inequality, for any landmark L
+
+        d(n, t) >= d(L, t) - d(L, n)   and   d(n, t) >= d(n, L) - d(t, L)
+
+    which on maze-like maps is far closer to the true distance than the
+    octile distance, so A* expands fewer cells. The bound is consistent, so
+    the paths found stay optimal.
+
+    Selection has to be sequential, but it only runs Dijkstra passes pruned
+    to the cells that the new landmark is closer to than the old ones. The
+    full passes are independent and run in parallel, one per landmark.
+    Without terrain weights the distances are symmetric and one table per
+    landmark serves both directions; with weights there are two. Either way
+    memory is count (or 2 x count) ints per cell.
+
+    A table describes one version of one map, isFor tells whether it is
+    still valid. write and read store it, so a static map only pays for
+    the precomputation once.
+ */
+
+package pathfinding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public final class LandmarkTable {
+
+    public static final int DEFAULT_COUNT = 8;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x504C4D4B; // "PLMK"
+    private static final int FORMAT_VERSION = 1;
+
+    private final GridMap map;
+    private final int mapVersion;
+    private final int[] landmarks;
+    private final int[][] from; // from[k][cell] = d(landmark k, cell)
+    private final int[][] to;   // to[k][cell] = d(cell, landmark k), the same arrays as from without weights
+
+    /* Picks count landmarks, building their tables on every core */
+    public LandmarkTable(GridMap gridMap, int count) {
+        this(gridMap, count, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LandmarkTable(GridMap gridMap, int count, int threads) {
+        if (count <= 0 || threads <= 0)
+            throw new IllegalArgumentException("Landmark and thread counts must be positive");
+        map = gridMap;
+        mapVersion = gridMap.getVersion();
+        landmarks = selectLandmarks(gridMap, count);
+        boolean weighted = gridMap.isWeighted();
+        from = new int[landmarks.length][];
+        to = weighted ? new int[landmarks.length][] : from;
+
+        List<Callable<Void>> passes = new ArrayList<>();
+        for (int k = 0; k < landmarks.length; k++) {
+            passes.add(new Pass(k, false));
+            if (weighted)
+                passes.add(new Pass(k, true));
+        }
+        runAll(passes, threads);
+    }
+
+    private LandmarkTable(GridMap gridMap, int[] landmarkCells, int[][] fromTables, int[][] toTables) {
+        map = gridMap;
+        mapVersion = gridMap.getVersion();
+        landmarks = landmarkCells;
+        from = fromTables;
+        to = toTables;
+    }
+
+    /* True if the table was built from this map and the map has not changed since */
+    public boolean isFor(GridMap gridMap) {
+        return gridMap == map && gridMap.getVersion() == mapVersion;
+    }
+
+    // Accessors
+    public int getCount() {
+        return landmarks.length;
+    }
+    public int getLandmark(int k) {
+        return landmarks[k];
+    }
+    public int getDistanceFrom(int k, int cell) {
+        return from[k][cell];
+    }
+    public int getDistanceTo(int k, int cell) {
+        return to[k][cell];
+    }
+
+    /* Lower bound on the cost from cell to target, 0 if no landmark reaches both */
+    public int lowerBound(int cell, int target) {
+        int bound = 0;
+        for (int k = 0; k < landmarks.length; k++) {
+            int[] distanceFrom = from[k];
+            int toTarget = distanceFrom[target];
+            int toCell = distanceFrom[cell];
+            if (toTarget == UNREACHABLE || toCell == UNREACHABLE)
+                continue; // different components, the landmark says nothing
+            bound = Math.max(bound, toTarget - toCell);
+            int[] distanceTo = to[k];
+            bound = Math.max(bound, distanceTo[cell] - distanceTo[target]);
+        }
+        return bound;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(map.getWidth());
+        out.writeInt(map.getHeight());
+        out.writeLong(fingerprint(map));
+        out.writeInt(landmarks.length);
+        out.writeBoolean(to != from);
+        for (int k = 0; k < landmarks.length; k++) {
+            out.writeInt(landmarks[k]);
+            writeTable(out, from[k]);
+            if (to != from)
+                writeTable(out, to[k]);
+        }
+        out.flush();
+    }
+
+    /* Reads a table written for map. Fails if map is not the map it was
+       built from, in size, obstacles or weights */
+    public static LandmarkTable read(InputStream stream, GridMap map) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a landmark table");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported landmark table version " + version);
+        if (in.readInt() != map.getWidth() || in.readInt() != map.getHeight() || in.readLong() != fingerprint(map))
+            throw new IOException("Landmark table was built for a different map");
+
+        int count = in.readInt();
+        boolean directed = in.readBoolean();
+        int[] landmarkCells = new int[count];
+        int[][] fromTables = new int[count][];
+        int[][] toTables = directed ? new int[count][] : fromTables;
+        for (int k = 0; k < count; k++) {
+            landmarkCells[k] = in.readInt();
+            fromTables[k] = readTable(in, map.getCellCount());
+            if (directed)
+                toTables[k] = readTable(in, map.getCellCount());
+        }
+        return new LandmarkTable(map, landmarkCells, fromTables, toTables);
+    }
+
+    /* Farthest-point selection: starting near the middle of the map, each
+       landmark is the reachable cell farthest from all the ones before it.
+       nearest holds the distance to the closest landmark so far, and each
+       pass only visits the cells whose nearest distance it lowers */
+    private static int[] selectLandmarks(GridMap map, int count) {
+        int cells = map.getCellCount();
+        int[] nearest = new int[cells];
+        Arrays.fill(nearest, UNREACHABLE);
+        IndexedHeap open = new IndexedHeap();
+        open.ensureCapacity(cells);
+
+        int seed = centralFreeCell(map);
+        if (seed == -1)
+            return new int[0];
+        dijkstra(map, seed, nearest, open, false, true);
+        int[] picked = new int[count];
+        int found = 0;
+        int next = farthest(nearest);
+        Arrays.fill(nearest, UNREACHABLE);
+        while (found < count && next != -1 && nearest[next] != 0) {
+            picked[found++] = next;
+            dijkstra(map, next, nearest, open, false, true);
+            next = farthest(nearest);
+        }
+        return Arrays.copyOf(picked, found);
+    }
+
+    /* Single source shortest paths from source into distance. Forward
+       passes give d(source, cell), reverse ones d(cell, source). When
+       pruned, distance is not reset and cells are only improved */
+    private static void dijkstra(GridMap map, int source, int[] distance, IndexedHeap open,
+                                 boolean reverse, boolean pruned) {
+        if (!pruned)
+            Arrays.fill(distance, UNREACHABLE);
+        int width = map.getWidth();
+        int height = map.getHeight();
+        open.clear();
+        distance[source] = 0;
+        open.insert(source, 0, 0);
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            int currentX = current % width;
+            int currentY = current / width;
+            int currentWeight = map.getWeight(current);
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i == 0 && j == 0)
+                        continue;
+                    int neighborX = currentX + i;
+                    int neighborY = currentY + j;
+                    if (neighborX < 0 || neighborX >= width || neighborY < 0 || neighborY >= height)
+                        continue;
+                    int neighbor = neighborY * width + neighborX;
+                    if (map.isBlocked(neighbor))
+                        continue;
+
+                    // Forward, the step enters neighbor; in reverse it leaves neighbor for current
+                    int step = (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST)
+                               * (reverse ? currentWeight : map.getWeight(neighbor));
+                    int d = distance[current] + step;
+                    if (d >= distance[neighbor])
+                        continue;
+                    distance[neighbor] = d;
+                    if (open.contains(neighbor))
+                        open.decreaseKey(neighbor, d, 0);
+                    else
+                        open.insert(neighbor, d, 0);
+                }
+            }
+        }
+    }
+
+    private static int farthest(int[] distance) {
+        int best = -1;
+        for (int cell = 0; cell < distance.length; cell++)
+            if (distance[cell] != UNREACHABLE && (best == -1 || distance[cell] > distance[best]))
+                best = cell;
+        return best;
+    }
+
+    /* The free cell closest to the middle of the map, by rings, or -1 */
+    private static int centralFreeCell(GridMap map) {
+        int centerX = map.getWidth() / 2;
+        int centerY = map.getHeight() / 2;
+        int radius = Math.max(map.getWidth(), map.getHeight());
+        for (int r = 0; r <= radius; r++)
+            for (int y = centerY - r; y <= centerY + r; y++)
+                for (int x = centerX - r; x <= centerX + r; x++)
+                    if ((Math.abs(x - centerX) == r || Math.abs(y - centerY) == r) && !map.isBlocked(x, y))
+                        return map.indexOf(x, y);
+        return -1;
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, tasks.size()));
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building landmark tables", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Building a landmark table failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /* A hash of the size, obstacles and weights of a map */
+    private static long fingerprint(GridMap map) {
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ map.getWidth()) * 0x100000001B3L;
+        hash = (hash ^ map.getHeight()) * 0x100000001B3L;
+        CellBitSet obstacles = map.getObstacles();
+        for (int cell = 0; cell < map.getCellCount(); cell += 64)
+            hash = (hash ^ obstacles.get64(cell)) * 0x100000001B3L;
+        if (map.isWeighted())
+            for (int cell = 0; cell < map.getCellCount(); cell++)
+                hash = (hash ^ map.getWeight(cell)) * 0x100000001B3L;
+        return hash;
+    }
+
+    private static void writeTable(DataOutputStream out, int[] table) throws IOException {
+        for (int distance : table)
+            out.writeInt(distance);
+    }
+    private static int[] readTable(DataInputStream in, int cells) throws IOException {
+        int[] table = new int[cells];
+        for (int i = 0; i < cells; i++)
+            table[i] = in.readInt();
+        return table;
+    }
+
+    /* One full Dijkstra pass for landmark k, in one direction */
+    private final class Pass implements Callable<Void> {
+        private final int landmark;
+        private final boolean reverse;
+
+        Pass(int k, boolean reverseDirection) {
+            landmark = k;
+            reverse = reverseDirection;
+        }
+
+        @Override
+        public Void call() {
+            int[] distance = new int[map.getCellCount()];
+            IndexedHeap open = new IndexedHeap();
+            open.ensureCapacity(distance.length);
+            dijkstra(map, landmarks[landmark], distance, open, reverse, false);
+            if (reverse)
+                to[landmark] = distance;
+            else
+                from[landmark] = distance;
+            return null;
+        }
+    }
+}
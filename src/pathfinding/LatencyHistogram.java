@@ -0,0 +1,86 @@
+/*
+    LatencyHistogram -> Counts durations in log-linear buckets: each power
+    of two range of nanoseconds is split into SUB_BUCKETS equal buckets, so
+    a percentile is off by at most 1/SUB_BUCKETS of its value whatever the
+    scale, and recording is one atomic increment. Many threads can record
+    at once while another reads percentiles.
+ */
+
+package pathfinding;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+        total = new LongAdder();
+        sum = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value))
+            highest = max.get();
+    }
+
+    // Accessors
+    public long getCount() {
+        return total.sum();
+    }
+    public long getMaxNanos() {
+        return max.get();
+    }
+    public double getMeanNanos() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /* The duration that percent of the recordings did not exceed, as the
+       upper end of its bucket, 0 without recordings */
+    public long getPercentileNanos(double percent) {
+        long count = total.sum();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(upperBound(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    /* Values below SUB_BUCKETS get a bucket each; above, the top SUB_BITS + 1
+       bits of the value pick the bucket */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
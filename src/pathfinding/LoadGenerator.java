@@ -0,0 +1,147 @@
+/*
+    LoadGenerator -> Measures a running PathServer from the same box. A
+    number of clients each keep one request in flight (a closed loop: the
+    next request goes out when the last answer is in) between random free
+    cells of the server's map, for a number of seconds, then the
+    throughput, the answers by status and the end to end latency
+    percentiles are printed, followed by the server's own /metrics.
+
+        java pathfinding.LoadGenerator <file.map> [-url http://localhost:8080] [-clients 32]
+                                       [-seconds 10] [-seed 1]
+
+    More clients than the server's queue holds drive it into saturation,
+    which shows up as 503 answers rather than as growing latency.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+public final class LoadGenerator {
+
+    private final HttpClient client;
+    private final String url;
+    private final GridMap map;
+    private final long endNanos;
+    private final CountDownLatch finished;
+
+    private final LongAdder ok;
+    private final LongAdder saturated;
+    private final LongAdder errors;
+    private final LatencyHistogram latency;
+
+    private LoadGenerator(HttpClient httpClient, String serverUrl, GridMap gridMap, long end, int clients) {
+        client = httpClient;
+        url = serverUrl;
+        map = gridMap;
+        endNanos = end;
+        finished = new CountDownLatch(clients);
+        ok = new LongAdder();
+        saturated = new LongAdder();
+        errors = new LongAdder();
+        latency = new LatencyHistogram();
+    }
+
+    /* Sends the next request of one client, or counts the client as done */
+    private void next(final SplittableRandom random) {
+        if (System.nanoTime() >= endNanos) {
+            finished.countDown();
+            return;
+        }
+        int start = freeCell(random);
+        int target = freeCell(random);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/path?sx=" + map.xOf(start) + "&sy="
+                                                               + map.yOf(start) + "&tx=" + map.xOf(target)
+                                                               + "&ty=" + map.yOf(target))).build();
+        final long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+              .whenComplete(new BiConsumer<HttpResponse<Void>, Throwable>() {
+                  public void accept(HttpResponse<Void> response, Throwable failure) {
+                      if (failure != null) {
+                          errors.increment();
+                      } else if (response.statusCode() == 200) {
+                          latency.record(System.nanoTime() - sent);
+                          ok.increment();
+                      } else if (response.statusCode() == 503) {
+                          saturated.increment();
+                      } else {
+                          errors.increment();
+                      }
+                      next(random);
+                  }
+              });
+    }
+
+    private int freeCell(SplittableRandom random) {
+        int cell;
+        do {
+            cell = random.nextInt(map.getCellCount());
+        } while (map.isBlocked(cell));
+        return cell;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java pathfinding.LoadGenerator <file.map> [-url http://localhost:8080]"
+                               + " [-clients 32] [-seconds 10] [-seed 1]");
+            System.exit(2);
+        }
+        String url = "http://localhost:8080";
+        int clients = 32;
+        int seconds = 10;
+        long seed = 1;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-url": url = args[i + 1]; break;
+                case "-clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "-seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        GridMap map = MovingAiFormat.readMap(Paths.get(args[0]));
+        if (map.getObstacles().cardinality() == map.getCellCount()) {
+            System.err.println(args[0] + ": no free cells");
+            System.exit(1);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        HttpClient client = HttpClient.newBuilder().executor(executor).build();
+        long begin = System.nanoTime();
+        LoadGenerator generator = new LoadGenerator(client, url, map, begin + seconds * 1000000000L, clients);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < clients; i++)
+            generator.next(random.split());
+        generator.finished.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        long answered = generator.ok.sum();
+        LatencyHistogram latency = generator.latency;
+        System.out.printf("%d clients for %.1f s: %d paths (%.1f/s), %d rejected as saturated, %d errors%n",
+                          clients, elapsed, answered, answered / elapsed, generator.saturated.sum(),
+                          generator.errors.sum());
+        System.out.printf("latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                          latency.getMeanNanos() / 1e6, latency.getPercentileNanos(50) / 1e6,
+                          latency.getPercentileNanos(90) / 1e6, latency.getPercentileNanos(99) / 1e6,
+                          latency.getPercentileNanos(99.9) / 1e6, latency.getMaxNanos() / 1e6);
+
+        HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(url + "/metrics")).build(),
+                                                   HttpResponse.BodyHandlers.ofString());
+        System.out.println("server /metrics:");
+        System.out.print(metrics.body());
+        executor.shutdownNow();
+    }
+}
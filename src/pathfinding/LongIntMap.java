@@ -0,0 +1,92 @@
+/*
+    LongIntMap -> A hash map from long keys to int values in two primitive
+    arrays, with linear probing, so neither a put nor a get allocates. Keys
+    must not be EMPTY (-1). Used for the space-time states of
+    CooperativePlanner, where a key packs a cell and a tick into one long.
+
+    clear costs the size of the table, not of the entries, which is fine for
+    maps that are cleared about as often as they are filled.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+final class LongIntMap {
+
+    static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /* The value of key, or missing if there is none */
+    int get(long key, int missing) {
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key)
+                return values[slot];
+            if (k == EMPTY)
+                return missing;
+        }
+    }
+
+    void put(long key, int value) {
+        int slot = slotOf(key);
+        while (keys[slot] != EMPTY && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /* Doubles the table, keeping the load factor at or below one half */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+            int slot = slotOf(oldKeys[i]);
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+    MapSnapshot -> A GridMap saved together with a start and a target cell
+    and whatever was precomputed for it (ComponentIndex, JumpTable,
+    LandmarkTable), in one versioned binary file that loads back far faster
+    than drawing the map cell by cell and recomputing the tables.
+
+    The file is little endian: a 32 byte header (MAGIC, FORMAT_VERSION,
+    width, height, start, target, section count, 0), a directory of 24 byte
+    entries (tag, encoding, offset, length), then the sections, each on an
+    8 byte boundary. A layer is kept as raw words, or as runs when that is
+    at least RUN_SAVING times smaller (runs take longer to decode than a
+    bulk copy, so they have to pay for that in size):
+
+      OBSTACLES   the obstacle bits in GridMap's word layout, or the lengths
+                  of the alternating free and blocked runs, free first
+      WEIGHTS     a byte per cell, or weight/length runs. Only if weighted
+      COMPONENTS  the region count, then the region of every cell (-1 when
+                  blocked) as ints, or as region+1/length runs
+      JUMP_TABLE  the 8 direction arrays of a JumpTable, as ints
+      LANDMARKS   a LandmarkTable in its own format
+
+    Run lengths and values in runs are unsigned LEB128 varints. Readers
+    skip tags they do not know, so a later version can add sections that
+    older readers ignore.
+
+    write goes through a FileChannel; read maps each section and decodes
+    it, so raw layers are a bulk copy out of the page cache. mapObstacles
+    goes one step further and searches the raw obstacle bits where they
+    lie in the file, as an OffHeapGridMap, without copying them at all.
+    setMappable keeps the obstacles raw for that.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public final class MapSnapshot {
+
+    public static final int NO_CELL = -1;
+
+    private static final int MAGIC = 0x50534E50; // "PSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 24;
+
+    /* Section tags */
+    private static final int OBSTACLES = 1;
+    private static final int WEIGHTS = 2;
+    private static final int COMPONENTS = 3;
+    private static final int JUMP_TABLE = 4;
+    private static final int LANDMARKS = 5;
+
+    /* Section encodings */
+    private static final int RAW = 0;
+    private static final int RUNS = 1;
+
+    private static final int RUN_SAVING = 4;
+    private static final int CHUNK_BYTES = 1 << 30; // Most bytes mapped at once
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final GridMap map;
+    private int start;
+    private int target;
+    private ComponentIndex components;
+    private JumpTable jumpTable;
+    private LandmarkTable landmarkTable;
+    private boolean mappable;
+
+    public MapSnapshot(GridMap gridMap) {
+        map = gridMap;
+        start = NO_CELL;
+        target = NO_CELL;
+    }
+
+    // Accessors
+    public GridMap getMap() {
+        return map;
+    }
+    public int getStart() {
+        return start;
+    }
+    public int getTarget() {
+        return target;
+    }
+    public ComponentIndex getComponentIndex() { // null if none was saved
+        return components;
+    }
+    public JumpTable getJumpTable() {
+        return jumpTable;
+    }
+    public LandmarkTable getLandmarkTable() {
+        return landmarkTable;
+    }
+
+    public void setStart(int cell) {
+        start = checkCell(cell);
+    }
+    public void setTarget(int cell) {
+        target = checkCell(cell);
+    }
+    /* The tables to save with the map, each must be up to date for it */
+    public void setComponentIndex(ComponentIndex index) {
+        components = index;
+    }
+    public void setJumpTable(JumpTable table) {
+        jumpTable = table;
+    }
+    public void setLandmarkTable(LandmarkTable table) {
+        landmarkTable = table;
+    }
+    /* Keeps the obstacle bits raw even where runs would be smaller, so the
+       file works with mapObstacles */
+    public void setMappable(boolean raw) {
+        mappable = raw;
+    }
+
+    /* Writes the snapshot to file, replacing it */
+    public void write(Path file) throws IOException {
+        if ((components != null && !components.isFor(map)) || (jumpTable != null && !jumpTable.isFor(map)) ||
+            (landmarkTable != null && !landmarkTable.isFor(map)))
+            throw new IllegalStateException("A table is out of date for the map");
+        int sections = 1 + (map.isWeighted() ? 1 : 0) + (components != null ? 1 : 0)
+                       + (jumpTable != null ? 1 : 0) + (landmarkTable != null ? 1 : 0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + sections * ENTRY_BYTES)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(map.getWidth()).putInt(map.getHeight())
+              .putInt(start).putInt(target).putInt(sections).putInt(0);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel, header.capacity());
+            long offset = out.position();
+            int encoding = writeObstacles(out);
+            addEntry(header, OBSTACLES, encoding, offset, out.align() - offset);
+            if (map.isWeighted()) {
+                offset = out.position();
+                encoding = writeWeights(out);
+                addEntry(header, WEIGHTS, encoding, offset, out.align() - offset);
+            }
+            if (components != null) {
+                offset = out.position();
+                encoding = writeComponents(out);
+                addEntry(header, COMPONENTS, encoding, offset, out.align() - offset);
+            }
+            if (jumpTable != null) {
+                offset = out.position();
+                for (int direction = 0; direction < 8; direction++)
+                    for (int cell = 0; cell < map.getCellCount(); cell++)
+                        out.putInt(jumpTable.get(direction, cell));
+                addEntry(header, JUMP_TABLE, RAW, offset, out.align() - offset);
+            }
+            if (landmarkTable != null) {
+                offset = out.position();
+                out.flush();
+                landmarkTable.write(Channels.newOutputStream(channel));
+                addEntry(header, LANDMARKS, RAW, offset, out.align() - offset);
+            }
+            out.flush();
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+        }
+    }
+
+    /* Loads a snapshot written by write into a new GridMap, with the tables
+       that were saved along with it */
+    public static MapSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            MapSnapshot snapshot = new MapSnapshot(new GridMap(width, height));
+            snapshot.start = snapshot.checkCell(header.getInt(16));
+            snapshot.target = snapshot.checkCell(header.getInt(20));
+
+            // The map layers first, the tables are for the finished map
+            long[] entry = findSection(header, OBSTACLES);
+            if (entry == null)
+                throw new IOException("Map snapshot has no obstacles");
+            snapshot.readObstacles(channel, entry);
+            if ((entry = findSection(header, WEIGHTS)) != null)
+                snapshot.readWeights(channel, entry);
+            if ((entry = findSection(header, COMPONENTS)) != null)
+                snapshot.readComponents(channel, entry);
+            if ((entry = findSection(header, JUMP_TABLE)) != null) {
+                int[][] distances = new int[8][snapshot.map.getCellCount()];
+                checkLength(entry, 8L * 4 * snapshot.map.getCellCount());
+                for (int direction = 0; direction < 8; direction++)
+                    readInts(channel, entry[2] + (long) direction * 4 * distances[direction].length,
+                             distances[direction], 0);
+                snapshot.jumpTable = new JumpTable(snapshot.map, distances);
+            }
+            if ((entry = findSection(header, LANDMARKS)) != null)
+                snapshot.landmarkTable = LandmarkTable.read(Channels.newInputStream(channel.position(entry[2])),
+                                                            snapshot.map);
+            return snapshot;
+        }
+    }
+
+    /* Maps the raw obstacles of a snapshot as an OffHeapGridMap, read only,
+       without copying them. Fails if the obstacles were saved as runs */
+    public static OffHeapGridMap mapObstacles(Path file, OffHeapArena arena) throws IOException {
+        ByteBuffer header;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            header = readHeader(channel);
+        }
+        long[] entry = findSection(header, OBSTACLES);
+        if (entry == null)
+            throw new IOException("Map snapshot has no obstacles");
+        if (entry[1] != RAW)
+            throw new IOException("The obstacles of this snapshot are run length encoded, save it mappable");
+        return OffHeapGridMap.wrap(arena, header.getInt(8), header.getInt(12),
+                                   arena.map(file, entry[2], (int) entry[3], false));
+    }
+
+    private int checkCell(int cell) {
+        if (cell != NO_CELL && (cell < 0 || cell >= map.getCellCount()))
+            throw new IllegalArgumentException("Cell outside of the map");
+        return cell;
+    }
+
+    private static void addEntry(ByteBuffer header, int tag, int encoding, long offset, long length) {
+        header.putInt(tag).putInt(encoding).putLong(offset).putLong(length);
+    }
+
+    /* Raw words, or runs when they are small enough and the file need not
+       be mappable */
+    private int writeObstacles(Output out) throws IOException {
+        CellBitSet bits = map.getObstacles();
+        int cells = map.getCellCount();
+        long rawBytes = 8L * bits.getWordCount();
+        if (!mappable) {
+            long runBytes = 0;
+            boolean blocked = false;
+            for (int cell = 0; cell < cells && runBytes * RUN_SAVING < rawBytes; blocked = !blocked) {
+                int end = runEnd(bits, cell, blocked);
+                runBytes += varintBytes(end - cell);
+                cell = end;
+            }
+            if (runBytes * RUN_SAVING < rawBytes) {
+                blocked = false;
+                for (int cell = 0; cell < cells; blocked = !blocked) {
+                    int end = runEnd(bits, cell, blocked);
+                    out.putVarint(end - cell);
+                    cell = end;
+                }
+                return RUNS;
+            }
+        }
+        for (int w = 0; w < bits.getWordCount(); w++)
+            out.putLong(bits.getWord(w));
+        return RAW;
+    }
+
+    private int writeWeights(Output out) throws IOException {
+        int cells = map.getCellCount();
+        long runBytes = 0;
+        for (int cell = 0; cell < cells && runBytes * RUN_SAVING < cells; ) {
+            int end = cell + 1;
+            while (end < cells && map.getWeight(end) == map.getWeight(cell))
+                end++;
+            runBytes += 1 + varintBytes(end - cell);
+            cell = end;
+        }
+        if (runBytes * RUN_SAVING >= cells) {
+            for (int cell = 0; cell < cells; cell++)
+                out.putByte(map.getWeight(cell));
+            return RAW;
+        }
+        for (int cell = 0; cell < cells; ) {
+            int end = cell + 1;
+            while (end < cells && map.getWeight(end) == map.getWeight(cell))
+                end++;
+            out.putByte(map.getWeight(cell));
+            out.putVarint(end - cell);
+            cell = end;
+        }
+        return RUNS;
+    }
+
+    /* Region ids are renumbered 0 .. count-1 in the order the regions first
+       appear, so they do not depend on the index's edit history */
+    private int writeComponents(Output out) throws IOException {
+        int cells = map.getCellCount();
+        int count = components.getComponentCount();
+        LongIntMap regionIds = new LongIntMap(Math.max(16, count));
+        long runBytes = 0;
+        int lastComponent = ComponentIndex.NONE - 1; // and its id, consecutive cells mostly repeat it
+        int lastId = ComponentIndex.NONE;
+        // Every region is numbered before the count is written, even once
+        // the runs are known to lose to the raw layout
+        for (int cell = 0; cell < cells; ) {
+            int end = cell + 1;
+            while (end < cells && components.componentOf(end) == components.componentOf(cell))
+                end++;
+            int id = regionId(regionIds, components.componentOf(cell));
+            if (runBytes * RUN_SAVING < 4L * cells)
+                runBytes += varintBytes(id + 1) + varintBytes(end - cell);
+            cell = end;
+        }
+        out.putInt(regionIds.size());
+        out.putInt(0);
+        if (runBytes * RUN_SAVING >= 4L * cells || runBytes > Integer.MAX_VALUE) {
+            for (int cell = 0; cell < cells; cell++) {
+                int component = components.componentOf(cell);
+                if (component != lastComponent) {
+                    lastComponent = component;
+                    lastId = regionId(regionIds, component);
+                }
+                out.putInt(lastId);
+            }
+            return RAW;
+        }
+        for (int cell = 0; cell < cells; ) {
+            int end = cell + 1;
+            while (end < cells && components.componentOf(end) == components.componentOf(cell))
+                end++;
+            out.putVarint(regionId(regionIds, components.componentOf(cell)) + 1);
+            out.putVarint(end - cell);
+            cell = end;
+        }
+        return RUNS;
+    }
+
+    private static int regionId(LongIntMap regionIds, int component) {
+        if (component == ComponentIndex.NONE)
+            return ComponentIndex.NONE;
+        int id = regionIds.get(component, -1);
+        if (id == -1) {
+            id = regionIds.size();
+            regionIds.put(component, id);
+        }
+        return id;
+    }
+
+    private void readObstacles(FileChannel channel, long[] entry) throws IOException {
+        CellBitSet bits = map.getObstacles();
+        if (entry[1] == RAW) {
+            checkLength(entry, 8L * bits.getWordCount());
+            int words = bits.getWordCount();
+            long position = entry[2];
+            for (int w = 0; w < words; ) {
+                int count = Math.min(words - w, CHUNK_BYTES / 8);
+                LongBuffer source = mapSection(channel, position, count * 8L).asLongBuffer();
+                map.readObstacleWords(source, w, count);
+                w += count;
+                position += count * 8L;
+            }
+            return;
+        }
+        ByteBuffer in = mapSection(channel, entry[2], entry[3]);
+        int cells = map.getCellCount();
+        boolean blocked = false;
+        for (int cell = 0; cell < cells; blocked = !blocked) {
+            int end = cell + readRun(in, cells - cell);
+            if (blocked)
+                map.setBlockedRange(cell, end);
+            cell = end;
+        }
+    }
+
+    private void readWeights(FileChannel channel, long[] entry) throws IOException {
+        int cells = map.getCellCount();
+        byte[] weights = new byte[cells];
+        if (entry[1] == RAW) {
+            checkLength(entry, cells);
+            for (int cell = 0; cell < cells; ) {
+                int count = Math.min(cells - cell, CHUNK_BYTES);
+                mapSection(channel, entry[2] + cell, count).get(weights, cell, count);
+                cell += count;
+            }
+        } else {
+            ByteBuffer in = mapSection(channel, entry[2], entry[3]);
+            for (int cell = 0; cell < cells; ) {
+                byte weight = in.get();
+                int end = cell + readRun(in, cells - cell);
+                Arrays.fill(weights, cell, end, weight);
+                cell = end;
+            }
+        }
+        map.setWeights(weights);
+    }
+
+    private void readComponents(FileChannel channel, long[] entry) throws IOException {
+        int cells = map.getCellCount();
+        int[] regions = new int[cells];
+        ByteBuffer head = mapSection(channel, entry[2], 8);
+        int count = head.getInt(0);
+        if (entry[1] == RAW) {
+            checkLength(entry, 8 + 4L * cells);
+            readInts(channel, entry[2] + 8, regions, 0);
+            for (int region : regions) {
+                if (region < ComponentIndex.NONE || region >= count)
+                    throw new IOException("Map snapshot has invalid regions");
+            }
+        } else {
+            ByteBuffer in = mapSection(channel, entry[2] + 8, entry[3] - 8);
+            for (int cell = 0; cell < cells; ) {
+                int region = readVarint(in) - 1;
+                if (region < ComponentIndex.NONE || region >= count)
+                    throw new IOException("Map snapshot has invalid regions");
+                int end = cell + readRun(in, cells - cell);
+                Arrays.fill(regions, cell, end, region);
+                cell = end;
+            }
+        }
+        components = new ComponentIndex(map, regions, count);
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES)
+            throw new IOException("Not a map snapshot");
+        ByteBuffer fixed = mapSection(channel, 0, HEADER_BYTES);
+        if (fixed.getInt(0) != MAGIC)
+            throw new IOException("Not a map snapshot");
+        if (fixed.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Unsupported map snapshot version " + fixed.getInt(4));
+        int width = fixed.getInt(8);
+        int height = fixed.getInt(12);
+        int sections = fixed.getInt(24);
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || sections < 0 ||
+            HEADER_BYTES + (long) sections * ENTRY_BYTES > size)
+            throw new IOException("Map snapshot header is corrupt");
+        ByteBuffer header = mapSection(channel, 0, HEADER_BYTES + sections * ENTRY_BYTES);
+        for (int i = 0; i < sections; i++) {
+            long offset = header.getLong(HEADER_BYTES + i * ENTRY_BYTES + 8);
+            long length = header.getLong(HEADER_BYTES + i * ENTRY_BYTES + 16);
+            if (offset < 0 || length < 0 || offset + length > size)
+                throw new IOException("Map snapshot is truncated");
+        }
+        return header;
+    }
+
+    /* {tag, encoding, offset, length} of the first section with tag, or null */
+    private static long[] findSection(ByteBuffer header, int tag) {
+        int sections = header.getInt(24);
+        for (int i = 0; i < sections; i++) {
+            int at = HEADER_BYTES + i * ENTRY_BYTES;
+            if (header.getInt(at) == tag)
+                return new long[] {tag, header.getInt(at + 4), header.getLong(at + 8), header.getLong(at + 16)};
+        }
+        return null;
+    }
+
+    private static void checkLength(long[] entry, long bytes) throws IOException {
+        if (entry[3] < bytes)
+            throw new IOException("Map snapshot section " + entry[0] + " is too short");
+    }
+
+    private static MappedByteBuffer mapSection(FileChannel channel, long position, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("Map snapshot section is too large to map");
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /* Fills values from index on with the ints stored at position */
+    private static void readInts(FileChannel channel, long position, int[] values, int index) throws IOException {
+        while (index < values.length) {
+            int count = Math.min(values.length - index, CHUNK_BYTES / 4);
+            IntBuffer source = mapSection(channel, position, count * 4L).asIntBuffer();
+            source.get(values, index, count);
+            index += count;
+            position += count * 4L;
+        }
+    }
+
+    /* Index of the first cell at or after from whose bit differs from value,
+       or the cell count */
+    private static int runEnd(CellBitSet bits, int from, boolean value) {
+        int w = from >>> 6;
+        long word = (value ? ~bits.getWord(w) : bits.getWord(w)) & (-1L << from);
+        while (word == 0) {
+            if (++w == bits.getWordCount())
+                return bits.size();
+            word = value ? ~bits.getWord(w) : bits.getWord(w);
+        }
+        return Math.min(bits.size(), (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /* A run length of at most limit cells */
+    private static int readRun(ByteBuffer in, int limit) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > limit)
+            throw new IOException("Map snapshot has an invalid run");
+        return length;
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining())
+                throw new IOException("Map snapshot section ends early");
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IOException("Map snapshot has an invalid varint");
+    }
+
+    private static int varintBytes(int value) {
+        return value == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(value)) / 7;
+    }
+
+    /* Buffered little endian writes to a channel, from a starting position */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Output(FileChannel fileChannel, long position) throws IOException {
+            channel = fileChannel;
+            channel.position(position);
+            buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long position() throws IOException {
+            return channel.position() + buffer.position();
+        }
+
+        void putByte(int value) throws IOException {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4)
+                flush();
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8)
+                flush();
+            buffer.putLong(value);
+        }
+
+        void putVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                putByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            putByte(value);
+        }
+
+        /* Pads to the next 8 byte boundary, returns the position before */
+        long align() throws IOException {
+            long end = position();
+            for (long p = end; (p & 7) != 0; p++)
+                putByte(0);
+            return end;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
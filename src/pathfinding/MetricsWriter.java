@@ -0,0 +1,69 @@
+/*
+    MetricsWriter -> Streams the SearchMetrics of a batch of queries to a
+    CSV file (one header line, then one line per query) or a JSON file (an
+    array with one object per query), for analysis outside of the program.
+ */
+
+package pathfinding;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+public final class MetricsWriter implements Closeable {
+
+    public enum Format { CSV, JSON }
+
+    private static final String[] COLUMNS = {
+        "query", "algorithm", "start", "target", "found", "pathLength", "pathCost",
+        "expanded", "pushes", "pops", "decreaseKeys", "peakOpen", "nanos"
+    };
+
+    private final Writer out;
+    private final Format format;
+    private int rows;
+
+    public MetricsWriter(Writer writer, Format outputFormat) throws IOException {
+        out = writer;
+        format = outputFormat;
+        if (format == Format.CSV)
+            out.write(String.join(",", COLUMNS) + "\n");
+        else
+            out.write("[");
+    }
+
+    /* Writes the metrics of query number query */
+    public void write(int query, SearchMetrics metrics) throws IOException {
+        Object[] values = {
+            query, metrics.getAlgorithm().name(), metrics.getStart(), metrics.getTarget(),
+            metrics.isFound(), metrics.getPathLength(), metrics.getPathCost(), metrics.getExpanded(),
+            metrics.getPushes(), metrics.getPops(), metrics.getDecreaseKeys(), metrics.getPeakOpen(),
+            metrics.getNanos()
+        };
+        StringBuilder line = new StringBuilder();
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++)
+                line.append(i == 0 ? "" : ",").append(values[i]);
+            line.append('\n');
+        } else {
+            line.append(rows == 0 ? "\n  {" : ",\n  {");
+            for (int i = 0; i < values.length; i++) {
+                line.append(i == 0 ? "" : ", ").append('"').append(COLUMNS[i]).append("\": ");
+                if (values[i] instanceof String)
+                    line.append('"').append(values[i]).append('"');
+                else
+                    line.append(values[i]);
+            }
+            line.append('}');
+        }
+        out.write(line.toString());
+        rows++;
+    }
+
+    /* Completes the file and closes the underlying writer */
+    public void close() throws IOException {
+        if (format == Format.JSON)
+            out.write(rows == 0 ? "]\n" : "\n]\n");
+        out.close();
+    }
+}
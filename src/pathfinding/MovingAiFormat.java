@@ -0,0 +1,154 @@
+/*
+    MovingAiFormat -> Reads the .map and .scen files of the Moving AI grid
+    pathfinding benchmarks (https://movingai.com/benchmarks/formats.html).
+
+    Files are memory mapped with a FileChannel and decoded straight from the
+    mapped bytes: a map's rows go directly into the obstacle bits of a
+    GridMap, without a String or object per row or cell. '.', 'G' and 'S'
+    are passable terrain, every other character ('@', 'O', 'T', 'W') is an
+    obstacle.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class MovingAiFormat {
+
+    private MovingAiFormat() {
+    }
+
+    public static GridMap readMap(Path file) throws IOException {
+        ByteBuffer in = mapFile(file);
+        int width = -1;
+        int height = -1;
+        while (true) {
+            String key = nextToken(in);
+            if (key == null)
+                throw new IOException(file + ": missing \"map\" line");
+            if (key.equals("map"))
+                break;
+            if (key.equals("width"))
+                width = nextInt(in);
+            else if (key.equals("height"))
+                height = nextInt(in);
+            else
+                nextToken(in); // type octile
+        }
+        if (width <= 0 || height <= 0)
+            throw new IOException(file + ": missing or invalid width/height");
+
+        GridMap map = new GridMap(width, height);
+        for (int y = 0; y < height; y++) {
+            skipLineBreaks(in);
+            if (in.remaining() < width)
+                throw new IOException(file + ": map has fewer than " + height + " rows");
+            int row = in.position();
+            for (int x = 0; x < width; x++) {
+                byte c = in.get(row + x);
+                if (c == '\r' || c == '\n')
+                    throw new IOException(file + ": row " + y + " is shorter than " + width);
+                if (c != '.' && c != 'G' && c != 'S')
+                    map.setBlocked(y * width + x, true);
+            }
+            in.position(row + width);
+        }
+        return map;
+    }
+
+    public static ScenarioSet readScenarios(Path file) throws IOException {
+        ByteBuffer in = mapFile(file);
+        ScenarioSet scenarios = new ScenarioSet();
+
+        String token = nextToken(in);
+        if ("version".equals(token)) {
+            nextToken(in);
+            token = nextToken(in);
+        }
+        while (token != null) {
+            int bucket = parseInt(token, file);
+            String mapName = nextToken(in);
+            int mapWidth = nextInt(in);
+            int mapHeight = nextInt(in);
+            int startX = nextInt(in);
+            int startY = nextInt(in);
+            int targetX = nextInt(in);
+            int targetY = nextInt(in);
+            String optimal = nextToken(in);
+            if (mapName == null || optimal == null || (mapWidth | mapHeight | startX | startY | targetX | targetY) < 0)
+                throw new IOException(file + ": truncated or invalid scenario " + scenarios.size());
+            scenarios.add(mapName, mapWidth, mapHeight, bucket, startX, startY, targetX, targetY,
+                          parseDouble(optimal, file));
+            token = nextToken(in);
+        }
+        return scenarios;
+    }
+
+    private static MappedByteBuffer mapFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /* Next whitespace separated token, or null at the end of the input */
+    private static String nextToken(ByteBuffer in) {
+        while (in.hasRemaining() && isSpace(in.get(in.position())))
+            in.get();
+        int from = in.position();
+        while (in.hasRemaining() && !isSpace(in.get(in.position())))
+            in.get();
+        int length = in.position() - from;
+        if (length == 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(from, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /* Next token as a non negative int, -1 if it is missing or not a number */
+    private static int nextInt(ByteBuffer in) {
+        while (in.hasRemaining() && isSpace(in.get(in.position())))
+            in.get();
+        long value = 0;
+        int digits = 0;
+        while (in.hasRemaining() && !isSpace(in.get(in.position()))) {
+            int digit = in.get() - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE)
+                return -1;
+            value = value * 10 + digit;
+            digits++;
+        }
+        return digits == 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    private static void skipLineBreaks(ByteBuffer in) {
+        while (in.hasRemaining() && (in.get(in.position()) == '\r' || in.get(in.position()) == '\n'))
+            in.get();
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static int parseInt(String token, Path file) throws IOException {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ": expected a number, found \"" + token + "\"");
+        }
+    }
+
+    private static double parseDouble(String token, Path file) throws IOException {
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ": expected a number, found \"" + token + "\"");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+    OffHeapArena -> Owns memory outside of the Java heap: direct buffers and
+    memory mapped files. Everything an arena handed out is released together
+    by close, instead of whenever the garbage collector gets to the buffer
+    objects, so a search over a huge map does not depend on the GC to give
+    gigabytes back.
+
+    Buffers are released through the JDK's cleaner for direct buffers when
+    it can be reached (sun.misc.Unsafe.invokeCleaner); otherwise close only
+    drops them and the GC frees them later. Touching a buffer of a closed
+    arena is a use after free, so the classes built on an arena check
+    isOpen on entry, and an arena must not be closed while another thread
+    is still using its memory.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class OffHeapArena implements AutoCloseable {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null; // released by the GC instead
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final List<ByteBuffer> buffers;
+    private long allocatedBytes;
+    private long mappedBytes;
+    private volatile boolean closed;
+
+    public OffHeapArena() {
+        buffers = new ArrayList<>();
+    }
+
+    /* A zeroed direct buffer of the given size, in native byte order */
+    public synchronized ByteBuffer allocate(int bytes) {
+        checkOpen();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        buffers.add(buffer);
+        allocatedBytes += bytes;
+        return buffer;
+    }
+
+    /* Maps bytes of file from position, growing the file if it is shorter.
+       Writes go straight to the file, so other processes mapping it see
+       them. The buffer is little endian whatever the platform */
+    public synchronized MappedByteBuffer map(Path file, long position, int bytes, boolean writable) throws IOException {
+        checkOpen();
+        StandardOpenOption[] options = writable
+            ? new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE}
+            : new StandardOpenOption[] {StandardOpenOption.READ};
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            // The mapping stays valid once the channel is closed
+            buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                                 position, bytes);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffers.add(buffer);
+        mappedBytes += bytes;
+        return buffer;
+    }
+
+    // Accessors
+    public boolean isOpen() {
+        return !closed;
+    }
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+    /* Whether close gives memory back at once, rather than leaving it to the GC */
+    public static boolean releasesOnClose() {
+        return INVOKE_CLEANER != null;
+    }
+
+    void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Off-heap arena is closed");
+    }
+
+    /* Releases every buffer of the arena. Mapped files are unmapped, their
+       contents stay on disk */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer buffer : buffers) {
+            if (INVOKE_CLEANER == null)
+                break;
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                break; // left to the GC
+            }
+        }
+        buffers.clear();
+        allocatedBytes = 0;
+        mappedBytes = 0;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+    OffHeapGridMap -> The obstacles of a grid, one bit per cell like GridMap,
+    but kept in an OffHeapArena instead of a long[] on the heap. The bits can
+    live in plain direct memory or in a memory mapped file, which several
+    processes can map at once to share (and edit) one map.
+
+    The file is a 16 byte header (MAGIC, FORMAT_VERSION, width, height)
+    followed by the obstacle words, all little endian, so a map written on
+    one machine maps on any other.
+
+    There are no terrain weights: every free cell costs 1, which is what
+    OffHeapSearchEngine searches.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public final class OffHeapGridMap {
+
+    private static final int MAGIC = 0x504F4847; // "POHG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final OffHeapArena arena;
+    private final int width;
+    private final int height;
+    private final LongBuffer words; // Set bits are obstacles, bit i of word w is cell 64w+i
+    private final MappedByteBuffer file; // null unless mapped
+
+    /* An empty map in direct memory */
+    public OffHeapGridMap(int width, int height, OffHeapArena arena) {
+        checkSize(width, height);
+        this.arena = arena;
+        this.width = width;
+        this.height = height;
+        words = arena.allocate(wordCount(width, height) * 8).asLongBuffer();
+        file = null;
+    }
+
+    private OffHeapGridMap(OffHeapArena arena, int width, int height, MappedByteBuffer file, int offset) {
+        this.arena = arena;
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        ByteBuffer body = file.duplicate().position(offset).slice().order(file.order());
+        words = body.asLongBuffer();
+    }
+
+    /* The obstacle words of another file format, already mapped (little
+       endian), such as the raw obstacles of a MapSnapshot */
+    static OffHeapGridMap wrap(OffHeapArena arena, int width, int height, MappedByteBuffer bits) {
+        checkSize(width, height);
+        if (bits.capacity() < wordCount(width, height) * 8L)
+            throw new IllegalArgumentException("Obstacle words do not cover the map");
+        return new OffHeapGridMap(arena, width, height, bits, 0);
+    }
+
+    /* Creates (or overwrites) file as an empty map and maps it */
+    public static OffHeapGridMap create(Path file, int width, int height, OffHeapArena arena) throws IOException {
+        checkSize(width, height);
+        Files.deleteIfExists(file);
+        MappedByteBuffer buffer = arena.map(file, 0, HEADER_BYTES + wordCount(width, height) * 8, true);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        return new OffHeapGridMap(arena, width, height, buffer, HEADER_BYTES);
+    }
+
+    /* Maps a file written by create, read only unless writable */
+    public static OffHeapGridMap open(Path file, boolean writable, OffHeapArena arena) throws IOException {
+        MappedByteBuffer header = arena.map(file, 0, HEADER_BYTES, false);
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("Not an off-heap map file");
+        if (header.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Unsupported off-heap map version " + header.getInt(4));
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        checkSize(width, height);
+        long bytes = HEADER_BYTES + (long) wordCount(width, height) * 8;
+        if (Files.size(file) < bytes)
+            throw new IOException("Off-heap map file is truncated");
+        return new OffHeapGridMap(arena, width, height, arena.map(file, 0, (int) bytes, writable), HEADER_BYTES);
+    }
+
+    /* An off-heap copy of the obstacles of map */
+    public static OffHeapGridMap copyOf(GridMap map, OffHeapArena arena) {
+        OffHeapGridMap copy = new OffHeapGridMap(map.getWidth(), map.getHeight(), arena);
+        CellBitSet obstacles = map.getObstacles();
+        for (int w = 0; w < obstacles.getWordCount(); w++)
+            copy.words.put(w, obstacles.getWord(w));
+        return copy;
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Grid dimensions must be positive");
+        if ((long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Grid has too many cells to index");
+    }
+
+    private static int wordCount(int width, int height) {
+        return (int) (((long) width * height + 63) >>> 6);
+    }
+
+    // Accessors
+    public int getWidth() {
+        return width;
+    }
+    public int getHeight() {
+        return height;
+    }
+    public int getCellCount() {
+        return width * height;
+    }
+    public boolean isMapped() {
+        return file != null;
+    }
+    public OffHeapArena getArena() {
+        return arena;
+    }
+
+    public int indexOf(int x, int y) {
+        return y * width + x;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public boolean isBlocked(int cell) {
+        arena.checkOpen();
+        return blocked(cell);
+    }
+
+    /* Cells outside of the grid are treated as obstacles */
+    public boolean isBlocked(int x, int y) {
+        return !inBounds(x, y) || isBlocked(indexOf(x, y));
+    }
+
+    public void setBlocked(int cell, boolean isBlocked) {
+        arena.checkOpen();
+        long word = words.get(cell >>> 6);
+        words.put(cell >>> 6, isBlocked ? word | 1L << cell : word & ~(1L << cell));
+    }
+    public void setBlocked(int x, int y, boolean isBlocked) {
+        setBlocked(indexOf(x, y), isBlocked);
+    }
+
+    /* Writes the changes to a mapped map through to its file */
+    public void force() {
+        arena.checkOpen();
+        if (file != null)
+            file.force();
+    }
+
+    /* isBlocked without the arena check, for the engine's inner loop */
+    boolean blocked(int cell) {
+        return (words.get(cell >>> 6) & (1L << cell)) != 0;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+    OffHeapIntArray -> An int array in an OffHeapArena. A single buffer is
+    limited to 2 GB, so the array is split into chunks of 2^28 ints and an
+    index picks its chunk with a shift and a mask. The ints start out 0.
+ */
+
+package pathfinding;
+
+import java.nio.IntBuffer;
+
+final class OffHeapIntArray {
+
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final IntBuffer[] chunks;
+    private final int length;
+
+    OffHeapIntArray(OffHeapArena arena, int length) {
+        this.length = length;
+        chunks = new IntBuffer[(int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int i = 0; i < chunks.length; i++) {
+            int ints = Math.min(CHUNK_MASK + 1, length - (i << CHUNK_SHIFT));
+            chunks[i] = arena.allocate(ints * 4).asIntBuffer();
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int index) {
+        return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    void set(int index, int value) {
+        chunks[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, value);
+    }
+
+    void fill(int value) {
+        for (IntBuffer chunk : chunks)
+            for (int i = 0; i < chunk.capacity(); i++)
+                chunk.put(i, value);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+    OffHeapSearchEngine -> A* over an OffHeapGridMap with all of its per-cell
+    state outside of the Java heap: g costs, parents, the open list (a binary
+    heap with each cell's position in it) and the f costs the heap is ordered
+    by. For a map of hundreds of millions of cells that is gigabytes the GC
+    never has to look at, so the heap stays the same size whatever the map
+    and the engine can search maps larger than the heap.
+
+    Like SearchEngine, the state is reused between queries: a stamp per cell
+    holds the query generation that last wrote it, negated once the cell is
+    closed, so nothing is cleared between queries. The memory belongs to the
+    engine's own arena and is released by close.
+
+    Costs and heuristic are SearchEngine's for a map without weights, so
+    both engines find paths of the same cost. Only plain A* is supported.
+    An engine instance is not thread safe; use one engine per thread.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class OffHeapSearchEngine implements AutoCloseable {
+
+    private OffHeapArena arena;
+    private OffHeapIntArray gCost;    // Distance from the start cell
+    private OffHeapIntArray parent;   // Preceding cell in the current best path
+    private OffHeapIntArray stamp;    // generation when seen, -generation once closed
+    private OffHeapIntArray fCost;    // Key of each open cell
+    private OffHeapIntArray heap;     // Open cells, heap[0] has the lowest (f, -g)
+    private OffHeapIntArray position; // Index of each open cell in heap
+    private int heapSize;
+    private int generation;
+    private int capacity;
+
+    private int[] path;  // Cells from start to target of the last search
+    private int pathLength;
+    private int pathCost;
+    private int expanded;
+
+    public OffHeapSearchEngine() {
+        arena = new OffHeapArena();
+        path = new int[64];
+    }
+
+    /* Searches from start to target (cell indices of map), true if a path
+       was found, which can then be read with getPath */
+    public boolean search(OffHeapGridMap map, int start, int target) {
+        map.getArena().checkOpen();
+        arena.checkOpen();
+        ensureCapacity(map.getCellCount());
+        beginQuery();
+
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int targetX = target % width;
+        int targetY = target / width;
+
+        visit(start, 0, -1);
+        insert(start, heuristic(start % width, start / width, targetX, targetY));
+        while (heapSize > 0) {
+            int current = pop();
+            if (current == target) {
+                buildPath(target);
+                return true;
+            }
+            stamp.set(current, -generation);
+            expanded++;
+
+            int currentX = current % width;
+            int currentY = current / width;
+            int currentG = gCost.get(current);
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i == 0 && j == 0)
+                        continue;
+                    int neighborX = currentX + i;
+                    int neighborY = currentY + j;
+                    if (neighborX < 0 || neighborX >= width ||
+                        neighborY < 0 || neighborY >= height)
+                        continue;
+                    int neighbor = neighborY * width + neighborX;
+                    if (map.blocked(neighbor))
+                        continue;
+
+                    int g = currentG + (i != 0 && j != 0 ? SearchEngine.DIAGONAL_COST : SearchEngine.STRAIGHT_COST);
+                    int state = stamp.get(neighbor);
+                    if (state != generation && state != -generation) {
+                        visit(neighbor, g, current);
+                        insert(neighbor, g + heuristic(neighborX, neighborY, targetX, targetY));
+                    } else if (state == generation && g < gCost.get(neighbor)) {
+                        fCost.set(neighbor, fCost.get(neighbor) - gCost.get(neighbor) + g);
+                        gCost.set(neighbor, g);
+                        parent.set(neighbor, current);
+                        siftUp(position.get(neighbor));
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Accessors for the results of the last search
+    public int[] getPath() { // Shared buffer, only the first getPathLength() cells are valid
+        return path;
+    }
+    public int getPathLength() {
+        return pathLength;
+    }
+    public int getPathCost() {
+        return pathLength == 0 ? -1 : pathCost;
+    }
+    public int getExpandedCount() {
+        return expanded;
+    }
+    /* Off-heap memory held for the per-cell state */
+    public long getOffHeapBytes() {
+        return arena.getAllocatedBytes();
+    }
+
+    /* Releases the off-heap state, the engine cannot search afterwards */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /* Same octile distance as SearchEngine */
+    private static int heuristic(int x, int y, int targetX, int targetY) {
+        int dx = Math.abs(targetX - x);
+        int dy = Math.abs(targetY - y);
+        return SearchEngine.STRAIGHT_COST * Math.max(dx, dy)
+             + (SearchEngine.DIAGONAL_COST - SearchEngine.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    /* Reallocates the state in a fresh arena when a larger map than before
+       is searched, releasing the old one at once */
+    private void ensureCapacity(int cellCount) {
+        if (capacity >= cellCount)
+            return;
+        arena.close();
+        arena = new OffHeapArena();
+        gCost = new OffHeapIntArray(arena, cellCount);
+        parent = new OffHeapIntArray(arena, cellCount);
+        stamp = new OffHeapIntArray(arena, cellCount);
+        fCost = new OffHeapIntArray(arena, cellCount);
+        heap = new OffHeapIntArray(arena, cellCount);
+        position = new OffHeapIntArray(arena, cellCount);
+        capacity = cellCount;
+        generation = 0;
+    }
+
+    /* Invalidates the data of the previous query by moving to a new generation */
+    private void beginQuery() {
+        generation++;
+        if (generation == Integer.MAX_VALUE) { // stale stamps could match once it wraps
+            stamp.fill(0);
+            generation = 1;
+        }
+        heapSize = 0;
+        pathLength = 0;
+        expanded = 0;
+    }
+
+    private void visit(int cell, int g, int parentCell) {
+        stamp.set(cell, generation);
+        gCost.set(cell, g);
+        parent.set(cell, parentCell);
+    }
+
+    private void insert(int cell, int f) {
+        fCost.set(cell, f);
+        heap.set(heapSize, cell);
+        position.set(cell, heapSize);
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int top = heap.get(0);
+        if (--heapSize > 0) {
+            heap.set(0, heap.get(heapSize));
+            position.set(heap.get(0), 0);
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /* Lower f first, then higher g, which is lower h for equal f */
+    private boolean less(int a, int b) {
+        int fa = fCost.get(a);
+        int fb = fCost.get(b);
+        return fa < fb || (fa == fb && gCost.get(a) > gCost.get(b));
+    }
+
+    private void siftUp(int i) {
+        int cell = heap.get(i);
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            int above = heap.get(up);
+            if (!less(cell, above))
+                break;
+            heap.set(i, above);
+            position.set(above, i);
+            i = up;
+        }
+        heap.set(i, cell);
+        position.set(cell, i);
+    }
+
+    private void siftDown(int i) {
+        int cell = heap.get(i);
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int below = heap.get(child);
+            if (child + 1 < heapSize && less(heap.get(child + 1), below))
+                below = heap.get(++child);
+            if (!less(below, cell))
+                break;
+            heap.set(i, below);
+            position.set(below, i);
+            i = child;
+        }
+        heap.set(i, cell);
+        position.set(cell, i);
+    }
+
+    /* Follows the parents back from the target into the shared path buffer */
+    private void buildPath(int target) {
+        int length = 0;
+        for (int cell = target; cell != -1; cell = parent.get(cell)) {
+            if (length == path.length)
+                path = Arrays.copyOf(path, length * 2);
+            path[length++] = cell;
+        }
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = path[i];
+            path[i] = path[j];
+            path[j] = tmp;
+        }
+        pathLength = length;
+        pathCost = gCost.get(target);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+    OpenList -> The priority queue of open cells used by SearchEngine, keyed
+    by (f, h) with the lowest f (then lowest h) popped first. IndexedHeap
+    works for any costs; BucketQueue is faster when the costs of a step come
+    from a small range, as on maps with a few terrain weights.
+ */
+
+package pathfinding;
+
+interface OpenList {
+
+    /* Lets cells 0 .. cellCount-1 be queued */
+    void ensureCapacity(int cellCount);
+
+    /* Empties the queue and resets the peak size */
+    void clear();
+
+    boolean isEmpty();
+    int size();
+    int getPeakSize(); // Most cells queued at once since clear
+
+    void insert(int cell, int f, int h);
+
+    /* Lowers the keys of a cell that is already queued */
+    void decreaseKey(int cell, int f, int h);
+
+    /* Removes and returns a cell with the lowest f. IndexedHeap breaks ties
+       by the lowest h, BucketQueue by the most recently queued cell */
+    int pop();
+}
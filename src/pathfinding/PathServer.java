@@ -0,0 +1,281 @@
+/*
+    PathServer -> Runs the path finder as a headless HTTP service on the
+    JDK's built-in server, for programs that want paths without the Swing
+    application. It loads one Moving AI map and answers queries through a
+    PathService, which batches concurrent queries and rejects them once its
+    queue is full.
+
+        java pathfinding.PathServer <file.map> [ASTAR|JPS|JPS_PLUS|ALT] [-port 8080] [-threads n]
+                                    [-handlers n] [-queue 1024] [-batch 64] [-linger 200]
+
+    -threads is the number of search workers (default one per core),
+    -handlers the number of HTTP threads, -queue the most queries waiting at
+    once, -batch the most queries solved together and -linger how many
+    microseconds a batch waits for more queries.
+
+        GET /path?sx=1&sy=2&tx=30&ty=40
+            200 {"found":true,"cost":412,"length":31,"path":[1,2,2,3,...]}
+                the path as x,y pairs from start to target, "found":false
+                and an empty path if there is none
+            400 for missing or invalid coordinates, or a blocked cell
+            503 with Retry-After when the queue is full
+        GET /metrics
+            counters, throughput and latency percentiles as text, one
+            "name value" per line
+
+    A path is answered from the dispatcher thread's callback by handing the
+    response to the HTTP threads, so no thread blocks waiting for a batch.
+ */
+
+package pathfinding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public final class PathServer {
+
+    private static final int STOP_GRACE = 5; // Seconds stop waits for responses in flight
+
+    private final HttpServer server;
+    private final PathService service;
+    private final ExecutorService handlers;
+
+    /* Counters at the last /metrics request, for the recent throughput */
+    private long lastCompleted;
+    private long lastNanos;
+
+    public PathServer(PathService pathService, int port, int handlerThreads) throws IOException {
+        service = pathService;
+        handlers = Executors.newFixedThreadPool(handlerThreads);
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/path", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePath(exchange);
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "text/plain", metrics());
+            }
+        });
+        lastNanos = System.nanoTime();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /* Answers the queued queries, rejecting new ones with 503 meanwhile,
+       then stops accepting connections, giving the responses still being
+       written up to STOP_GRACE seconds, and shuts down */
+    public void stop() {
+        service.close();
+        server.stop(STOP_GRACE);
+        handlers.shutdown();
+        try {
+            handlers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handlePath(final HttpExchange exchange) throws IOException {
+        GridMap map = service.getMap();
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        int sx = intParameter(parameters, "sx");
+        int sy = intParameter(parameters, "sy");
+        int tx = intParameter(parameters, "tx");
+        int ty = intParameter(parameters, "ty");
+        if (!map.inBounds(sx, sy) || !map.inBounds(tx, ty)) {
+            send(exchange, 400, "application/json", "{\"error\":\"sx, sy, tx and ty must be cells of the "
+                 + map.getWidth() + " x " + map.getHeight() + " map\"}");
+            return;
+        }
+        if (map.isBlocked(sx, sy) || map.isBlocked(tx, ty)) {
+            send(exchange, 400, "application/json", "{\"error\":\"start or target is blocked\"}");
+            return;
+        }
+
+        boolean queued = service.submit(map.indexOf(sx, sy), map.indexOf(tx, ty), new PathService.Callback() {
+            public void completed(BatchResult result, int query) {
+                final String body = pathJson(result, query);
+                handlers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            send(exchange, 200, "application/json", body);
+                        } catch (IOException e) {
+                            exchange.close(); // the client went away
+                        }
+                    }
+                });
+            }
+
+            public void failed(RuntimeException error) {
+                handlers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            send(exchange, 500, "application/json", "{\"error\":\"search failed\"}");
+                        } catch (IOException e) {
+                            exchange.close();
+                        }
+                    }
+                });
+            }
+        });
+        if (!queued) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, "application/json", "{\"error\":\"saturated\"}");
+        }
+    }
+
+    private String pathJson(BatchResult result, int query) {
+        GridMap map = service.getMap();
+        int length = result.getPathLength(query);
+        StringBuilder json = new StringBuilder(32 + 16 * length);
+        json.append("{\"found\":").append(result.isFound(query))
+            .append(",\"cost\":").append(result.getCost(query))
+            .append(",\"length\":").append(length)
+            .append(",\"path\":[");
+        for (int step = 0; step < length; step++) {
+            int cell = result.getPathCell(query, step);
+            if (step > 0)
+                json.append(',');
+            json.append(map.xOf(cell)).append(',').append(map.yOf(cell));
+        }
+        return json.append("]}").toString();
+    }
+
+    /* "name value" lines. The recent throughput covers the time since the
+       previous /metrics request */
+    private synchronized String metrics() {
+        long now = System.nanoTime();
+        long completed = service.getCompleted();
+        double recent = (completed - lastCompleted) / ((now - lastNanos) / 1e9);
+        lastCompleted = completed;
+        lastNanos = now;
+
+        LatencyHistogram latency = service.getLatency();
+        long batches = service.getBatches();
+        StringBuilder text = new StringBuilder();
+        line(text, "uptime_ms", String.format("%.0f", service.getUptimeMillis()));
+        line(text, "received", service.getReceived());
+        line(text, "rejected", service.getRejected());
+        line(text, "completed", completed);
+        line(text, "found", service.getFound());
+        line(text, "failed_batches", service.getFailedBatches());
+        line(text, "failed_callbacks", service.getFailedCallbacks());
+        line(text, "batches", batches);
+        line(text, "mean_batch_size", String.format("%.2f", batches == 0 ? 0.0 : (double) completed / batches));
+        line(text, "queue_depth", service.getQueueDepth());
+        line(text, "queue_capacity", service.getQueueCapacity());
+        line(text, "throughput_per_s", String.format("%.1f", completed / (service.getUptimeMillis() / 1e3)));
+        line(text, "recent_throughput_per_s", String.format("%.1f", recent));
+        line(text, "latency_mean_us", String.format("%.1f", latency.getMeanNanos() / 1e3));
+        line(text, "latency_p50_us", latency.getPercentileNanos(50) / 1000);
+        line(text, "latency_p90_us", latency.getPercentileNanos(90) / 1000);
+        line(text, "latency_p99_us", latency.getPercentileNanos(99) / 1000);
+        line(text, "latency_p999_us", latency.getPercentileNanos(99.9) / 1000);
+        line(text, "latency_max_us", latency.getMaxNanos() / 1000);
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, Object value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                parameters.put(pair.substring(0, equals), pair.substring(equals + 1));
+        }
+        return parameters;
+    }
+
+    /* The parameter as an int, or -1 (outside of any map) if it is missing or not a number */
+    private static int intParameter(Map<String, String> parameters, String name) {
+        try {
+            return Integer.parseInt(parameters.get(name));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java pathfinding.PathServer <file.map> [ASTAR|JPS|JPS_PLUS|ALT] [-port 8080]"
+                               + " [-threads n] [-handlers n] [-queue 1024] [-batch 64] [-linger 200]");
+            System.exit(2);
+        }
+        Algorithm algorithm = Algorithm.ASTAR;
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int handlerThreads = 2 * threads;
+        int queue = 1024;
+        int batch = 64;
+        int linger = 200;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("-") && i + 1 < args.length) {
+                int value = Integer.parseInt(args[i + 1]);
+                switch (args[i]) {
+                    case "-port": port = value; break;
+                    case "-threads": threads = value; break;
+                    case "-handlers": handlerThreads = value; break;
+                    case "-queue": queue = value; break;
+                    case "-batch": batch = value; break;
+                    case "-linger": linger = value; break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        System.exit(2);
+                }
+                i++;
+            } else {
+                algorithm = Algorithm.valueOf(args[i]);
+            }
+        }
+
+        long loadBegin = System.nanoTime();
+        GridMap map = MovingAiFormat.readMap(Paths.get(args[0]));
+        PathService service = new PathService(map, algorithm, threads, queue, batch, linger);
+        final PathServer server = new PathServer(service, port, handlerThreads);
+        server.start();
+        System.out.printf("%s: %d x %d, %s, loaded in %.1f ms, listening on port %d%n", args[0], map.getWidth(),
+                          map.getHeight(), algorithm, (System.nanoTime() - loadBegin) / 1e6, server.getPort());
+        System.out.printf("%d search threads, %d HTTP threads, queue %d, batches of up to %d, linger %d us%n",
+                          threads, handlerThreads, queue, batch, linger);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                server.stop();
+            }
+        }));
+    }
+}
@@ -0,0 +1,242 @@
+/*
+    PathService -> Answers path queries arriving one at a time from many
+    threads by running them in micro-batches on a BatchSearch. A submitted
+    query waits in a bounded queue; a dispatcher thread takes the first
+    waiting query, lingers briefly for more to arrive, and solves up to
+    maxBatch of them together on the worker pool. Under light load a query
+    waits at most the linger time, under heavy load batches fill up at once
+    and the per-query overhead of handing work to the pool is shared.
+
+    When the queue is full submit rejects the query at once instead of
+    blocking, so a saturated service pushes back on its callers rather than
+    building up an unbounded backlog.
+
+    Counters and a latency histogram (from submit to the callback) are kept
+    for monitoring; a callback that throws is counted and reported on
+    System.err. A batch whose search throws is reported there too, each of
+    its queries is told through Callback.failed, and the dispatcher goes on
+    with the next batch. The map must not be edited while the service runs.
+ */
+
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class PathService implements AutoCloseable {
+
+    /* Receives the answer to a query, on the dispatcher thread. result is
+       shared by the whole batch, query is this query's index in it. failed
+       is called instead when the search of the query's batch threw */
+    public interface Callback {
+        void completed(BatchResult result, int query);
+        void failed(RuntimeException error);
+    }
+
+    private final GridMap map;
+    private final BatchSearch batchSearch;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Thread dispatcher;
+    private volatile boolean running;
+
+    private final long startNanos;
+    private final LongAdder received;
+    private final LongAdder rejected;
+    private final LongAdder completed;
+    private final LongAdder found;
+    private final LongAdder batches;
+    private final LongAdder failedBatches;
+    private final LongAdder failedCallbacks;
+    private final LatencyHistogram latency;
+
+    public PathService(GridMap gridMap, Algorithm algorithm, int threads, int queueCapacity,
+                       int maxBatchSize, long lingerMicros) {
+        if (queueCapacity <= 0 || maxBatchSize <= 0 || lingerMicros < 0)
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive");
+        map = gridMap;
+        batchSearch = new BatchSearch(gridMap, algorithm, threads);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        maxBatch = maxBatchSize;
+        lingerNanos = lingerMicros * 1000;
+        startNanos = System.nanoTime();
+        received = new LongAdder();
+        rejected = new LongAdder();
+        completed = new LongAdder();
+        found = new LongAdder();
+        batches = new LongAdder();
+        failedBatches = new LongAdder();
+        failedCallbacks = new LongAdder();
+        latency = new LatencyHistogram();
+
+        running = true;
+        dispatcher = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, "path-service-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /* Queues a query from start to target (cell indices of the map).
+       Returns false, and never calls back, if the queue is full */
+    public boolean submit(int start, int target, Callback callback) {
+        if (start < 0 || start >= map.getCellCount() || target < 0 || target >= map.getCellCount())
+            throw new IllegalArgumentException("Cell outside of the map");
+        received.increment();
+        if (!running || !queue.offer(new Pending(start, target, callback, System.nanoTime()))) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // Accessors
+    public GridMap getMap() {
+        return map;
+    }
+    public long getReceived() {
+        return received.sum();
+    }
+    public long getRejected() {
+        return rejected.sum();
+    }
+    public long getCompleted() {
+        return completed.sum();
+    }
+    public long getFound() {
+        return found.sum();
+    }
+    public long getBatches() {
+        return batches.sum();
+    }
+    /* Batches whose search threw */
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+    /* Callbacks that threw */
+    public long getFailedCallbacks() {
+        return failedCallbacks.sum();
+    }
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+    /* Milliseconds since the service started */
+    public double getUptimeMillis() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+    /* Time from submit to the callback of every completed query */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /* Stops taking queries; the ones still queued are answered first */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> late = new ArrayList<>(); // offered by a submit that saw running just before it was cleared
+        queue.drainTo(late);
+        for (int from = 0; from < late.size(); from += maxBatch)
+            solve(late.subList(from, Math.min(from + maxBatch, late.size())));
+        batchSearch.close();
+    }
+
+    /* The dispatcher thread: collects a batch, solves it, answers it */
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() == maxBatch || wait <= 0)
+                        break;
+                    Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            solve(batch);
+            batch.clear();
+        }
+    }
+
+    private void solve(List<Pending> batch) {
+        int[] queries = new int[2 * batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            queries[2 * i] = batch.get(i).start;
+            queries[2 * i + 1] = batch.get(i).target;
+        }
+        BatchResult result;
+        try {
+            result = batchSearch.solve(queries);
+        } catch (RuntimeException e) { // one failing batch must not stop the service
+            failedBatches.increment();
+            System.err.println("PathService: batch of " + batch.size() + " queries failed: " + e);
+            for (Pending pending : batch) {
+                try {
+                    pending.callback.failed(e);
+                } catch (RuntimeException callbackError) {
+                    failedCallbacks.increment();
+                    System.err.println("PathService: callback of query " + pending.start + " -> " + pending.target
+                                       + " failed: " + callbackError);
+                }
+            }
+            return;
+        }
+        batches.increment();
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            latency.record(now - pending.submitNanos);
+            completed.increment();
+            if (result.isFound(i))
+                found.increment();
+            try {
+                pending.callback.completed(result, i);
+            } catch (RuntimeException e) { // one failing caller must not stop the service
+                failedCallbacks.increment();
+                System.err.println("PathService: callback of query " + pending.start + " -> " + pending.target
+                                   + " failed: " + e);
+            }
+        }
+    }
+
+    /* A query waiting in the queue */
+    private static final class Pending {
+        final int start;
+        final int target;
+        final Callback callback;
+        final long submitNanos;
+
+        Pending(int startCell, int targetCell, Callback queryCallback, long submitted) {
+            start = startCell;
+            target = targetCell;
+            callback = queryCallback;
+            submitNanos = submitted;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+    ReservationTable -> Which agent occupies which cell at which tick, shared
+    by the agents of a CooperativePlanner. An agent that plans after others
+    treats their reserved (cell, tick) pairs as obstacles in time, and may
+    not swap cells with an agent between two ticks either.
+
+    The pairs live in a primitive hash map keyed by the tick in the high
+    half of a long and the cell in the low half.
+ */
+
+package pathfinding;
+
+public final class ReservationTable {
+
+    public static final int FREE = -1;
+
+    private final LongIntMap owners;
+
+    public ReservationTable() {
+        owners = new LongIntMap(1024);
+    }
+
+    private static long key(int cell, int tick) {
+        return (long) tick << 32 | (cell & 0xFFFFFFFFL);
+    }
+
+    /* Reserves cell at tick for agent, false if another agent has it */
+    public boolean reserve(int cell, int tick, int agent) {
+        int owner = ownerOf(cell, tick);
+        if (owner != FREE && owner != agent)
+            return false;
+        owners.put(key(cell, tick), agent);
+        return true;
+    }
+
+    /* Gives up agent's hold on cell at tick, if it has one */
+    public void release(int cell, int tick, int agent) {
+        if (ownerOf(cell, tick) == agent)
+            owners.put(key(cell, tick), FREE);
+    }
+
+    /* The agent holding cell at tick, or FREE */
+    public int ownerOf(int cell, int tick) {
+        return owners.get(key(cell, tick), FREE);
+    }
+
+    /* Whether agent can be on cell at tick */
+    public boolean isFree(int cell, int tick, int agent) {
+        int owner = ownerOf(cell, tick);
+        return owner == FREE || owner == agent;
+    }
+
+    /* Whether agent can move from cell at tick to next at tick + 1: next must
+       be free then, and no other agent may be making the opposite move */
+    public boolean canMove(int cell, int next, int tick, int agent) {
+        if (!isFree(next, tick + 1, agent))
+            return false;
+        int other = ownerOf(next, tick);
+        return other == FREE || other == agent || ownerOf(cell, tick + 1) != other;
+    }
+
+    public int size() {
+        return owners.size();
+    }
+
+    /* Drops every reservation, before the next window is planned */
+    public void clear() {
+        owners.clear();
+    }
+}
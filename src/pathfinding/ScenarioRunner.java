@@ -0,0 +1,223 @@
+/*
+    ScenarioRunner -> Headless command line runner for Moving AI benchmark
+    scenarios. It loads a .scen file and its map, runs every query through a
+    SearchEngine and prints, per query, the path length found against the
+    reference optimum, the cells expanded and the time taken, followed by a
+    summary with the throughput.
+
+        java pathfinding.ScenarioRunner <file.scen> [file.map] [ASTAR|JPS|JPS_PLUS|ALT]
+                                        [-csv out.csv] [-json out.json] [-landmarks file] [-corners]
+
+    -csv and -json also write the SearchMetrics of every measured query to
+    a file. With ALT, -landmarks reads the landmark table from the file, or
+    builds it and saves it there if the file does not exist yet. Without a map argument the map named in the scenario file is
+    looked up next to the .scen file.
+
+    The benchmark's reference lengths forbid cutting corners, so queries are
+    searched without corner cutting (which makes JPS and JPS+ run plain A*)
+    and any length other than the reference is an error. -corners searches
+    with the engine's default corner cutting instead; paths may then come
+    out shorter than the reference, and such queries are counted apart from
+    exact matches, while a longer path or a missing one is still an error.
+    All queries are run once to warm up before the measured run.
+
+    The engine costs a diagonal step 14 against 10 for a straight one, a
+    little under 10 sqrt 2, so the path it finds can be longer than the
+    optimum by up to 0.0142 per diagonal step it takes. Longer paths within
+    that bound are counted as rounding, apart from real errors.
+ */
+
+package pathfinding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class ScenarioRunner {
+
+    private static final double TOLERANCE = 1e-3; // The files round lengths to 8 digits
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final double DIAGONAL_ERROR = SQRT2 - SearchEngine.DIAGONAL_COST
+                                                         / (double) SearchEngine.STRAIGHT_COST;
+
+    private ScenarioRunner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java pathfinding.ScenarioRunner <file.scen> [file.map] [ASTAR|JPS|JPS_PLUS|ALT]"
+                               + " [-csv out.csv] [-json out.json] [-landmarks file] [-corners]");
+            System.exit(2);
+        }
+        Path scenFile = Paths.get(args[0]);
+        ScenarioSet scenarios = MovingAiFormat.readScenarios(scenFile);
+        if (scenarios.size() == 0) {
+            System.err.println(scenFile + ": no scenarios");
+            System.exit(1);
+        }
+
+        Algorithm algorithm = Algorithm.ASTAR;
+        Path mapFile = null;
+        Path landmarkFile = null;
+        boolean cutCorners = false;
+        List<MetricsWriter> metricsOut = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if ((args[i].equals("-csv") || args[i].equals("-json")) && i + 1 < args.length) {
+                metricsOut.add(new MetricsWriter(Files.newBufferedWriter(Paths.get(args[i + 1]), StandardCharsets.UTF_8),
+                                               args[i].equals("-csv") ? MetricsWriter.Format.CSV
+                                                                      : MetricsWriter.Format.JSON));
+                i++;
+            } else if (args[i].equals("-landmarks") && i + 1 < args.length) {
+                landmarkFile = Paths.get(args[++i]);
+            } else if (args[i].equals("-corners")) {
+                cutCorners = true;
+            } else if (isAlgorithm(args[i])) {
+                algorithm = Algorithm.valueOf(args[i]);
+            } else {
+                mapFile = Paths.get(args[i]);
+            }
+        }
+        if (mapFile == null)
+            mapFile = findMap(scenFile, scenarios.getMapName());
+
+        long loadBegin = System.nanoTime();
+        GridMap map = MovingAiFormat.readMap(mapFile);
+        double loadMillis = (System.nanoTime() - loadBegin) / 1e6;
+        System.out.printf("%s: %d x %d, loaded in %.1f ms, %d scenarios, %s, %s%n",
+                          mapFile, map.getWidth(), map.getHeight(), loadMillis, scenarios.size(), algorithm,
+                          cutCorners ? "cutting corners" : "no corner cutting");
+
+        SearchEngine engine = new SearchEngine();
+        engine.setAlgorithm(algorithm);
+        engine.setCornerCutting(cutCorners);
+        if (algorithm == Algorithm.ALT && landmarkFile != null)
+            engine.setLandmarkTable(loadLandmarks(map, landmarkFile));
+        long prepareBegin = System.nanoTime();
+        engine.prepare(map);
+        if (algorithm == Algorithm.ALT || (algorithm == Algorithm.JPS_PLUS && cutCorners))
+            System.out.printf("precomputed in %.1f ms%n", (System.nanoTime() - prepareBegin) / 1e6);
+        run(engine, map, scenarios, false, Collections.<MetricsWriter>emptyList()); // warm up
+        run(engine, map, scenarios, true, metricsOut);
+        for (MetricsWriter writer : metricsOut)
+            writer.close();
+    }
+
+    /* Runs every scenario, printing the results if report is set */
+    private static void run(SearchEngine engine, GridMap map, ScenarioSet scenarios, boolean report,
+                            List<MetricsWriter> metricsOut) throws IOException {
+        int matched = 0, shorter = 0, rounded = 0, wrong = 0, missing = 0;
+        long expanded = 0;
+        long totalNanos = 0;
+        if (report)
+            System.out.println("id\tbucket\toptimal\tlength\tstatus\texpanded\tmicros");
+
+        for (int i = 0; i < scenarios.size(); i++) {
+            int start = map.indexOf(scenarios.getStartX(i), scenarios.getStartY(i));
+            int target = map.indexOf(scenarios.getTargetX(i), scenarios.getTargetY(i));
+            boolean found = engine.search(map, start, target);
+            long nanos = engine.getMetrics().getNanos();
+            totalNanos += nanos;
+            expanded += engine.getExpandedCount();
+            for (MetricsWriter writer : metricsOut)
+                writer.write(i, engine.getMetrics());
+
+            double optimal = scenarios.getOptimalLength(i);
+            int diagonal = found ? diagonalSteps(map, engine.getPath(), engine.getPathLength()) : 0;
+            double length = found ? engine.getPathLength() - 1 - diagonal + diagonal * SQRT2 : -1;
+            String status;
+            if (!found) {
+                status = "NO PATH";
+                missing++;
+            } else if (Math.abs(length - optimal) <= TOLERANCE) {
+                status = "ok";
+                matched++;
+            } else if (length < optimal && engine.isCornerCutting()) {
+                status = "shorter";
+                shorter++;
+            } else if (length < optimal) {
+                status = "SHORTER"; // below the optimum under the benchmark's own rule
+                wrong++;
+            } else if (length - optimal <= diagonal * DIAGONAL_ERROR + TOLERANCE) {
+                status = "rounding"; // optimal under the engine's 10/14 costs
+                rounded++;
+            } else {
+                status = "LONGER";
+                wrong++;
+            }
+            if (report)
+                System.out.printf("%d\t%d\t%.4f\t%.4f\t%s\t%d\t%.1f%n", i, scenarios.getBucket(i),
+                                  optimal, length, status, engine.getExpandedCount(), nanos / 1e3);
+        }
+
+        if (report) {
+            int count = scenarios.size();
+            if (engine.isCornerCutting())
+                System.out.printf("%d queries: %d optimal, %d shorter (corner cutting), %d within 10/14 rounding,"
+                                  + " %d longer, %d without a path%n",
+                                  count, matched, shorter, rounded, wrong, missing);
+            else
+                System.out.printf("%d queries: %d optimal, %d within 10/14 rounding, %d wrong length,"
+                                  + " %d without a path%n",
+                                  count, matched, rounded, wrong, missing);
+            System.out.printf("total %.1f ms, mean %.1f us/query, %.0f queries/s, mean %.0f cells expanded%n",
+                              totalNanos / 1e6, totalNanos / 1e3 / count, count / (totalNanos / 1e9),
+                              (double) expanded / count);
+        }
+    }
+
+    /* Reads the landmark table of map from file, or builds it and writes
+       it there the first time */
+    private static LandmarkTable loadLandmarks(GridMap map, Path file) throws IOException {
+        long begin = System.nanoTime();
+        LandmarkTable table;
+        String action;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                table = LandmarkTable.read(in, map);
+            }
+            action = "read from";
+        } else {
+            table = new LandmarkTable(map, LandmarkTable.DEFAULT_COUNT);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                table.write(out);
+            }
+            action = "built and written to";
+        }
+        System.out.printf("%d landmarks %s %s in %.1f ms%n", table.getCount(), action, file,
+                          (System.nanoTime() - begin) / 1e6);
+        return table;
+    }
+
+    /* Diagonal steps of a path; the others are straight steps of length 1 */
+    private static int diagonalSteps(GridMap map, int[] path, int length) {
+        int diagonal = 0;
+        for (int i = 1; i < length; i++)
+            if (map.xOf(path[i]) != map.xOf(path[i - 1]) && map.yOf(path[i]) != map.yOf(path[i - 1]))
+                diagonal++;
+        return diagonal;
+    }
+
+    private static boolean isAlgorithm(String name) {
+        for (Algorithm algorithm : Algorithm.values())
+            if (algorithm.name().equals(name))
+                return true;
+        return false;
+    }
+
+    /* The scenario file names its map relative to the benchmark set, try
+       that path and then just the file name next to the .scen file */
+    private static Path findMap(Path scenFile, String mapName) {
+        Path directory = scenFile.toAbsolutePath().getParent();
+        Path named = directory.resolve(mapName);
+        if (Files.exists(named))
+            return named;
+        return directory.resolve(Paths.get(mapName).getFileName());
+    }
+}
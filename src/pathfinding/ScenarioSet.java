@@ -0,0 +1,90 @@
+/*
+    ScenarioSet -> The queries of a Moving AI .scen file, stored as parallel
+    primitive arrays: bucket, start and target coordinates, and the optimal
+    path length the benchmark reports for each query. Reference lengths are
+    octile distances (straight step 1, diagonal step sqrt 2).
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class ScenarioSet {
+
+    private String mapName;   // Map file named by the first scenario
+    private int mapWidth, mapHeight;
+    private int size;
+    private int[] buckets;
+    private int[] coordinates; // startX, startY, targetX, targetY per scenario
+    private double[] optimalLengths;
+
+    ScenarioSet() {
+        buckets = new int[64];
+        coordinates = new int[64 * 4];
+        optimalLengths = new double[64];
+    }
+
+    void add(String map, int width, int height, int bucket,
+             int startX, int startY, int targetX, int targetY, double optimalLength) {
+        if (size == 0) {
+            mapName = map;
+            mapWidth = width;
+            mapHeight = height;
+        }
+        if (size == buckets.length) {
+            buckets = Arrays.copyOf(buckets, size * 2);
+            coordinates = Arrays.copyOf(coordinates, size * 8);
+            optimalLengths = Arrays.copyOf(optimalLengths, size * 2);
+        }
+        buckets[size] = bucket;
+        coordinates[size * 4] = startX;
+        coordinates[size * 4 + 1] = startY;
+        coordinates[size * 4 + 2] = targetX;
+        coordinates[size * 4 + 3] = targetY;
+        optimalLengths[size] = optimalLength;
+        size++;
+    }
+
+    // Accessors
+    public int size() {
+        return size;
+    }
+    public String getMapName() {
+        return mapName;
+    }
+    public int getMapWidth() {
+        return mapWidth;
+    }
+    public int getMapHeight() {
+        return mapHeight;
+    }
+    public int getBucket(int i) {
+        return buckets[i];
+    }
+    public int getStartX(int i) {
+        return coordinates[i * 4];
+    }
+    public int getStartY(int i) {
+        return coordinates[i * 4 + 1];
+    }
+    public int getTargetX(int i) {
+        return coordinates[i * 4 + 2];
+    }
+    public int getTargetY(int i) {
+        return coordinates[i * 4 + 3];
+    }
+    public double getOptimalLength(int i) {
+        return optimalLengths[i];
+    }
+
+    /* The scenarios as cells of map, packed {start0, target0, start1, ...}
+       like BatchSearch expects */
+    public int[] toQueries(GridMap map) {
+        int[] queries = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            queries[i * 2] = map.indexOf(getStartX(i), getStartY(i));
+            queries[i * 2 + 1] = map.indexOf(getTargetX(i), getTargetY(i));
+        }
+        return queries;
+    }
+}
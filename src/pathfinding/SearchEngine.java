@@ -0,0 +1,523 @@
+/*
+    SearchEngine -> A headless A* search over a GridMap, optionally using
+    Jump Point Search (see Algorithm) to expand fewer cells. Every cell is an int
+    index, and the per-cell search data (g cost, parent, open/closed state)
+    lives in flat arrays that are sized to the largest map seen so far and
+    reused by every query. Instead of clearing those arrays between queries,
+    each cell remembers the query "generation" it was last written in, and
+    the closed set is a CellBitSet that only clears the words the previous
+    query touched, so a warmed up engine allocates nothing.
+
+    With a ComponentIndex that is up to date for the searched map, a query
+    whose start and target lie in different regions fails at once instead
+    of expanding every cell reachable from the start.
+
+    A query can also be run for a SearchHandle, which the search polls so
+    that a cancel or the handle's deadline stops it promptly, and which
+    receives a copy of the path. cancel on the engine only stops a search
+    that is already running, a handle can be cancelled before its search
+    starts as well.
+
+    ALT is A* with the larger of the octile distance and a LandmarkTable
+    lower bound as its heuristic.
+
+    On a map with terrain weights entering a cell costs the step cost times
+    the cell's weight. Jump Point Search assumes uniform costs, so weighted
+    maps are searched with plain A* instead (the metrics record ASTAR), and
+    while the weights stay at or below BUCKET_QUEUE_MAX_WEIGHT the open list
+    is a BucketQueue rather than the heap.
+
+    A diagonal step normally only needs its destination free, so paths cut
+    the corners of obstacles. With setCornerCutting(false) it also needs
+    both cells beside it free, the rule of the Moving AI benchmarks; Jump
+    Point Search prunes for the first rule only, so such queries run plain
+    A* as on weighted maps. The octile, landmark and region bounds all hold
+    for the stricter rule as well.
+
+    An engine instance is not thread safe; use one engine per thread.
+ */
+
+package pathfinding;
+
+import java.util.Arrays;
+
+public final class SearchEngine {
+
+    /* Movement costs, scaled by 10 so a diagonal step (~14.14) stays an int */
+    public static final int STRAIGHT_COST = 10;
+    public static final int DIAGONAL_COST = 14;
+
+    /* Highest map weight for which the open list is a BucketQueue, which
+       needs a bucket per f value a single step can add */
+    static final int BUCKET_QUEUE_MAX_WEIGHT = 16;
+
+    private static final int DEADLINE_CHECK_INTERVAL = 256; // Expansions between clock reads
+
+    /* Cell states reported by getCellState */
+    public static final byte UNSEEN = 0;
+    public static final byte OPEN = 1;
+    public static final byte CLOSED = 2;
+
+    private int[] gCost;    // Distance from the start cell
+    private int[] parent;   // Preceding cell in the current best path
+    private CellBitSet closed; // Expanded cells, a seen cell that is not closed is open
+    private int[] stamp;    // Generation in which the cell's data was written
+    private int generation; // Current query number
+
+    private final IndexedHeap heap;      // Open list for any costs
+    private final BucketQueue buckets;   // Open list for weighted maps with few weights
+    private OpenList openSites;          // The one in use by the current query
+    private boolean useBuckets;          // Lets BucketQueue be used at all
+
+    private int[] path;     // Cells from start to target of the last search
+    private int pathLength;
+    private final SearchMetrics metrics; // Counters of the last query
+
+    private Algorithm algorithm;
+    private boolean cornerCutting;       // Whether a diagonal step may pass a blocked cell beside it
+    private JumpTable jumpTable; // Built for JPS_PLUS, rebuilt when the map changes
+    private LandmarkTable landmarkTable; // Built for ALT, rebuilt when the map changes
+    private LandmarkTable landmarks;     // landmarkTable while an ALT query runs, else null
+    private ComponentIndex components;   // Optional, rejects queries across regions
+
+    private SearchListener listener;
+    private volatile boolean cancelled;
+    private SearchHandle handle;         // Query of the current search, if run for one
+    private int sinceCheck;              // Expansions since handle's deadline was checked
+
+    public SearchEngine() {
+        gCost = new int[0];
+        parent = new int[0];
+        closed = new CellBitSet(0);
+        stamp = new int[0];
+        heap = new IndexedHeap();
+        buckets = new BucketQueue();
+        openSites = heap;
+        useBuckets = true;
+        path = new int[64];
+        metrics = new SearchMetrics();
+        algorithm = Algorithm.ASTAR;
+        cornerCutting = true;
+    }
+
+    public void setListener(SearchListener searchListener) {
+        listener = searchListener;
+    }
+
+    /* Requests that a running search stops at its next iteration */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void setAlgorithm(Algorithm searchAlgorithm) {
+        algorithm = searchAlgorithm;
+    }
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /* Whether diagonal steps may cut the corner of an obstacle (the default) */
+    public void setCornerCutting(boolean allowed) {
+        cornerCutting = allowed;
+    }
+    public boolean isCornerCutting() {
+        return cornerCutting;
+    }
+
+    /* Turns the BucketQueue off, so weighted maps use the heap too, for comparisons */
+    void setBucketQueueEnabled(boolean enabled) {
+        useBuckets = enabled;
+    }
+
+    /* Builds whatever the current algorithm precomputes for a map (the JPS+
+       jump table or the ALT landmarks). search does this on demand, calling
+       prepare up front keeps that cost out of the first query */
+    public void prepare(GridMap map) {
+        if (algorithm == Algorithm.JPS_PLUS && !map.isWeighted() && cornerCutting &&
+            (jumpTable == null || !jumpTable.isFor(map)))
+            jumpTable = new JumpTable(map);
+        if (algorithm == Algorithm.ALT && (landmarkTable == null || !landmarkTable.isFor(map)))
+            landmarkTable = new LandmarkTable(map, LandmarkTable.DEFAULT_COUNT);
+    }
+
+    /* Lets several engines searching the same map share one jump table */
+    public void setJumpTable(JumpTable table) {
+        jumpTable = table;
+    }
+    /* Likewise for ALT, also used to search with a table read from disk */
+    public void setLandmarkTable(LandmarkTable table) {
+        landmarkTable = table;
+    }
+
+    /* Lets queries on the index's map be rejected when the target is cut
+       off. Ignored for other maps, or once the map changed without the
+       index being told */
+    public void setComponentIndex(ComponentIndex index) {
+        components = index;
+    }
+
+    /* Runs the selected algorithm from start to target (both cell indices of
+       map). Returns true if a path was found, which can then be read with getPath.
+       The counters of the query are kept in getMetrics and, while a flight
+       recording is on, committed as a SearchEvent */
+    public boolean search(GridMap map, int start, int target) {
+        prepare(map);
+        return measure(map, start, target);
+    }
+
+    /* Runs the query of a handle, unless it was cancelled or expired before
+       it started. The handle is completed with a copy of the path, or with
+       no path. If the handle is stopped while the search runs, the search
+       returns false at its next check and the handle keeps its status */
+    public boolean search(GridMap map, SearchHandle query) {
+        if (!query.begin())
+            return false;
+        prepare(map);
+        handle = query;
+        sinceCheck = 0;
+        boolean found;
+        try {
+            found = measure(map, query.getStart(), query.getTarget());
+        } finally {
+            handle = null;
+        }
+        if (found)
+            query.complete(Arrays.copyOf(path, pathLength), getPathCost());
+        else if (!query.stopRequested(false))
+            query.complete(null, -1);
+        return found;
+    }
+
+    /* search after prepare, with the counters and the flight recording */
+    private boolean measure(GridMap map, int start, int target) {
+        SearchEvent event = null;
+        if (SearchEvent.TYPE.isEnabled()) { // no allocation unless recording
+            event = new SearchEvent();
+            event.begin();
+        }
+        Algorithm searchAlgorithm = algorithm;
+        if ((map.isWeighted() || !cornerCutting) && (algorithm == Algorithm.JPS || algorithm == Algorithm.JPS_PLUS))
+            searchAlgorithm = Algorithm.ASTAR;
+        metrics.begin(searchAlgorithm, start, target);
+        boolean found = run(map, start, target, searchAlgorithm);
+        metrics.end(found, pathLength, getPathCost(), openSites.getPeakSize());
+        if (event != null && event.shouldCommit()) {
+            event.set(metrics);
+            event.commit();
+        }
+        return found;
+    }
+
+    private boolean run(GridMap map, int start, int target, Algorithm searchAlgorithm) {
+        ensureCapacity(map.getCellCount());
+        beginQuery();
+        landmarks = searchAlgorithm == Algorithm.ALT ? landmarkTable : null;
+        chooseOpenList(map);
+        cancelled = false;
+        if (components != null && components.isFor(map) && !components.connected(start, target))
+            return false; // different regions, there is nothing to search
+
+        int width = map.getWidth();
+        int targetX = target % width;
+        int targetY = target / width;
+
+        visit(start, 0, -1);
+        int startH = estimate(start, start % width, start / width, target, targetX, targetY);
+        openSites.insert(start, startH, startH);
+        metrics.pushes++;
+        if (listener != null)
+            listener.cellOpened(start);
+
+        boolean found;
+        if (searchAlgorithm == Algorithm.ASTAR || searchAlgorithm == Algorithm.ALT)
+            found = searchNeighbors(map, target);
+        else
+            found = searchJumpPoints(map, target, searchAlgorithm == Algorithm.JPS_PLUS ? jumpTable : null);
+        if (found)
+            buildPath(map, target);
+        return found;
+    }
+
+    /* A* -> every free neighbor of an expanded cell is a successor */
+    private boolean searchNeighbors(GridMap map, int target) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int targetX = target % width;
+        int targetY = target / width;
+
+        while (!stopped()) {
+            if (openSites.isEmpty())
+                return false;
+
+            int current = openSites.pop();
+            metrics.pops++;
+            if (current == target)
+                return true;
+            close(current);
+
+            int currentX = current % width;
+            int currentY = current / width;
+            int currentG = gCost[current];
+
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i == 0 && j == 0)
+                        continue;
+
+                    int neighborX = currentX + i;
+                    int neighborY = currentY + j;
+                    if (neighborX < 0 || neighborX >= width ||
+                        neighborY < 0 || neighborY >= height)
+                        continue;
+
+                    int neighbor = neighborY * width + neighborX;
+                    if (map.isBlocked(neighbor))
+                        continue;
+                    if (!cornerCutting && i != 0 && j != 0 &&
+                        (map.isBlocked(neighborX, currentY) || map.isBlocked(currentX, neighborY)))
+                        continue;
+
+                    int g = currentG + (i != 0 && j != 0 ? DIAGONAL_COST : STRAIGHT_COST) * map.getWeight(neighbor);
+                    relax(current, neighbor, g, estimate(neighbor, neighborX, neighborY, target, targetX, targetY));
+                }
+            }
+        }
+        return false;
+    }
+
+    /* Jump Point Search -> successors are the jump points found by scanning
+       in the pruned directions, either step by step (JPS) or by table lookup (JPS+) */
+    private boolean searchJumpPoints(GridMap map, int target, JumpTable table) {
+        int width = map.getWidth();
+        int targetX = target % width;
+        int targetY = target / width;
+
+        while (!stopped()) {
+            if (openSites.isEmpty())
+                return false;
+
+            int current = openSites.pop();
+            metrics.pops++;
+            if (current == target)
+                return true;
+            close(current);
+
+            int currentX = current % width;
+            int currentY = current / width;
+            int dx = 0;
+            int dy = 0;
+            if (parent[current] != -1) {
+                dx = Integer.signum(currentX - parent[current] % width);
+                dy = Integer.signum(currentY - parent[current] / width);
+            }
+
+            int directions = JumpPoints.prunedDirections(map, currentX, currentY, dx, dy);
+            for (int direction = 0; direction < 8; direction++) {
+                if ((directions & (1 << direction)) == 0)
+                    continue;
+
+                int successor;
+                if (table == null)
+                    successor = JumpPoints.jump(map, currentX, currentY, JumpTable.DX[direction],
+                                                JumpTable.DY[direction], target);
+                else
+                    successor = tableJump(table, width, currentX, currentY, direction, targetX, targetY);
+                if (successor == -1)
+                    continue;
+
+                int successorX = successor % width;
+                int successorY = successor / width;
+                int stepsX = Math.abs(successorX - currentX);
+                int stepsY = Math.abs(successorY - currentY);
+                int g = gCost[current] + (stepsX != 0 && stepsY != 0 ? DIAGONAL_COST * stepsX
+                                                                      : STRAIGHT_COST * (stepsX + stepsY));
+                relax(current, successor, g, heuristic(successorX, successorY, targetX, targetY));
+            }
+        }
+        return false;
+    }
+
+    /* JPS+ successor in a direction. The table only knows about obstacles, so
+       the target is checked here: if it lies on the scanned line, or in the
+       quadrant of a diagonal scan, the scan stops where it lines up with it */
+    private static int tableJump(JumpTable table, int width, int x, int y, int direction,
+                                 int targetX, int targetY) {
+        int dx = JumpTable.DX[direction];
+        int dy = JumpTable.DY[direction];
+        int distance = table.get(direction, y * width + x);
+        int reach = Math.abs(distance); // free cells in this direction
+
+        int toTargetX = targetX - x;
+        int toTargetY = targetY - y;
+        if (dx == 0 || dy == 0) {
+            int steps = Math.abs(toTargetX + toTargetY);
+            if ((dx == 0 ? toTargetX : toTargetY) == 0 &&
+                Integer.signum(toTargetX) == dx && Integer.signum(toTargetY) == dy && steps <= reach)
+                return targetY * width + targetX;
+        } else if (Integer.signum(toTargetX) == dx && Integer.signum(toTargetY) == dy) {
+            int steps = Math.min(Math.abs(toTargetX), Math.abs(toTargetY));
+            if (steps <= reach)
+                return (y + steps * dy) * width + x + steps * dx;
+        }
+        return distance > 0 ? (y + distance * dy) * width + x + distance * dx : -1;
+    }
+
+    /* Checked before every expansion: the engine's cancel flag, the handle's
+       status, and every DEADLINE_CHECK_INTERVAL expansions its deadline */
+    private boolean stopped() {
+        if (cancelled)
+            return true;
+        if (handle == null)
+            return false;
+        boolean checkClock = false;
+        if (++sinceCheck == DEADLINE_CHECK_INTERVAL) {
+            sinceCheck = 0;
+            checkClock = handle.hasDeadline();
+        }
+        return handle.stopRequested(checkClock);
+    }
+
+    /* Marks a cell popped from the open list as expanded */
+    private void close(int cell) {
+        closed.set(cell);
+        metrics.expanded++;
+        if (listener != null)
+            listener.cellClosed(cell);
+    }
+
+    /* Opens neighbor through current with cost g, or improves it if g is lower */
+    private void relax(int current, int neighbor, int g, int h) {
+        if (stamp[neighbor] != generation) {
+            visit(neighbor, g, current);
+            openSites.insert(neighbor, g + h, h);
+            metrics.pushes++;
+            if (listener != null)
+                listener.cellOpened(neighbor);
+        } else if (!closed.get(neighbor) && g < gCost[neighbor]) {
+            gCost[neighbor] = g;
+            parent[neighbor] = current;
+            openSites.decreaseKey(neighbor, g + h, h);
+            metrics.decreaseKeys++;
+        }
+    }
+
+    // Accessors for the results of the last search
+    public int[] getPath() { // Shared buffer, only the first getPathLength() cells are valid
+        return path;
+    }
+    public int getPathLength() {
+        return pathLength;
+    }
+    public int getPathCost() {
+        return pathLength == 0 ? -1 : gCost[path[pathLength - 1]];
+    }
+    public int getExpandedCount() {
+        return metrics.expanded;
+    }
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+    /* Live views of the current search for rendering, do not modify */
+    public CellBitSet getClosedCells() {
+        return closed;
+    }
+    public byte getCellState(int cell) {
+        if (cell >= stamp.length || stamp[cell] != generation)
+            return UNSEEN;
+        return closed.get(cell) ? CLOSED : OPEN;
+    }
+
+    /* Octile distance, the cost of the cheapest path on an empty map with
+       every weight 1, in the same x10 units as the movement costs. It never
+       overestimates and drops by at most the cost of a step, so f never
+       decreases along a path */
+    private static int heuristic(int x, int y, int targetX, int targetY) {
+        int dx = Math.abs(targetX - x);
+        int dy = Math.abs(targetY - y);
+        return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    /* The heuristic of A*, raised to the landmark bound during ALT queries.
+       The larger of two consistent heuristics is still consistent */
+    private int estimate(int cell, int x, int y, int target, int targetX, int targetY) {
+        int h = heuristic(x, y, targetX, targetY);
+        if (landmarks != null)
+            h = Math.max(h, landmarks.lowerBound(cell, target));
+        return h;
+    }
+
+    /* Grows the per-cell arrays when a larger map than before is searched */
+    private void ensureCapacity(int cellCount) {
+        if (gCost.length >= cellCount)
+            return;
+        gCost = new int[cellCount];
+        parent = new int[cellCount];
+        closed = new CellBitSet(cellCount);
+        stamp = new int[cellCount];
+        generation = 0;
+        heap.ensureCapacity(cellCount);
+    }
+
+    /* Picks the bucket queue for weighted maps with a small range of
+       weights. f grows by at most a step cost plus the rise of the
+       heuristic over one step, which is what the buckets must span. That
+       rise is one diagonal step for the octile distance, and up to the
+       cost of a step back for the landmark bound */
+    private void chooseOpenList(GridMap map) {
+        int maxWeight = map.getMaxWeight();
+        if (useBuckets && maxWeight > 1 && maxWeight <= BUCKET_QUEUE_MAX_WEIGHT) {
+            buckets.ensureCapacity(map.getCellCount());
+            buckets.setRange(DIAGONAL_COST * maxWeight + DIAGONAL_COST * (landmarks != null ? maxWeight : 1));
+            openSites = buckets;
+        } else {
+            openSites = heap;
+        }
+    }
+
+    /* Invalidates the data of the previous query by moving to a new generation */
+    private void beginQuery() {
+        generation++;
+        if (generation == 0) { // wrapped around, stale stamps could now match
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heap.clear();
+        buckets.clear();
+        closed.clear();
+        pathLength = 0;
+    }
+
+    private void visit(int cell, int g, int parentCell) {
+        stamp[cell] = generation;
+        gCost[cell] = g;
+        parent[cell] = parentCell;
+    }
+
+    /* Follows the parents back from the target, then reverses into start->target
+       order. Jump point parents can be several cells away, always in a straight
+       or diagonal line, so the cells in between are filled in */
+    private void buildPath(GridMap map, int target) {
+        int width = map.getWidth();
+        int length = 0;
+        for (int cell = target; cell != -1; cell = parent[cell]) {
+            int x = cell % width;
+            int y = cell / width;
+            int parentCell = parent[cell];
+            int stepX = parentCell == -1 ? 0 : Integer.signum(parentCell % width - x);
+            int stepY = parentCell == -1 ? 0 : Integer.signum(parentCell / width - y);
+            do {
+                if (length == path.length)
+                    path = Arrays.copyOf(path, length * 2);
+                path[length++] = y * width + x;
+                x += stepX;
+                y += stepY;
+            } while (parentCell != -1 && y * width + x != parentCell);
+        }
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = path[i];
+            path[i] = path[j];
+            path[j] = tmp;
+        }
+        pathLength = length;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+    SearchEvent -> Java Flight Recorder event committed for every
+    SearchEngine query while recording is on, e.g.
+
+        java -XX:StartFlightRecording:filename=search.jfr ...
+        jfr print --events pathfinding.Search search.jfr
+
+    The engine only creates the event while its type is enabled, so queries
+    made without a recording allocate nothing for it.
+ */
+
+package pathfinding;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("pathfinding.Search")
+@Label("Path Search")
+@Category("Pathfinding")
+@Description("One SearchEngine query")
+@StackTrace(false)
+final class SearchEvent extends Event {
+
+    static final EventType TYPE = EventType.getEventType(SearchEvent.class);
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Start Cell")
+    int start;
+
+    @Label("Target Cell")
+    int target;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("Path Length")
+    int pathLength;
+
+    @Label("Path Cost")
+    int pathCost;
+
+    @Label("Expanded")
+    int expanded;
+
+    @Label("Pushes")
+    int pushes;
+
+    @Label("Pops")
+    int pops;
+
+    @Label("Decrease Keys")
+    int decreaseKeys;
+
+    @Label("Peak Open")
+    int peakOpen;
+
+    void set(SearchMetrics metrics) {
+        algorithm = metrics.algorithm.name();
+        start = metrics.start;
+        target = metrics.target;
+        found = metrics.found;
+        pathLength = metrics.pathLength;
+        pathCost = metrics.pathCost;
+        expanded = metrics.expanded;
+        pushes = metrics.pushes;
+        pops = metrics.pops;
+        decreaseKeys = metrics.decreaseKeys;
+        peakOpen = metrics.peakOpen;
+    }
+}
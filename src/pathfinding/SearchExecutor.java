@@ -0,0 +1,191 @@
+/*
+    SearchExecutor -> Runs path queries asynchronously, each behind a
+    SearchHandle that can be waited on, cancelled, or given a deadline.
+    Unlike BatchSearch, which answers a whole batch before returning, every
+    query here is independent, so a caller can drop the ones it no longer
+    needs and get the engine back for the others at once.
+
+    Every query gets its own task. On a Java runtime with virtual threads
+    these are virtual threads, so thousands of queries can be in flight,
+    each parked cheaply while it waits; otherwise a pool of maxSearches
+    platform threads runs them in turn. Either way at most maxSearches
+    searches run at a time, because each needs a SearchEngine whose arrays
+    are as large as the map; the engines are kept in a pool and handed
+    from one query to the next. The wait for an engine honours the query's
+    deadline and is cut short by a cancel. Nothing here holds a monitor
+    while it blocks, so virtual threads never pin their carrier.
+
+    The virtual thread executor is looked up at run time, since the code is
+    built for Java 17, which has none. Run on Java 17 the executor always
+    falls back to the platform pool; queries only get virtual threads when
+    the same classes run on Java 21 or later. usesVirtualThreads tells
+    which one an executor got.
+
+    The JPS+ jump table or ALT landmarks are built once, up front, and
+    shared by the engines. The map must not be edited while the executor
+    is open. close cancels every query that has not finished.
+ */
+
+package pathfinding;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class SearchExecutor implements AutoCloseable {
+
+    private final GridMap map;
+    private final Algorithm algorithm;
+    private final int maxSearches;
+    private final ExecutorService tasks;
+    private final boolean virtualThreads;
+    private final Semaphore permits;    // One per engine that may be in use
+    private final ConcurrentLinkedQueue<SearchEngine> idleEngines;
+    private final AtomicInteger active; // Searches holding an engine right now
+    private final Set<SearchHandle> outstanding; // Submitted and not finished, for close
+    private JumpTable jumpTable;
+    private LandmarkTable landmarkTable;
+
+    public SearchExecutor(GridMap gridMap, Algorithm searchAlgorithm, int searches) {
+        if (searches <= 0)
+            throw new IllegalArgumentException("Search count must be positive");
+        map = gridMap;
+        algorithm = searchAlgorithm;
+        maxSearches = searches;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        tasks = virtualThreads ? virtual : Executors.newFixedThreadPool(searches, new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        permits = new Semaphore(searches);
+        idleEngines = new ConcurrentLinkedQueue<>();
+        active = new AtomicInteger();
+        outstanding = ConcurrentHashMap.newKeySet();
+
+        if (algorithm == Algorithm.JPS_PLUS && !map.isWeighted())
+            jumpTable = new JumpTable(map);
+        else if (algorithm == Algorithm.ALT)
+            landmarkTable = new LandmarkTable(map, LandmarkTable.DEFAULT_COUNT);
+    }
+
+    /* As many concurrent searches as there are cores */
+    public SearchExecutor(GridMap gridMap, Algorithm searchAlgorithm) {
+        this(gridMap, searchAlgorithm, Runtime.getRuntime().availableProcessors());
+    }
+
+    /* Starts a query without a deadline */
+    public SearchHandle submit(int start, int target) {
+        return submit(new SearchHandle(start, target));
+    }
+
+    /* Starts a query that expires timeout from now, queueing included */
+    public SearchHandle submit(int start, int target, long timeout, TimeUnit unit) {
+        return submit(new SearchHandle(start, target, timeout, unit));
+    }
+
+    /* Starts the query of a handle the caller made, which may have been
+       cancelled already */
+    public SearchHandle submit(final SearchHandle handle) {
+        int cellCount = map.getCellCount();
+        if (handle.getStart() < 0 || handle.getStart() >= cellCount ||
+            handle.getTarget() < 0 || handle.getTarget() >= cellCount)
+            throw new IllegalArgumentException("Cell outside of the map");
+        outstanding.add(handle);
+        handle.setTask(tasks.submit(new Runnable() {
+            public void run() {
+                execute(handle);
+            }
+        }));
+        return handle;
+    }
+
+    @Override
+    public void close() {
+        tasks.shutdownNow();
+        for (SearchHandle handle : outstanding)
+            handle.cancel(true);
+    }
+
+    // Accessors
+    public int getMaxSearches() {
+        return maxSearches;
+    }
+    public int getActiveCount() {
+        return active.get();
+    }
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /* The body of a query's task: waits for an engine, within the query's
+       deadline, and searches */
+    private void execute(SearchHandle handle) {
+        try {
+            if (!handle.isDone())
+                search(handle);
+        } finally {
+            outstanding.remove(handle);
+        }
+    }
+
+    private void search(SearchHandle handle) {
+        try {
+            if (!handle.hasDeadline()) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(handle.remainingNanos(), TimeUnit.NANOSECONDS)) {
+                handle.expire();
+                return;
+            }
+        } catch (InterruptedException e) {
+            handle.cancel(false); // done already, unless the executor is closing
+            return;
+        }
+
+        SearchEngine engine = idleEngines.poll();
+        if (engine == null)
+            engine = newEngine();
+        active.incrementAndGet();
+        try {
+            engine.search(map, handle);
+        } catch (RuntimeException e) {
+            handle.fail(e);
+        } finally {
+            active.decrementAndGet();
+            idleEngines.add(engine);
+            permits.release();
+            Thread.interrupted(); // a cancel during the search may have interrupted this thread
+        }
+    }
+
+    private SearchEngine newEngine() {
+        SearchEngine engine = new SearchEngine();
+        engine.setAlgorithm(algorithm);
+        engine.setJumpTable(jumpTable);
+        engine.setLandmarkTable(landmarkTable);
+        return engine;
+    }
+
+    /* Executors.newVirtualThreadPerTaskExecutor, looked up at run time so
+       the code still compiles and runs on releases without it. null there */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
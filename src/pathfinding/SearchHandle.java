@@ -0,0 +1,201 @@
+/*
+    SearchHandle -> One start/target query with its own cancellation and
+    optional deadline, and the future its answer is delivered through. A
+    SearchEngine given the handle checks it while it expands cells, so a
+    cancel or an expired deadline stops the search within a few hundred
+    expansions, whether it is already running or has not started yet.
+
+    get returns the path cells from start to target, or null if there is
+    no path, and throws CancellationException once the query was cancelled
+    or ran out of time (getStatus tells which). Waiting threads are released
+    as soon as cancel is called, the search itself stops at its next check.
+    Only java.util.concurrent primitives are used, so a virtual thread
+    waiting on a handle never pins its carrier.
+ */
+
+package pathfinding;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class SearchHandle implements Future<int[]> {
+
+    public enum Status {
+        QUEUED,    // Not started yet
+        RUNNING,   // A SearchEngine is working on it
+        FOUND,     // Done, with a path
+        NO_PATH,   // Done, the target cannot be reached
+        CANCELLED, // Stopped by cancel
+        EXPIRED,   // Stopped by its deadline
+        FAILED     // The search threw, get rethrows it wrapped
+    }
+
+    private final int start;
+    private final int target;
+    private final long createdNanos;
+    private final long deadline;     // System.nanoTime() at which the query expires
+    private final boolean hasDeadline;
+
+    private final AtomicReference<Status> status;
+    private final CountDownLatch done;
+    private volatile Future<?> task; // What runs the query, interrupted by cancel while it waits
+    private int[] path;              // Written before done is counted down
+    private int pathCost;
+    private Throwable failure;
+    private volatile long finishedNanos;
+
+    /* A query without a deadline */
+    public SearchHandle(int startCell, int targetCell) {
+        this(startCell, targetCell, 0, null);
+    }
+
+    /* A query that expires timeout after it is created, time spent waiting
+       for an engine included */
+    public SearchHandle(int startCell, int targetCell, long timeout, TimeUnit unit) {
+        start = startCell;
+        target = targetCell;
+        createdNanos = System.nanoTime();
+        hasDeadline = unit != null;
+        deadline = hasDeadline ? createdNanos + unit.toNanos(timeout) : 0;
+        status = new AtomicReference<>(Status.QUEUED);
+        done = new CountDownLatch(1);
+        pathCost = -1;
+    }
+
+    /* Stops the query. Returns false if it had already finished. The search
+       stops at its next check whether or not mayInterruptIfRunning is set,
+       the interrupt only wakes a task still waiting for an engine */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(Status.CANCELLED))
+            return false;
+        Future<?> runner = task;
+        if (runner != null)
+            runner.cancel(true);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return status.get() == Status.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public int[] get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public int[] get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit))
+            throw new TimeoutException("Search still running");
+        return result();
+    }
+
+    // Accessors
+    public int getStart() {
+        return start;
+    }
+    public int getTarget() {
+        return target;
+    }
+    public Status getStatus() {
+        return status.get();
+    }
+    public int getPathCost() { // -1 unless FOUND
+        return isDone() ? pathCost : -1;
+    }
+    public long getLatencyNanos() { // From creation until done, -1 while not done
+        return isDone() ? finishedNanos - createdNanos : -1;
+    }
+
+    /* Moves a queued query to RUNNING, or expires it. Returns false if the
+       query should not be searched */
+    boolean begin() {
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            finish(Status.EXPIRED);
+            return false;
+        }
+        return status.compareAndSet(Status.QUEUED, Status.RUNNING);
+    }
+
+    /* Polled by the engine. Cheap while nothing happened, reads the clock
+       only when checkClock is set */
+    boolean stopRequested(boolean checkClock) {
+        Status current = status.get();
+        if (current != Status.RUNNING && current != Status.QUEUED)
+            return true;
+        if (checkClock && hasDeadline && System.nanoTime() - deadline >= 0) {
+            finish(Status.EXPIRED);
+            return true;
+        }
+        return false;
+    }
+
+    boolean hasDeadline() {
+        return hasDeadline;
+    }
+    long remainingNanos() {
+        return deadline - System.nanoTime();
+    }
+
+    void setTask(Future<?> runner) {
+        task = runner;
+        if (isDone()) // cancelled before the task was known
+            runner.cancel(true);
+    }
+
+    /* Records the answer of a search that ran to its end */
+    void complete(int[] cells, int cost) {
+        path = cells;
+        pathCost = cost;
+        finish(cells != null ? Status.FOUND : Status.NO_PATH);
+    }
+
+    void fail(Throwable cause) {
+        failure = cause;
+        finish(Status.FAILED);
+    }
+
+    void expire() {
+        finish(Status.EXPIRED);
+    }
+
+    /* Moves a query that is not done yet to a final status, exactly once */
+    private boolean finish(Status finalStatus) {
+        Status current;
+        do {
+            current = status.get();
+            if (current != Status.QUEUED && current != Status.RUNNING)
+                return false;
+        } while (!status.compareAndSet(current, finalStatus));
+        finishedNanos = System.nanoTime();
+        done.countDown();
+        return true;
+    }
+
+    private int[] result() throws ExecutionException {
+        switch (status.get()) {
+            case CANCELLED:
+                throw new CancellationException("Search cancelled");
+            case EXPIRED:
+                throw new CancellationException("Search deadline passed");
+            case FAILED:
+                throw new ExecutionException(failure);
+            default:
+                return path;
+        }
+    }
+}
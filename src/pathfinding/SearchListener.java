@@ -0,0 +1,12 @@
+/*
+    SearchListener -> Optional callback that lets a caller (such as the GUI)
+    observe the search as it opens and closes cells. Cells are passed as
+    int indices so observing a search allocates nothing.
+ */
+
+package pathfinding;
+
+public interface SearchListener {
+    void cellOpened(int cell);
+    void cellClosed(int cell);
+}
@@ -0,0 +1,115 @@
+/*
+    SearchMetrics -> Counters of one SearchEngine query: cells expanded,
+    open list pushes and pops, decrease-keys (an open cell reached again
+    with a lower cost; closed cells are never reopened), the peak size of
+    the open list and the time the query took. The engine bumps plain int
+    fields while it searches, so collecting them costs next to nothing.
+
+    An engine reuses its metrics object for every query; copy it to keep
+    the numbers of a query around.
+ */
+
+package pathfinding;
+
+public final class SearchMetrics {
+
+    Algorithm algorithm;
+    int start, target;
+    boolean found;
+    int pathLength;
+    int pathCost;        // -1 without a path
+    int expanded;        // Cells closed
+    int pushes;          // Cells inserted into the open list
+    int pops;            // Cells taken from the open list
+    int decreaseKeys;    // Open cells whose cost was lowered
+    int peakOpen;        // Largest size of the open list
+    long nanos;          // Duration of the query
+    private long beginNanos;
+
+    public SearchMetrics() {
+        algorithm = Algorithm.ASTAR;
+        pathCost = -1;
+    }
+
+    public SearchMetrics(SearchMetrics other) {
+        algorithm = other.algorithm;
+        start = other.start;
+        target = other.target;
+        found = other.found;
+        pathLength = other.pathLength;
+        pathCost = other.pathCost;
+        expanded = other.expanded;
+        pushes = other.pushes;
+        pops = other.pops;
+        decreaseKeys = other.decreaseKeys;
+        peakOpen = other.peakOpen;
+        nanos = other.nanos;
+    }
+
+    /* Resets the counters at the start of a query */
+    void begin(Algorithm searchAlgorithm, int startCell, int targetCell) {
+        algorithm = searchAlgorithm;
+        start = startCell;
+        target = targetCell;
+        found = false;
+        pathLength = 0;
+        pathCost = -1;
+        expanded = 0;
+        pushes = 0;
+        pops = 0;
+        decreaseKeys = 0;
+        peakOpen = 0;
+        nanos = 0;
+        beginNanos = System.nanoTime();
+    }
+
+    void end(boolean pathFound, int length, int cost, int openPeak) {
+        nanos = System.nanoTime() - beginNanos;
+        found = pathFound;
+        pathLength = length;
+        pathCost = cost;
+        peakOpen = openPeak;
+    }
+
+    // Accessors
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+    public int getStart() {
+        return start;
+    }
+    public int getTarget() {
+        return target;
+    }
+    public boolean isFound() {
+        return found;
+    }
+    public int getPathLength() {
+        return pathLength;
+    }
+    public int getPathCost() {
+        return pathCost;
+    }
+    public int getExpanded() {
+        return expanded;
+    }
+    public int getPushes() {
+        return pushes;
+    }
+    public int getPops() {
+        return pops;
+    }
+    public int getDecreaseKeys() {
+        return decreaseKeys;
+    }
+    public int getPeakOpen() {
+        return peakOpen;
+    }
+    public long getNanos() {
+        return nanos;
+    }
+    /* Expanded cells per second of query time */
+    public double getExpansionRate() {
+        return nanos == 0 ? 0 : expanded * 1e9 / nanos;
+    }
+}
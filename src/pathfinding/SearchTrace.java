@@ -0,0 +1,207 @@
+/*
+    SearchTrace -> A SearchListener that records a search as a flat int[]
+    event log instead of acting on it, so the search runs at full speed and
+    can be replayed (or profiled) afterwards. Each event is one int: the
+    cell shifted left by two, with the low bits telling OPENED from CLOSED
+    and, for a BidirectionalSearch, the backward side from the forward one
+    (backward returns the listener that records the backward side). That
+    leaves 30 bits for the cell, so maps of more than MAX_CELLS cells cannot
+    be traced; begin rejects them rather than record events that decode to
+    the wrong cells.
+
+    Besides the events a trace keeps what is needed to replay it on its own:
+    the map size, the start and target cells, the SearchMetrics of the
+    search and the resulting path. write and read store all of it in a
+    small binary format (big endian, see FORMAT_VERSION).
+ */
+
+package pathfinding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public final class SearchTrace implements SearchListener {
+
+    public static final int OPENED = 0;
+    public static final int CLOSED = 1;
+    public static final int OPENED_BACKWARD = 2;
+    public static final int CLOSED_BACKWARD = 3;
+
+    public static final int MAX_CELLS = 1 << 30; // Cells of the largest map a trace can record
+
+    private static final int MAGIC = 0x50545243; // "PTRC"
+    private static final int FORMAT_VERSION = 3;
+
+    private int[] events;
+    private int eventCount;
+
+    private int width, height;  // Size of the traced map
+    private int start, target;
+    private SearchMetrics metrics; // Counters and time of the search while recording
+    private int[] path;         // start->target, empty if no path was found
+    private final SearchListener backward;
+
+    public SearchTrace() {
+        events = new int[1024];
+        path = new int[0];
+        metrics = new SearchMetrics();
+        backward = new SearchListener() {
+            public void cellOpened(int cell) {
+                add(cell << 2 | OPENED_BACKWARD);
+            }
+            public void cellClosed(int cell) {
+                add(cell << 2 | CLOSED_BACKWARD);
+            }
+        };
+    }
+
+    /* Starts a new recording of a search on map from start to target.
+       Throws IllegalArgumentException if map has more than MAX_CELLS cells */
+    public void begin(GridMap map, int startCell, int targetCell) {
+        if (map.getCellCount() > MAX_CELLS)
+            throw new IllegalArgumentException("Cannot trace a map of more than " + MAX_CELLS + " cells");
+        width = map.getWidth();
+        height = map.getHeight();
+        start = startCell;
+        target = targetCell;
+        eventCount = 0;
+        metrics = new SearchMetrics();
+        path = new int[0];
+    }
+
+    /* Completes the recording with the metrics of the search and the path found */
+    public void end(SearchMetrics searchMetrics, int[] pathCells, int pathLength) {
+        metrics = new SearchMetrics(searchMetrics);
+        path = Arrays.copyOf(pathCells, pathLength);
+    }
+
+    @Override
+    public void cellOpened(int cell) {
+        add(cell << 2 | OPENED);
+    }
+    @Override
+    public void cellClosed(int cell) {
+        add(cell << 2 | CLOSED);
+    }
+
+    /* Records the events of a BidirectionalSearch's backward side into this
+       trace, this trace itself records the forward side */
+    public SearchListener backward() {
+        return backward;
+    }
+
+    // Accessors
+    public int getEventCount() {
+        return eventCount;
+    }
+    public int getEvent(int i) {
+        return events[i];
+    }
+    public int getWidth() {
+        return width;
+    }
+    public int getHeight() {
+        return height;
+    }
+    public int getStart() {
+        return start;
+    }
+    public int getTarget() {
+        return target;
+    }
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+    public int[] getPath() {
+        return path;
+    }
+
+    /* Decoding of an event */
+    public static int cellOf(int event) {
+        return event >>> 2;
+    }
+    public static int typeOf(int event) { // OPENED, CLOSED, OPENED_BACKWARD or CLOSED_BACKWARD
+        return event & 3;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(start);
+        out.writeInt(target);
+        out.writeUTF(metrics.algorithm.name());
+        out.writeBoolean(metrics.found);
+        out.writeInt(metrics.pathCost);
+        out.writeInt(metrics.expanded);
+        out.writeInt(metrics.pushes);
+        out.writeInt(metrics.pops);
+        out.writeInt(metrics.decreaseKeys);
+        out.writeInt(metrics.peakOpen);
+        out.writeLong(metrics.nanos);
+        out.writeInt(eventCount);
+        for (int i = 0; i < eventCount; i++)
+            out.writeInt(events[i]);
+        out.writeInt(path.length);
+        for (int cell : path)
+            out.writeInt(cell);
+        out.flush();
+    }
+
+    public static SearchTrace read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a search trace");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported search trace version " + version);
+
+        SearchTrace trace = new SearchTrace();
+        trace.width = in.readInt();
+        trace.height = in.readInt();
+        if (trace.width <= 0 || trace.height <= 0 || (long) trace.width * trace.height > MAX_CELLS)
+            throw new IOException("Search trace of a " + trace.width + " x " + trace.height + " map");
+        trace.start = in.readInt();
+        trace.target = in.readInt();
+        SearchMetrics metrics = trace.metrics;
+        try {
+            metrics.algorithm = Algorithm.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown algorithm in search trace");
+        }
+        metrics.start = trace.start;
+        metrics.target = trace.target;
+        metrics.found = in.readBoolean();
+        metrics.pathCost = in.readInt();
+        metrics.expanded = in.readInt();
+        metrics.pushes = in.readInt();
+        metrics.pops = in.readInt();
+        metrics.decreaseKeys = in.readInt();
+        metrics.peakOpen = in.readInt();
+        metrics.nanos = in.readLong();
+        int count = in.readInt();
+        trace.events = new int[Math.max(count, 1)];
+        for (int i = 0; i < count; i++)
+            trace.events[i] = in.readInt();
+        trace.eventCount = count;
+        trace.path = new int[in.readInt()];
+        for (int i = 0; i < trace.path.length; i++)
+            trace.path[i] = in.readInt();
+        metrics.pathLength = trace.path.length;
+        return trace;
+    }
+
+    private void add(int event) {
+        if (eventCount == events.length)
+            events = Arrays.copyOf(events, eventCount * 2);
+        events[eventCount++] = event;
+    }
+}